@@ -4,6 +4,7 @@
 
 #include <Wire.h>
 #include <NewPing.h>
+#include <Servo.h>
 
 // Sonar code
 
@@ -24,6 +25,14 @@ short bitcount[] = {0, 1, 1, 2, 1, 2, 2, 3, 1, 2, 2, 3, 2, 3, 3, 4};
 
 NewPing sonar(SONAR_TRIGGER_PIN, SONAR_ECHO_PIN, SONAR_MAX_DISTANCE);  // NewPing setup of pins and maximum distance.
 
+// parity encoding of a ping time into 2 bytes, the high bit of the second byte is the parity.
+void encode_time(unsigned int time, byte* datap) {
+  datap[0] = time & 0xFF;
+  datap[1] = (time >> 8) & 0x7F;
+  int bits = bitcount[datap[0] & 0xF] + bitcount[(datap[0] >>4) & 0xF]+ bitcount[datap[1] & 0xF] + bitcount[(datap[1] >>4) & 0xF];
+  datap[1] |= (bits % 2) ? 0x80 : 0x0;
+}
+
 void sonar_setup() {
   for (uint8_t i = 1; i < SONAR_ITERATIONS; i++) {  // Set the starting time for each iteration.
     sonar_readings[i] = SONAR_NO_ECHO;
@@ -67,35 +76,118 @@ uint8_t sonar_read() {
   return sonar_time;
 }
 
+// Sweep code
+// The sonar is mounted on a servo that sweeps back and forth across the front
+// of the robot taking one ping at each step.  The latest sample at each step is
+// kept so that the whole sweep can be read in one I2C block.
+
+#define SWEEP_SERVO_PIN 9       // Arduino pin tied to the servo signal.
+#define SWEEP_STEPS 7           // Number of positions in the sweep.
+#define SWEEP_STEP_DEGREES 15   // Degrees between positions, the sweep is +/- 45 degrees.
+#define SWEEP_CENTER 90         // Servo position that points straight ahead.
+#define SWEEP_STEP_INTERVAL 75  // Milliseconds between steps, time for the servo to settle and the ping.
+#define SWEEP_AGE_UNIT 10       // Milliseconds per unit of sample age.
+#define SWEEP_AGE_UNKNOWN 0xFF  // Age of a sample not yet taken or too old to report.
+#define SWEEP_SAMPLE_SIZE 4     // angle, 2 bytes of time with parity, age.
+#define SWEEP_BLOCK_SIZE (2 + SWEEP_STEPS * SWEEP_SAMPLE_SIZE)  // count, checksum, samples. Must fit the 32 byte Wire buffer.
+
+struct sweep_sample {
+  int8_t angle;         // degrees counter clockwise from straight ahead.
+  unsigned int time;    // ping time in uS, 0 for no echo.
+  unsigned long taken;  // millis() when the ping was taken, 0 if not taken.
+};
+
+Servo sweep_servo;
+sweep_sample sweep_samples[SWEEP_STEPS];
+int8_t sweep_index;
+int8_t sweep_direction;
+unsigned long sweep_next;
+
+int8_t sweep_angle(int8_t index) {
+  return (index - (SWEEP_STEPS >> 1)) * SWEEP_STEP_DEGREES;
+}
+
+void sweep_start() {
+  for (uint8_t i = 0; i < SWEEP_STEPS; i++) {
+    sweep_samples[i].angle = sweep_angle(i);
+    sweep_samples[i].time = 0;
+    sweep_samples[i].taken = 0;
+  }
+  sweep_index = 0;
+  sweep_direction = 1;
+  sweep_servo.write(SWEEP_CENTER + sweep_angle(sweep_index));
+  // the first move may cross the whole sweep.
+  sweep_next = millis() + SWEEP_STEPS * SWEEP_STEP_INTERVAL;
+}
+
+void sweep_stop() {
+  sweep_servo.write(SWEEP_CENTER);
+}
+
+/* main loop while sweeping */
+void sweep_sense() {
+  if (millis() >= sweep_next) {                              // Has the servo settled?
+    sweep_samples[sweep_index].time = sonar.ping();
+    sweep_samples[sweep_index].taken = millis();
+    if (sweep_index + sweep_direction < 0 || sweep_index + sweep_direction >= SWEEP_STEPS)
+      sweep_direction = -sweep_direction;                    // Reverse at the ends of the sweep.
+    sweep_index += sweep_direction;
+    sweep_servo.write(SWEEP_CENTER + sweep_angle(sweep_index));
+    sweep_next = millis() + SWEEP_STEP_INTERVAL;
+  }
+}
+
+// writes the sweep block: sample count, xor checksum of the samples, samples.
+void sweep_write() {
+  byte block[SWEEP_BLOCK_SIZE];
+  unsigned long now = millis();
+  byte checksum = 0;
+  block[0] = SWEEP_STEPS;
+  for (uint8_t i = 0; i < SWEEP_STEPS; i++) {
+    byte* datap = &block[2 + i * SWEEP_SAMPLE_SIZE];
+    datap[0] = (byte) sweep_samples[i].angle;
+    encode_time(sweep_samples[i].time, &datap[1]);
+    unsigned long age = (now - sweep_samples[i].taken) / SWEEP_AGE_UNIT;
+    datap[3] = (sweep_samples[i].taken == 0 || age >= SWEEP_AGE_UNKNOWN) ? SWEEP_AGE_UNKNOWN : age;
+    for (uint8_t j = 0; j < SWEEP_SAMPLE_SIZE; j++)
+      checksum ^= datap[j];
+  }
+  block[1] = checksum;
+  Wire.write(block, SWEEP_BLOCK_SIZE);
+}
+
 /// I2C code
 
+#define CMD_SINGLE 0x00  // read the median of the forward ping.
+#define CMD_SWEEP 0x01   // read the sweep block.
+
 byte i2c_rcv;  // data received from I2C bus
+volatile byte i2c_cmd;  // the last command received
 
 //received data handler function
 void i2c_dataRcv(int numBytes) {
-  while (Wire.available()) {  // read all bytes received
+  while (Wire.available()) {  // read all bytes received, the last one is the command
+    i2c_rcv = Wire.read();
     //Serial.print("Read: ");
-    //Serial.println( Wire.read(), HEX );
+    //Serial.println( i2c_rcv, HEX );
+  }
+  if (i2c_rcv == CMD_SINGLE || i2c_rcv == CMD_SWEEP) {
+    i2c_cmd = i2c_rcv;
   }
 }
 
 // requests data handler function
 void i2c_dataRqst() {
-	unsigned int data = sonar_time;
-  byte* datap = (byte*) &data;
-  //Serial.print("Sonar: ");
-  //Serial.println( data , HEX );
+  if (i2c_cmd == CMD_SWEEP) {
+    sweep_write();
+    return;
+  }
+  byte datap[2];
+  encode_time(sonar_time, datap);
+  //Serial.print("Sending: ");
   //Serial.print( datap[0], HEX);
   //Serial.print( " ");
   //Serial.println(datap[1], HEX);
-  int bits = bitcount[datap[0] & 0xF] + bitcount[(datap[0] >>4) & 0xF]+ bitcount[datap[1] & 0xF] + bitcount[(datap[1] >>4) & 0xF];
-  //Serial.print( "bitcount: ");
-  //Serial.println( bits );
-  datap[1] |= (bits % 2) ? 0x80 : 0x0; 
-  //Serial.print("Sending: ");
-  //Serial.print( data , HEX );
-  //Serial.print(" ");
-  //Serial.println( data  );
   Wire.write( datap, 2);
 }
 
@@ -108,17 +200,30 @@ void i2c_setup() {
 
   // initialize global variables
   i2c_rcv = 255;
+  i2c_cmd = CMD_SINGLE;
 }
 void setup() {
 
   i2c_setup();
   sonar_setup();
+  sweep_servo.attach(SWEEP_SERVO_PIN);
+  sweep_stop();
   //Serial.begin(115200);
 }
 
 void loop() {
-  int last = 0;
+  byte mode = CMD_SINGLE;
   while (true) {
-    sonar_sense();
+    if (i2c_cmd != mode) {  // the command changed, start or stop the sweep.
+      mode = i2c_cmd;
+      if (mode == CMD_SWEEP)
+        sweep_start();
+      else
+        sweep_stop();
+    }
+    if (mode == CMD_SWEEP)
+      sweep_sense();
+    else
+      sonar_sense();
   }
 }
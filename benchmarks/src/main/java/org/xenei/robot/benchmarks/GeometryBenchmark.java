@@ -0,0 +1,129 @@
+package org.xenei.robot.benchmarks;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xenei.robot.common.planning.Solution;
+import org.xenei.robot.common.planning.Solution.Simplification;
+import org.xenei.robot.common.utils.RobutContext;
+import org.xenei.robot.mapper.PointCloudSorter;
+import org.xenei.robot.mapper.rdf.WktDataType;
+
+/**
+ * Benchmarks of the geometry processing that does not query the map directly.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GeometryBenchmark {
+
+    /**
+     * A point cloud shaped like the sensor readings of a corner.
+     */
+    @State(Scope.Benchmark)
+    public static class PointCloudState {
+        @Param({ "50", "200" })
+        public int points;
+
+        public RobutContext ctxt;
+        public Set<Coordinate> cloud;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            ctxt = MapGenerator.createContext();
+            double step = ctxt.scaleInfo.getResolution() / 2;
+            cloud = new HashSet<>();
+            int half = points / 2;
+            for (int i = 0; i < half; i++) {
+                cloud.add(ctxt.scaleInfo.precise(new Coordinate(i * step, 0)));
+            }
+            for (int i = 1; i <= points - half; i++) {
+                cloud.add(ctxt.scaleInfo.precise(new Coordinate(0, i * step)));
+            }
+        }
+    }
+
+    /**
+     * WKT literals that are too numerous to stay in the context geometry cache.
+     */
+    @State(Scope.Benchmark)
+    public static class WktState {
+        private static final int LITERALS = 4096;
+        public WktDataType dataType;
+        public String[] literals;
+        private int next;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            dataType = MapGenerator.createContext().graphGeomFactory.getDataType();
+            literals = new String[LITERALS];
+            for (int i = 0; i < LITERALS; i++) {
+                literals[i] = String.format("LINESTRING(%s %s, %s %s, %s %s)", i, 0, i + 0.5, 1, i, 2.25);
+            }
+        }
+
+        public String nextLiteral() {
+            next = (next + 1) % LITERALS;
+            return literals[next];
+        }
+    }
+
+    /**
+     * A zig zag solution through a generated map that can be simplified. The
+     * visibility cache is cleared before each invocation so that the clear path
+     * checks made by the simplification are calculated rather than looked up.
+     */
+    @State(Scope.Benchmark)
+    public static class SolutionState extends MapState {
+        private static final int STEPS = 20;
+
+        @Param({ "EXHAUSTIVE", "GREEDY" })
+        public Simplification mode;
+
+        public Solution solution;
+
+        @Setup(Level.Invocation)
+        public void createSolution() {
+            map.clearVisibilityCache();
+            solution = new Solution();
+            solution.add(start);
+            for (int i = 0; i < STEPS; i++) {
+                solution.add(pool[i]);
+            }
+            solution.add(target);
+        }
+    }
+
+    @Benchmark
+    public Geometry pointCloudWalk(PointCloudState state) {
+        return new PointCloudSorter(state.ctxt, state.cloud).walk();
+    }
+
+    @Benchmark
+    public Geometry wktParse(WktState state) {
+        return state.dataType.parse(state.nextLiteral());
+    }
+
+    @Benchmark
+    public Solution solutionSimplify(SolutionState state) {
+        state.solution.simplify(state.map::isClearPath, state.mode);
+        return state.solution;
+    }
+}
@@ -0,0 +1,115 @@
+package org.xenei.robot.benchmarks;
+
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xenei.robot.common.Location;
+import org.xenei.robot.common.Position;
+import org.xenei.robot.common.mapping.Obstacle;
+import org.xenei.robot.common.planning.Step;
+
+/**
+ * Benchmarks of the map operations used during each navigation step.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MapBenchmark {
+
+    /**
+     * A map that is rebuilt for each iteration because the benchmark adds to it.
+     */
+    @State(Scope.Benchmark)
+    public static class FreshMapState extends MapState {
+        @Setup(Level.Iteration)
+        public void rebuild() {
+            generator = new MapGenerator(layout, size, obstacles, SEED);
+            map = generator.generate(ctxt);
+        }
+    }
+
+    /**
+     * A map whose visibility cache is cleared before each invocation so that the
+     * clear path checks made by the operation are calculated.
+     */
+    @State(Scope.Benchmark)
+    public static class ColdCacheState extends MapState {
+        @Setup(Level.Invocation)
+        public void clearCache() {
+            map.clearVisibilityCache();
+        }
+    }
+
+    /**
+     * Checks paths between a fixed pool of coordinates so that, after warmup,
+     * results come from the visibility cache.
+     */
+    @Benchmark
+    public boolean isClearPathPooled(MapState state) {
+        return state.map.isClearPath(state.nextPooled(), state.nextPooled());
+    }
+
+    /**
+     * Checks paths between random coordinates so that the check is always
+     * calculated.
+     */
+    @Benchmark
+    public boolean isClearPathRandom(MapState state) {
+        return state.map.isClearPath(state.generator.randomCoordinate(), state.generator.randomCoordinate());
+    }
+
+    @Benchmark
+    public Set<Obstacle> addObstacle(FreshMapState state) {
+        Position position = Position.from(state.generator.randomCoordinate());
+        Location relative = Location.from(state.generator.random().nextDouble(), 0);
+        return state.map.addObstacle(state.map.createObstacle(position, relative));
+    }
+
+    /**
+     * Selects a step with the clear path checks served from the visibility cache
+     * after the first invocation.
+     */
+    @Benchmark
+    public Optional<Step> getBestStep(MapState state) {
+        return state.map.getBestStep(state.start);
+    }
+
+    /**
+     * Selects a step with every clear path check calculated.
+     */
+    @Benchmark
+    public Optional<Step> getBestStepCold(ColdCacheState state) {
+        return state.map.getBestStep(state.start);
+    }
+
+    @Benchmark
+    public Coordinate recalculate(MapState state) {
+        return state.map.recalculate(state.target);
+    }
+
+    @Benchmark
+    public Coordinate recalculateCold(ColdCacheState state) {
+        return state.map.recalculate(state.target);
+    }
+
+    @Benchmark
+    public Optional<Location> look(MapState state) {
+        double heading = state.generator.random().nextDouble() * 2 * Math.PI - Math.PI;
+        return state.map.look(Position.from(state.start), heading, state.size);
+    }
+}
@@ -0,0 +1,115 @@
+package org.xenei.robot.benchmarks;
+
+import java.util.Random;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.xenei.robot.common.ChassisInfo;
+import org.xenei.robot.common.ScaleInfo;
+import org.xenei.robot.common.mapping.FloorPlan;
+import org.xenei.robot.common.mapping.FloorPlanGenerator;
+import org.xenei.robot.common.mapping.FloorPlanGenerator.Layout;
+import org.xenei.robot.common.utils.RobutContext;
+import org.xenei.robot.mapper.MapImpl;
+
+/**
+ * Generates repeatable maps for the benchmarks. The obstacles come from a
+ * generated {@link FloorPlan} loaded in bulk, and a grid of planning coordinates
+ * is placed in the open cells.
+ */
+public class MapGenerator {
+    /** the chassis used for the benchmarks, matches the unit test chassis */
+    public static final ChassisInfo CHASSIS = new ChassisInfo(0.5, 0, 0);
+    /** the spacing of the planning coordinates */
+    private static final int GRID = 2;
+
+    private final int size;
+    private final FloorPlan plan;
+    private final Random random;
+    private final Coordinate start;
+    private final Coordinate target;
+
+    /**
+     * Constructor.
+     *
+     * @param layout the kind of floor plan.
+     * @param size the length of a side of the map.
+     * @param obstacles the number of blocks to place in a clutter layout, ignored
+     * for other layouts.
+     * @param seed the random seed so that maps are repeatable.
+     */
+    public MapGenerator(Layout layout, int size, int obstacles, long seed) {
+        FloorPlanGenerator generator = new FloorPlanGenerator(seed);
+        this.size = size;
+        this.plan = layout == Layout.CLUTTER ? generator.clutter(size, size, obstacles)
+                : generator.generate(layout, size, size);
+        this.random = generator.random();
+        this.start = plan.randomClear(random);
+        this.target = plan.randomClear(random);
+    }
+
+    /**
+     * Creates a context for the benchmarks.
+     *
+     * @return a new context.
+     */
+    public static RobutContext createContext() {
+        return new RobutContext(ScaleInfo.DEFAULT, CHASSIS);
+    }
+
+    /**
+     * The start of the navigation, a random clear cell.
+     *
+     * @return the start coordinate.
+     */
+    public Coordinate start() {
+        return start;
+    }
+
+    /**
+     * The target of the navigation, a random clear cell.
+     *
+     * @return the target coordinate.
+     */
+    public Coordinate target() {
+        return target;
+    }
+
+    /**
+     * Generates a map.
+     *
+     * @param ctxt the context for the map.
+     * @return the populated map.
+     */
+    public MapImpl generate(RobutContext ctxt) {
+        MapImpl map = new MapImpl(ctxt);
+        plan.load(map);
+        for (int y = 1; y < size - 1; y += GRID) {
+            for (int x = 1; x < size - 1; x += GRID) {
+                if (plan.isClear(x, y)) {
+                    Coordinate c = plan.toCoordinate(x, y);
+                    map.addCoord(c, c.distance(target), false, !map.isClearPath(c, target));
+                }
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Creates a random coordinate inside the border.
+     *
+     * @return a random coordinate.
+     */
+    public Coordinate randomCoordinate() {
+        Coordinate min = plan.toCoordinate(1, 1);
+        return new Coordinate(min.x + random.nextDouble() * (size - 3), min.y + random.nextDouble() * (size - 3));
+    }
+
+    /**
+     * Gets the random number generator used to create the map.
+     *
+     * @return the random number generator.
+     */
+    public Random random() {
+        return random;
+    }
+}
@@ -0,0 +1,65 @@
+package org.xenei.robot.benchmarks;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.xenei.robot.common.mapping.FloorPlanGenerator.Layout;
+import org.xenei.robot.common.utils.RobutContext;
+import org.xenei.robot.mapper.MapImpl;
+
+/**
+ * A generated map shared by the map benchmarks. The map is parameterized by the
+ * layout, the length of a side and, for clutter, the number of blocks placed in
+ * it.
+ */
+@State(Scope.Benchmark)
+public class MapState {
+    /** the random seed so that every run uses the same maps */
+    public static final long SEED = 0x5EED;
+    /** the number of coordinates in the pool used for repeated queries */
+    private static final int POOL_SIZE = 64;
+
+    @Param({ "CLUTTER" })
+    public Layout layout;
+
+    @Param({ "20", "40" })
+    public int size;
+
+    @Param({ "10", "50" })
+    public int obstacles;
+
+    public RobutContext ctxt;
+    public MapGenerator generator;
+    public MapImpl map;
+    public Coordinate start;
+    public Coordinate target;
+    /** coordinates reused across invocations */
+    public Coordinate[] pool;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        ctxt = MapGenerator.createContext();
+        generator = new MapGenerator(layout, size, obstacles, SEED);
+        map = generator.generate(ctxt);
+        start = generator.start();
+        target = generator.target();
+        pool = new Coordinate[POOL_SIZE];
+        for (int i = 0; i < POOL_SIZE; i++) {
+            pool[i] = generator.randomCoordinate();
+        }
+    }
+
+    /**
+     * Gets the next coordinate from the pool.
+     *
+     * @return a pooled coordinate.
+     */
+    public Coordinate nextPooled() {
+        next = (next + 1) % POOL_SIZE;
+        return pool[next];
+    }
+}
@@ -1,7 +1,12 @@
 package org.xenei.robot;
 
+import java.time.Duration;
 import java.util.Collection;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Supplier;
 
 import org.apache.jena.arq.querybuilder.AskBuilder;
@@ -11,10 +16,12 @@ import org.apache.jena.geosparql.implementation.vocabulary.Geo;
 import org.apache.jena.rdf.model.Literal;
 import org.apache.jena.sparql.core.Var;
 import org.apache.jena.vocabulary.RDF;
+import org.locationtech.jts.geom.Coordinate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xenei.robot.common.AbortedException;
 import org.xenei.robot.common.DistanceSensor;
+import org.xenei.robot.common.ListenerContainerImpl;
 import org.xenei.robot.common.Location;
 import org.xenei.robot.common.Mover;
 import org.xenei.robot.common.NavigationSnapshot;
@@ -24,6 +31,7 @@ import org.xenei.robot.common.mapping.Mapper;
 import org.xenei.robot.common.planning.Planner;
 import org.xenei.robot.common.planning.Step;
 import org.xenei.robot.common.utils.DoubleUtils;
+import org.xenei.robot.common.utils.MetricsRegistry;
 import org.xenei.robot.common.utils.RobutContext;
 import org.xenei.robot.mapper.MapImpl;
 import org.xenei.robot.mapper.MapReports;
@@ -31,8 +39,12 @@ import org.xenei.robot.mapper.MapperImpl;
 import org.xenei.robot.mapper.rdf.Namespace;
 import org.xenei.robot.planner.PlannerImpl;
 
-public class Processor {
+public class Processor implements AutoCloseable {
     private static final Logger LOG = LoggerFactory.getLogger(Processor.class);
+    /** the planning budget used in pipelined mode when no budget is set */
+    private static final Duration UNBOUNDED = Duration.ofNanos(Long.MAX_VALUE);
+    /** the counter of planning steps */
+    static final String STEP_COUNTER = "processor.steps";
 
     public final Map map;
     private final RobutContext ctxt;
@@ -41,20 +53,68 @@ public class Processor {
     private final DistanceSensor sensor;
     private final Mover mover;
     private final Supplier<Position> positionSupplier;
+    private final MetricsRegistry metrics;
+    /** the time budget for selecting a step, null for no limit */
+    private Duration planningBudget;
+    /** true if sensing and map ingestion overlap with motion */
+    private boolean pipelined;
+    /** runs the map ingestion in pipelined mode */
+    private ExecutorService ingestor;
+    /** the pending sensor read in pipelined mode */
+    private CompletableFuture<Location[]> sensing;
+    /** the pending map ingestion in pipelined mode */
+    private CompletableFuture<Void> ingestion;
+    /** delivers planner notifications to the visualizations off the control thread */
+    private ListenerContainerImpl visualizations;
 
     public Processor(RobutContext ctxt, Mover mover, Supplier<Position> positionSupplier, DistanceSensor sensor) {
         this.ctxt = ctxt;
         this.mover = mover;
         this.positionSupplier = positionSupplier;
         this.sensor = sensor;
+        this.metrics = ctxt.metrics;
         map = new MapImpl(ctxt);
         mapper = new MapperImpl(map);
         LOG.debug("Initial position: ()", positionSupplier.get());
         planner = new PlannerImpl(map, positionSupplier);
     }
 
+    /**
+     * Sets the time budget for selecting each step. When set, planning uses the
+     * anytime mode of the planner.
+     * 
+     * @param planningBudget the maximum time to plan a step, or null for no limit.
+     */
+    public void setPlanningBudget(Duration planningBudget) {
+        this.planningBudget = planningBudget;
+    }
+
+    /**
+     * Sets the pipelined execution mode. In pipelined mode the planner
+     * speculatively selects the next step while the current step is executed, and
+     * the sensor data is read and added to the map on a background thread as soon
+     * as a move completes, while the next step is selected. Speculative steps that
+     * are blocked by newly found obstacles are discarded once the map is current.
+     * 
+     * @param pipelined true to enable pipelined execution.
+     */
+    public void setPipelined(boolean pipelined) {
+        this.pipelined = pipelined;
+        if (pipelined && ingestor == null) {
+            ingestor = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "Processor-ingestion");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
     public void add(Mapper.Visualization visualization) {
-        planner.addListener(() -> visualization.redraw(planner.getTarget()));
+        if (visualizations == null) {
+            visualizations = ListenerContainerImpl.asynchronous();
+            planner.addListener(visualizations::notifyListeners);
+        }
+        visualizations.addListener(() -> visualization.redraw(planner.getTarget()));
     }
 
     private boolean checkTarget(NavigationSnapshot snapshot) {
@@ -121,13 +181,95 @@ public class Processor {
     }
     
     private void processSensorData(NavigationSnapshot snapshot) {
-        mapper.processSensorData(planner.getFinalTarget(), snapshot, sensor.sense());
-        planner.notifyListeners();
+        ingest(planner.getFinalTarget(), snapshot, sense());
+    }
+
+    private Location[] sense() {
+        try (MetricsRegistry.Timing timing = metrics.time("sensor.sense")) {
+            return sensor.sense();
+        }
+    }
+
+    private void ingest(Coordinate finalTarget, NavigationSnapshot snapshot, Location[] data) {
+        try (MetricsRegistry.Timing timing = metrics.time("mapper.processSensorData")) {
+            mapper.processSensorData(finalTarget, snapshot, data);
+        }
+        notifyListeners();
+    }
+
+    private void notifyListeners() {
+        try (MetricsRegistry.Timing timing = metrics.time("planner.notifyListeners")) {
+            planner.notifyListeners();
+        }
+    }
+
+    /**
+     * Gets the metrics for the processor and the map.
+     * 
+     * @return the metrics registry.
+     */
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Waits for the pending map ingestion to complete.
+     */
+    private void awaitIngestion() {
+        CompletableFuture<Void> pending = ingestion;
+        if (pending != null) {
+            try {
+                pending.join();
+            } catch (CompletionException e) {
+                throw new IllegalStateException("Sensor data processing failed", e.getCause());
+            } finally {
+                ingestion = null;
+                sensing = null;
+            }
+        }
+    }
+
+    /**
+     * Waits for the pending sensor read to complete so that the sensor is not
+     * moved while it is reading. Failures are reported by {@link #awaitIngestion()}.
+     */
+    private void awaitSensing() {
+        CompletableFuture<Location[]> pending = sensing;
+        if (pending != null) {
+            try {
+                pending.join();
+            } catch (CompletionException e) {
+                // reported when the ingestion is awaited.
+            }
+        }
+    }
+
+    private Optional<Step> selectStep() {
+        try (MetricsRegistry.Timing timing = metrics.time("planner.selectTarget")) {
+            if (pipelined) {
+                // the budgeted selection starts the speculative selection of the next step.
+                return planner.selectTarget(planningBudget == null ? UNBOUNDED : planningBudget);
+            }
+            if (planningBudget == null) {
+                return planner.selectTarget();
+            }
+            Optional<Step> step = planner.selectTarget(planningBudget);
+            while (step.isEmpty() && planner.isSelectionPending()) {
+                // no step is known yet so hold position until the selection completes.
+                step = planner.selectTarget(planningBudget);
+            }
+            return step;
+        }
     }
 
     private NavigationSnapshot setHeading(double heading) {
-     // adjust the heading 
-        mover.setHeading(heading);
+        // adjust the heading once the sensor has finished reading.
+        awaitSensing();
+        try (MetricsRegistry.Timing timing = metrics.time("mover.setHeading")) {
+            mover.setHeading(heading);
+        }
+        // the turn overlaps with any pending ingestion.
+        awaitIngestion();
         NavigationSnapshot snapshot = newSnapshot();
         // look where we are heading.
         processSensorData(snapshot);
@@ -136,14 +278,52 @@ public class Processor {
     
     private NavigationSnapshot move(Step step) {
         Location relativeLoc = mover.position().relativeLocation(step.getCoordinate());
-        map.setVisited(planner.getFinalTarget(), mover.move(relativeLoc).getCoordinate());
+        Position moved;
+        try (MetricsRegistry.Timing timing = metrics.time("mover.move")) {
+            if (pipelined) {
+                // the sensor is read on the ingestion thread as soon as the move completes
+                // so that the reading and the map update overlap with the next selection.
+                CompletableFuture<Position> motion = mover.moveAsync(relativeLoc, null);
+                sensing = motion.thenApplyAsync(p -> sense(), ingestor);
+                moved = motion.join();
+            } else {
+                moved = mover.move(relativeLoc);
+            }
+        } catch (CompletionException e) {
+            throw new IllegalStateException("Move failed", e.getCause());
+        }
+        map.setVisited(planner.getFinalTarget(), moved.getCoordinate());
         NavigationSnapshot snapshot = newSnapshot();
-        planner.registerPositionChange(snapshot);
-        processSensorData(snapshot);
+        try (MetricsRegistry.Timing timing = metrics.time("planner.registerPositionChange")) {
+            planner.registerPositionChange(snapshot);
+        }
+        if (pipelined) {
+            Coordinate finalTarget = planner.getFinalTarget();
+            ingestion = sensing.thenAcceptAsync(data -> ingest(finalTarget, snapshot, data), ingestor);
+        } else {
+            processSensorData(snapshot);
+        }
         return snapshot;
     }
 
+    /**
+     * Checks that a step selected before the last sensor data was ingested is not
+     * blocked by obstacles found in that data.
+     *
+     * @param snapshot the current snapshot.
+     * @param step the selected step.
+     * @return true if the path to the step is clear.
+     */
+    private boolean isStepClear(NavigationSnapshot snapshot, Step step) {
+        try (MetricsRegistry.Timing timing = metrics.time("processor.checkStep")) {
+            return mapper.isClearPath(snapshot.position, step.getCoordinate());
+        }
+    }
+
     public void moveTo(Location finalLocation, AbortTest abortTest) throws AbortedException {
+        // the counters are cumulative so the per step figures are taken from the change.
+        long startSteps = metrics.counter(STEP_COUNTER).get();
+        long startQueries = metrics.counter(MapImpl.QUERY_COUNTER).get();
         map.addCoord(finalLocation.getCoordinate(), null, false, null);
         NavigationSnapshot snapshot = new NavigationSnapshot(positionSupplier.get(), finalLocation.getCoordinate());
         processSensorData(snapshot);
@@ -151,19 +331,38 @@ public class Processor {
         if (LOG.isDebugEnabled()) {
             LOG.debug( "changing heading to {} from {}", heading, positionSupplier.get().getHeading() );
         }
+        Coordinate discarded = null;
         while (planner.getTarget() != null) {
-            Optional<Step> opStep = planner.selectTarget();
+            metrics.counter(STEP_COUNTER).increment();
+            Optional<Step> opStep = selectStep();
             if (planner.getTarget() == null) {
                 break;
             }
             if (opStep.isPresent()) {
                 Step step = opStep.get();
                 Position nextPosition = step.nextPosition(snapshot.position);
+                // the step may have been selected before the last scan was ingested.
+                boolean stale = ingestion != null;
                 if (snapshot.didHeadingChange(nextPosition)) {
                     snapshot = setHeading(nextPosition.getHeading());
                 }
+                // the map must be current before checking the step.
+                awaitIngestion();
+                // the same step is not discarded twice so that a replanned step always moves.
+                if (stale && (discarded == null || !discarded.equals2D(step.getCoordinate()))
+                        && !isStepClear(snapshot, step)) {
+                    LOG.debug("Step {} is blocked by new sensor data, replanning", step);
+                    discarded = step.getCoordinate();
+                    abortTest.check(this);
+                    continue;
+                }
+                discarded = null;
                 // can we still see the target
-                if (checkTarget(snapshot)) {
+                boolean canSee;
+                try (MetricsRegistry.Timing timing = metrics.time("processor.checkTarget")) {
+                    canSee = checkTarget(snapshot);
+                }
+                if (canSee) {
                     snapshot = move(step);
                 }
                 // should we abort
@@ -173,8 +372,30 @@ public class Processor {
                 break;
             }
         }
-        planner.notifyListeners();
+        awaitIngestion();
+        notifyListeners();
         planner.recordSolution();
+        if (LOG.isInfoEnabled()) {
+            long steps = metrics.counter(STEP_COUNTER).get() - startSteps;
+            long queries = metrics.counter(MapImpl.QUERY_COUNTER).get() - startQueries;
+            LOG.info("Navigation metrics ({} steps, {} map queries per step), totals since reset\n{}", steps,
+                    steps == 0 ? 0 : String.format("%.1f", (double) queries / steps), metrics.report());
+        }
+    }
+
+    /**
+     * Stops the background planning and releases the threads used by the
+     * processor.
+     */
+    @Override
+    public void close() {
+        planner.close();
+        if (visualizations != null) {
+            visualizations.close();
+        }
+        if (ingestor != null) {
+            ingestor.shutdownNow();
+        }
     }
 
     @FunctionalInterface
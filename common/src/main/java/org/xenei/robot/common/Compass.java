@@ -37,4 +37,16 @@ public interface Compass {
      * @return the instantaneous heading measurement.
      */
     double instantHeading();
+
+    /**
+     * The {@link System#nanoTime()} the heading was measured. Implementations that
+     * sample the device in the background return the time of the most recent
+     * sample so that callers can tell when the heading has not changed. The default
+     * is the current time, for implementations that read the device on each call.
+     * 
+     * @return the time the heading was measured.
+     */
+    default long sampleTime() {
+        return System.nanoTime();
+    }
 }
@@ -2,26 +2,170 @@ package org.xenei.robot.common;
 
 import java.util.Collection;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
-public class ListenerContainerImpl implements ListenerContainer {
-    private final Collection<Listener> listeners;
-    
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+/**
+ * A container of listeners. By default listeners are notified synchronously on
+ * the calling thread. When constructed with an executor the listeners are
+ * notified on the executor and bursts of notifications are coalesced so that a
+ * slow listener is only updated once with the latest state. Closing the
+ * container releases the thread of an {@link #asynchronous()} container, an
+ * executor passed to the constructor is left for the caller to shut down.
+ */
+public class ListenerContainerImpl implements ListenerContainer, AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(ListenerContainerImpl.class);
+
+    private final Collection<Slot> listeners;
+    /** the executor to notify listeners on, null for synchronous notification */
+    private final Executor executor;
+    /** the executor created by this container, shut down on close */
+    private final ExecutorService owned;
+    /** the number of notifications merged into a pending notification */
+    private final AtomicLong coalesced = new AtomicLong();
+    /** the number of notifications that could not be delivered */
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * Creates a container that notifies listeners synchronously.
+     */
     public ListenerContainerImpl() {
+        this(null);
+    }
+
+    /**
+     * Creates a container that notifies listeners on the executor.
+     *
+     * @param executor the executor to notify listeners on, null for synchronous
+     * notification.
+     */
+    public ListenerContainerImpl(Executor executor) {
+        this(executor, null);
+    }
+
+    private ListenerContainerImpl(Executor executor, ExecutorService owned) {
         this.listeners = new CopyOnWriteArrayList<>();
+        this.executor = executor;
+        this.owned = owned;
+    }
+
+    /**
+     * Creates a container that notifies listeners on a dedicated daemon thread.
+     *
+     * @return an asynchronous listener container.
+     */
+    public static ListenerContainerImpl asynchronous() {
+        ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "ListenerContainer-dispatch");
+            t.setDaemon(true);
+            return t;
+        });
+        return new ListenerContainerImpl(executor, executor);
+    }
+
+    /**
+     * Stops the dispatch thread of an asynchronous container. Pending
+     * notifications are discarded and later notifications are dropped.
+     */
+    @Override
+    public void close() {
+        if (owned != null) {
+            owned.shutdownNow();
+        }
     }
 
     @Override
     public void addListener(Listener listener) {
-        this.listeners.add(listener);
+        this.listeners.add(new Slot(listener));
     }
 
     @Override
     public void notifyListeners() {
-        Collection<Listener> l = this.listeners;
-        try {
-            l.forEach(Listener::update);
-        } finally {
+        if (executor == null) {
+            listeners.forEach(s -> s.listener.update());
+        } else {
+            listeners.forEach(Slot::request);
+        }
+    }
+
+    /**
+     * Gets the number of notifications that were merged into a notification that
+     * was already pending.
+     *
+     * @return the number of coalesced notifications.
+     */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    /**
+     * Gets the number of notifications that could not be delivered because the
+     * executor rejected them.
+     *
+     * @return the number of dropped notifications.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * A listener and its pending notification state.
+     */
+    private class Slot {
+        final Listener listener;
+        /** true if there is a notification that has not been delivered */
+        final AtomicBoolean dirty = new AtomicBoolean();
+        /** true if a drain task is scheduled or running */
+        final AtomicBoolean running = new AtomicBoolean();
+
+        Slot(Listener listener) {
+            this.listener = listener;
+        }
+
+        void request() {
+            if (dirty.getAndSet(true)) {
+                coalesced.incrementAndGet();
+                return;
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            if (running.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    dirty.set(false);
+                    running.set(false);
+                    dropped.incrementAndGet();
+                    LOG.warn("Listener notification rejected: {}", e.getMessage());
+                }
+            }
+        }
+
+        private void drain() {
+            try {
+                while (dirty.getAndSet(false)) {
+                    try {
+                        listener.update();
+                    } catch (RuntimeException e) {
+                        LOG.error("Listener failed", e);
+                    }
+                }
+            } finally {
+                running.set(false);
+            }
+            // a notification may have arrived after the loop completed.
+            if (dirty.get()) {
+                schedule();
+            }
         }
     }
 }
@@ -1,5 +1,7 @@
 package org.xenei.robot.common;
 
+import java.util.concurrent.CompletableFuture;
+
 public interface Mover {
     /**
      * Move to the specified location
@@ -20,4 +22,38 @@ public interface Mover {
      */
     void setHeading(double heading);
 
+    /**
+     * Starts a move to the specified location and returns immediately. Cancelling
+     * the returned future stops the motors, the position then reflects the
+     * distance actually travelled.
+     * 
+     * @param location The relative location to move to.
+     * @param listener the listener to receive progress updates, may be null.
+     * @return a future that completes with the new unquantized absolute position.
+     */
+    CompletableFuture<Position> moveAsync(Location location, ProgressListener listener);
+
+    /**
+     * Starts changing the heading for the mover and returns immediately.
+     * Cancelling the returned future stops the turn.
+     * 
+     * @param heading the absolute heading specified in radians.
+     * @param listener the listener to receive progress updates, may be null.
+     * @return a future that completes with the new absolute position.
+     */
+    CompletableFuture<Position> setHeadingAsync(double heading, ProgressListener listener);
+
+    /**
+     * Receives progress updates from asynchronous moves.
+     */
+    @FunctionalInterface
+    interface ProgressListener {
+        /**
+         * Called periodically while the mover is moving.
+         * 
+         * @param fraction the fraction of the movement completed, 0.0 to 1.0.
+         * @param position the estimated absolute position.
+         */
+        void progress(double fraction, Position position);
+    }
 }
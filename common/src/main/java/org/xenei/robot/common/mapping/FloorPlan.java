@@ -0,0 +1,232 @@
+package org.xenei.robot.common.mapping;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.xenei.robot.common.utils.GeometryUtils;
+
+/**
+ * A grid of unit cells where each cell is either open or an obstacle. The grid
+ * is centered on the origin. Runs of obstacle cells are converted into line
+ * obstacles so that large plans can be loaded into a {@link Map} with
+ * {@link Map#addObstacles}.
+ */
+public class FloorPlan {
+    private final int width;
+    private final int height;
+    private final BitSet cells;
+    private final int originX;
+    private final int originY;
+
+    /**
+     * Constructor. Creates an open floor plan.
+     *
+     * @param width the number of cells in the x direction.
+     * @param height the number of cells in the y direction.
+     */
+    public FloorPlan(int width, int height) {
+        if (width < 3 || height < 3) {
+            throw new IllegalArgumentException("Floor plan must be at least 3x3");
+        }
+        this.width = width;
+        this.height = height;
+        this.cells = new BitSet(width * height);
+        this.originX = -width / 2;
+        this.originY = -height / 2;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    private int index(int x, int y) {
+        return y * width + x;
+    }
+
+    private boolean inside(int x, int y) {
+        return x >= 0 && x < width && y >= 0 && y < height;
+    }
+
+    /**
+     * Returns true if the cell is an obstacle. Cells outside the plan are
+     * obstacles.
+     *
+     * @param x the cell column.
+     * @param y the cell row.
+     * @return true if the cell is an obstacle.
+     */
+    public boolean isObstacle(int x, int y) {
+        return !inside(x, y) || cells.get(index(x, y));
+    }
+
+    /**
+     * Marks a cell as an obstacle or open. Cells outside the plan are ignored.
+     *
+     * @param x the cell column.
+     * @param y the cell row.
+     * @param obstacle true to make the cell an obstacle.
+     * @return this floor plan for chaining.
+     */
+    public FloorPlan set(int x, int y, boolean obstacle) {
+        if (inside(x, y)) {
+            cells.set(index(x, y), obstacle);
+        }
+        return this;
+    }
+
+    /**
+     * Marks a rectangle of cells as obstacles or open.
+     *
+     * @param x the first column.
+     * @param y the first row.
+     * @param w the number of columns.
+     * @param h the number of rows.
+     * @param obstacle true to make the cells obstacles.
+     * @return this floor plan for chaining.
+     */
+    public FloorPlan fill(int x, int y, int w, int h, boolean obstacle) {
+        for (int j = Math.max(0, y); j < Math.min(height, y + h); j++) {
+            for (int i = Math.max(0, x); i < Math.min(width, x + w); i++) {
+                cells.set(index(i, j), obstacle);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Marks the outer ring of cells as obstacles.
+     *
+     * @return this floor plan for chaining.
+     */
+    public FloorPlan border() {
+        fill(0, 0, width, 1, true);
+        fill(0, height - 1, width, 1, true);
+        fill(0, 0, 1, height, true);
+        fill(width - 1, 0, 1, height, true);
+        return this;
+    }
+
+    /**
+     * Gets the number of obstacle cells.
+     *
+     * @return the number of obstacle cells.
+     */
+    public int obstacleCount() {
+        return cells.cardinality();
+    }
+
+    /**
+     * Gets the map coordinate of a cell.
+     *
+     * @param x the cell column.
+     * @param y the cell row.
+     * @return the coordinate of the cell.
+     */
+    public Coordinate toCoordinate(int x, int y) {
+        return new Coordinate(x + originX, y + originY);
+    }
+
+    /**
+     * Returns true if the cell and all its neighbours are open, so that a robot
+     * centered in the cell does not touch an obstacle.
+     *
+     * @param x the cell column.
+     * @param y the cell row.
+     * @return true if the cell has clearance.
+     */
+    public boolean isClear(int x, int y) {
+        for (int j = y - 1; j <= y + 1; j++) {
+            for (int i = x - 1; i <= x + 1; i++) {
+                if (isObstacle(i, j)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Selects a random cell that has clearance.
+     *
+     * @param random the random number generator.
+     * @return the coordinate of the cell.
+     * @throws IllegalStateException if there are no clear cells.
+     */
+    public Coordinate randomClear(Random random) {
+        List<int[]> clear = new ArrayList<>();
+        for (int y = 1; y < height - 1; y++) {
+            for (int x = 1; x < width - 1; x++) {
+                if (isClear(x, y)) {
+                    clear.add(new int[] { x, y });
+                }
+            }
+        }
+        if (clear.isEmpty()) {
+            throw new IllegalStateException("Floor plan has no clear cells");
+        }
+        int[] cell = clear.get(random.nextInt(clear.size()));
+        return toCoordinate(cell[0], cell[1]);
+    }
+
+    /**
+     * Converts the obstacle cells into geometries. Each cell is placed in the
+     * longest horizontal or vertical run of unused cells that starts with it, runs
+     * become lines and single cells become points.
+     *
+     * @param geometryUtils the geometry utilities to create the geometries with.
+     * @return the geometries of the obstacles.
+     */
+    public List<Geometry> toGeometries(GeometryUtils geometryUtils) {
+        List<Geometry> result = new ArrayList<>();
+        BitSet used = new BitSet(width * height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (!cells.get(index(x, y)) || used.get(index(x, y))) {
+                    continue;
+                }
+                int h = 1;
+                while (x + h < width && cells.get(index(x + h, y)) && !used.get(index(x + h, y))) {
+                    h++;
+                }
+                int v = 1;
+                while (y + v < height && cells.get(index(x, y + v)) && !used.get(index(x, y + v))) {
+                    v++;
+                }
+                if (h == 1 && v == 1) {
+                    used.set(index(x, y));
+                    result.add(geometryUtils.asPoint(toCoordinate(x, y)));
+                } else if (h >= v) {
+                    for (int i = 0; i < h; i++) {
+                        used.set(index(x + i, y));
+                    }
+                    result.add(geometryUtils.asLine(toCoordinate(x, y), toCoordinate(x + h - 1, y)));
+                } else {
+                    for (int j = 0; j < v; j++) {
+                        used.set(index(x, y + j));
+                    }
+                    result.add(geometryUtils.asLine(toCoordinate(x, y), toCoordinate(x, y + v - 1)));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Loads the obstacles into the map.
+     *
+     * @param map the map to load.
+     * @return the map.
+     */
+    public Map load(Map map) {
+        map.addObstacles(toGeometries(map.getContext().geometryUtils));
+        return map;
+    }
+}
@@ -0,0 +1,147 @@
+package org.xenei.robot.common.mapping;
+
+import java.util.Random;
+
+/**
+ * Generates floor plans for simulation and benchmarking. The same seed and
+ * arguments always produce the same plan.
+ */
+public class FloorPlanGenerator {
+
+    /**
+     * The kinds of floor plan.
+     */
+    public enum Layout {
+        /** rows of rooms with doors onto corridors, joined by a ring corridor */
+        OFFICE,
+        /** long racks separated by aisles, with cross aisles */
+        WAREHOUSE,
+        /** randomly placed small blocks */
+        CLUTTER
+    }
+
+    /** interior depth of an office room */
+    static final int ROOM_DEPTH = 6;
+    /** interior width of an office room */
+    static final int ROOM_WIDTH = 8;
+    /** width of corridors and aisles */
+    static final int CORRIDOR = 3;
+    /** width of a door */
+    static final int DOOR = 2;
+    /** width of a warehouse rack */
+    static final int RACK = 2;
+    /** length of a warehouse rack between cross aisles */
+    static final int RACK_LENGTH = 20;
+    /** the largest side of a clutter block */
+    static final int MAX_BLOCK = 3;
+
+    private final Random random;
+
+    /**
+     * Constructor.
+     *
+     * @param seed the random seed.
+     */
+    public FloorPlanGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Gets the random number generator, for example to select start and goal
+     * cells in the generated plans.
+     *
+     * @return the random number generator.
+     */
+    public Random random() {
+        return random;
+    }
+
+    /**
+     * Generates a floor plan of the layout. Clutter uses one block for every 20
+     * cells.
+     *
+     * @param layout the layout.
+     * @param width the number of cells in the x direction.
+     * @param height the number of cells in the y direction.
+     * @return the floor plan.
+     */
+    public FloorPlan generate(Layout layout, int width, int height) {
+        switch (layout) {
+        case OFFICE:
+            return office(width, height);
+        case WAREHOUSE:
+            return warehouse(width, height);
+        case CLUTTER:
+        default:
+            return clutter(width, height, width * height / 20);
+        }
+    }
+
+    /**
+     * Generates an office. Each band is a solid wall, a row of rooms, a wall with
+     * a door for each room and a corridor. A corridor around the inside of the
+     * border joins the corridors.
+     *
+     * @param width the number of cells in the x direction.
+     * @param height the number of cells in the y direction.
+     * @return the floor plan.
+     */
+    public FloorPlan office(int width, int height) {
+        FloorPlan plan = new FloorPlan(width, height).border();
+        int left = 1 + CORRIDOR;
+        int right = width - 2 - CORRIDOR;
+        int band = 1 + ROOM_DEPTH + 1 + CORRIDOR;
+        for (int y = 1 + CORRIDOR; y + band <= height - 1 - CORRIDOR; y += band) {
+            plan.fill(left, y, right - left, 1, true);
+            int doorRow = y + ROOM_DEPTH + 1;
+            plan.fill(left, doorRow, right - left, 1, true);
+            for (int x = left; x < right; x += ROOM_WIDTH + 1) {
+                plan.fill(x, y, 1, ROOM_DEPTH + 2, true);
+                int roomEnd = Math.min(x + ROOM_WIDTH + 1, right);
+                int span = roomEnd - x - 1 - DOOR;
+                if (span >= 0) {
+                    plan.fill(x + 1 + random.nextInt(span + 1), doorRow, DOOR, 1, false);
+                }
+            }
+            plan.fill(right, y, 1, ROOM_DEPTH + 2, true);
+        }
+        return plan;
+    }
+
+    /**
+     * Generates a warehouse. Racks run in the y direction separated by aisles and
+     * are broken by cross aisles.
+     *
+     * @param width the number of cells in the x direction.
+     * @param height the number of cells in the y direction.
+     * @return the floor plan.
+     */
+    public FloorPlan warehouse(int width, int height) {
+        FloorPlan plan = new FloorPlan(width, height).border();
+        for (int x = 1 + CORRIDOR; x + RACK <= width - 1 - CORRIDOR; x += RACK + CORRIDOR) {
+            for (int y = 1 + CORRIDOR; y < height - 1 - CORRIDOR; y += RACK_LENGTH + CORRIDOR) {
+                int length = Math.min(RACK_LENGTH, height - 1 - CORRIDOR - y);
+                plan.fill(x, y, RACK, length, true);
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * Generates randomly placed blocks inside a border.
+     *
+     * @param width the number of cells in the x direction.
+     * @param height the number of cells in the y direction.
+     * @param blocks the number of blocks to place.
+     * @return the floor plan.
+     */
+    public FloorPlan clutter(int width, int height, int blocks) {
+        FloorPlan plan = new FloorPlan(width, height).border();
+        for (int i = 0; i < blocks; i++) {
+            int w = 1 + random.nextInt(MAX_BLOCK);
+            int h = 1 + random.nextInt(MAX_BLOCK);
+            plan.fill(1 + random.nextInt(width - 2), 1 + random.nextInt(height - 2), w, h, true);
+        }
+        return plan;
+    }
+}
@@ -6,6 +6,7 @@ import java.util.Set;
 
 import org.apache.jena.rdf.model.Resource;
 import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
 import org.xenei.robot.common.Location;
 import org.xenei.robot.common.Position;
 import org.xenei.robot.common.ScaleInfo;
@@ -22,6 +23,29 @@ public interface Map {
      */
     void clear(String mapLayer);
 
+    /**
+     * Adds a listener that receives the changes made to the map. The changes from
+     * each write are delivered together.
+     * 
+     * @param listener the listener to add.
+     */
+    void addChangeListener(MapChange.Listener listener);
+
+    /**
+     * Removes a change listener.
+     * 
+     * @param listener the listener to remove.
+     */
+    void removeChangeListener(MapChange.Listener listener);
+
+    /**
+     * Gets the obstacle version. The version increases every time obstacles are
+     * added to or cleared from the map.
+     * 
+     * @return the obstacle version.
+     */
+    long getObstacleVersion();
+
     /**
      * Returns {@code true} if there is a clear view from {@code source} to
      * {@code dest}.
@@ -78,6 +102,14 @@ public interface Map {
      */
     Coordinate[] addPath(Resource model, Coordinate... coords);
 
+    /**
+     * Gets the coordinates of all the paths recorded in the specified graph.
+     * 
+     * @param model the name of the graph to read the paths from.
+     * @return the collection of path coordinates.
+     */
+    Collection<Coordinate[]> getPaths(Resource model);
+
     /**
      * Update the planning model with new distances based on the new target
      * 
@@ -109,6 +141,17 @@ public interface Map {
     // Coordinate addObstacle(Coordinate obstacle);
     Set<Obstacle> addObstacle(Obstacle obstacle);
 
+    /**
+     * Adds many obstacles to the planning graph in a single write. The geometries
+     * are not merged with each other or with existing obstacles and planning
+     * coordinates near them are not removed, so this is intended for loading a
+     * known map before planning starts.
+     * 
+     * @param geometries the geometries of the obstacles to add.
+     * @return the obstacles that were added.
+     */
+    Set<Obstacle> addObstacles(Collection<Geometry> geometries);
+
     /**
      * Gets the geometry for all the known obstacles.
      * 
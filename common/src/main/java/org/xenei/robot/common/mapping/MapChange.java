@@ -0,0 +1,150 @@
+package org.xenei.robot.common.mapping;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.UUID;
+
+import org.locationtech.jts.geom.Coordinate;
+
+/**
+ * A single change to a map. Changes are delivered to {@link Listener}s in
+ * batches, one batch for each write to the map.
+ */
+public class MapChange {
+
+    /**
+     * The types of change.
+     */
+    public enum Type {
+        /** an obstacle was added, the obstacle is set */
+        OBSTACLE_ADDED,
+        /** an obstacle was removed or merged into another, the obstacle is set */
+        OBSTACLE_REMOVED,
+        /** a coordinate was added, the coordinate and its data are set */
+        COORD_ADDED,
+        /** a coordinate property was changed, the coordinate and its data are set */
+        COORD_UPDATED,
+        /** a coordinate was deleted, the coordinate is set */
+        COORD_DELETED,
+        /** a coordinate was marked as visited, the coordinate and its data are set */
+        VISITED,
+        /** a path was recorded, the coordinates of the path are set */
+        PATH_RECORDED,
+        /**
+         * the distances of all coordinates were recalculated for a new target, the
+         * target and the data of every coordinate are set
+         */
+        RECALCULATED,
+        /** a map layer was cleared */
+        CLEARED
+    }
+
+    /**
+     * Receives the changes made to a map.
+     */
+    @FunctionalInterface
+    public interface Listener {
+        /**
+         * Called after a write to the map completes.
+         *
+         * @param changes the changes made by the write, never empty.
+         */
+        void onChange(MapChange[] changes);
+    }
+
+    public final Type type;
+    /** the map layer that was changed */
+    public final String layer;
+    private final Obstacle obstacle;
+    private final Coordinate[] coordinates;
+    private final MapCoord[] mapCoords;
+
+    private MapChange(Type type, String layer, Obstacle obstacle, Coordinate... coordinates) {
+        this(type, layer, obstacle, new MapCoord[0], coordinates);
+    }
+
+    private MapChange(Type type, String layer, Obstacle obstacle, MapCoord[] mapCoords, Coordinate... coordinates) {
+        this.type = type;
+        this.layer = layer;
+        this.obstacle = obstacle;
+        this.mapCoords = mapCoords;
+        this.coordinates = coordinates;
+    }
+
+    public static MapChange obstacleAdded(String layer, Obstacle obstacle) {
+        return new MapChange(Type.OBSTACLE_ADDED, layer, obstacle);
+    }
+
+    public static MapChange obstacleRemoved(String layer, Obstacle obstacle) {
+        return new MapChange(Type.OBSTACLE_REMOVED, layer, obstacle);
+    }
+
+    public static MapChange coord(Type type, String layer, Coordinate coordinate) {
+        return new MapChange(type, layer, null, coordinate);
+    }
+
+    public static MapChange coord(Type type, String layer, MapCoord mapCoord) {
+        return new MapChange(type, layer, null, new MapCoord[] { mapCoord }, mapCoord.geometry.getCoordinate());
+    }
+
+    public static MapChange pathRecorded(String layer, Coordinate[] path) {
+        return new MapChange(Type.PATH_RECORDED, layer, null, Arrays.copyOf(path, path.length));
+    }
+
+    public static MapChange recalculated(String layer, Coordinate target, Collection<MapCoord> mapCoords) {
+        return new MapChange(Type.RECALCULATED, layer, null, mapCoords.toArray(new MapCoord[mapCoords.size()]),
+                target);
+    }
+
+    public static MapChange cleared(String layer) {
+        return new MapChange(Type.CLEARED, layer, null);
+    }
+
+    /**
+     * Gets the obstacle for obstacle changes.
+     *
+     * @return the obstacle or an empty optional.
+     */
+    public Optional<Obstacle> obstacle() {
+        return Optional.ofNullable(obstacle);
+    }
+
+    /**
+     * Gets the UUID of the obstacle for obstacle changes.
+     *
+     * @return the UUID of the obstacle or an empty optional.
+     */
+    public Optional<UUID> uuid() {
+        return obstacle().map(Obstacle::uuid);
+    }
+
+    /**
+     * Gets the coordinates of the change. For coordinate changes this is the
+     * coordinate, for paths the points of the path, and for recalculations the
+     * target.
+     *
+     * @return the coordinates, may be empty.
+     */
+    public Coordinate[] coordinates() {
+        return Arrays.copyOf(coordinates, coordinates.length);
+    }
+
+    /**
+     * Gets the coordinate data of the change. For coordinate changes other than
+     * deletions this is the data of the coordinate, where isIndirect is true if
+     * the write marked the coordinate as indirect. Only a recalculation clears
+     * the flag, so for recalculations this is the data of every coordinate.
+     *
+     * @return the coordinate data, may be empty.
+     */
+    public MapCoord[] mapCoords() {
+        return Arrays.copyOf(mapCoords, mapCoords.length);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("MapChange[%s %s %s %s]", type, layer, obstacle == null ? "" : obstacle.uuid(),
+                Arrays.toString(coordinates));
+    }
+}
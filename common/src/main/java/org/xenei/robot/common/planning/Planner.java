@@ -1,5 +1,6 @@
 package org.xenei.robot.common.planning;
 
+import java.time.Duration;
 import java.util.Collection;
 import java.util.Optional;
 
@@ -8,7 +9,7 @@ import org.xenei.robot.common.FrontsCoordinate;
 import org.xenei.robot.common.ListenerContainer;
 import org.xenei.robot.common.NavigationSnapshot;
 
-public interface Planner extends ListenerContainer {
+public interface Planner extends ListenerContainer, AutoCloseable {
 
     /**
      * Gets the coordinates of the target.
@@ -94,6 +95,44 @@ public interface Planner extends ListenerContainer {
      */
     Optional<Step> selectTarget();
 
+    /**
+     * Plans a step within a time budget. If the best step can not be found within
+     * the budget the best step known so far, generally continuing toward the
+     * current target, is returned. If no step is known an empty Optional is
+     * returned, {@link #isSelectionPending()} returns true and the search
+     * continues in the background so that the next call from the same position
+     * may use it.
+     * 
+     * @param budget the maximum time to spend selecting a step.
+     * @return The step toward the target selection.
+     */
+    Optional<Step> selectTarget(Duration budget);
+
+    /**
+     * Returns true if the last call to {@code selectTarget(Duration)} ran out of
+     * budget before any step was known. The caller should hold its position and
+     * call again.
+     * 
+     * @return true if the step selection has not completed.
+     */
+    boolean isSelectionPending();
+
+    /**
+     * Gets the number of calls to {@code selectTarget(Duration)} that performed a
+     * step selection.
+     * 
+     * @return the number of budgeted selections.
+     */
+    long getBudgetedSelectionCount();
+
+    /**
+     * Gets the number of calls to {@code selectTarget(Duration)} where the budget
+     * was exceeded.
+     * 
+     * @return the number of times the planning budget was exceeded.
+     */
+    long getBudgetExceededCount();
+
     /**
      * Sets the registers the current position as part of the solution.
      */
@@ -111,4 +150,10 @@ public interface Planner extends ListenerContainer {
      */
     NavigationSnapshot getSnapshot();
 
+    /**
+     * Stops any background planning and releases the threads the planner uses.
+     */
+    @Override
+    void close();
+
 }
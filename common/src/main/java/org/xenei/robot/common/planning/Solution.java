@@ -3,6 +3,7 @@ package org.xenei.robot.common.planning;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.function.BiPredicate;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import org.locationtech.jts.geom.Coordinate;
@@ -10,8 +11,28 @@ import org.xenei.robot.common.FrontsCoordinate;
 
 public class Solution {
 
+    /**
+     * The strategies available to simplify a solution.
+     */
+    public enum Simplification {
+        /**
+         * Checks every later point from each retained point and selects the lowest
+         * cost visible point. Requires O(n^2) visibility checks, executed in parallel.
+         */
+        EXHAUSTIVE,
+        /**
+         * Gallops forward from each retained point and binary searches for the
+         * farthest visible point. Assumes visibility along the path is mostly
+         * monotonic and requires O(n log n) expected visibility checks.
+         */
+        GREEDY
+    }
+
     private final List<SolutionRecord> path;
 
+    /** true if the path has been simplified and not modified since. */
+    private boolean simplified;
+
     public Solution() {
         path = new ArrayList<>();
     }
@@ -36,6 +57,7 @@ public class Solution {
         SolutionRecord sr = new SolutionRecord(c);
         if (!path.contains(sr)) {
             path.add(sr);
+            simplified = false;
         }
     }
 
@@ -81,39 +103,110 @@ public class Solution {
         int limit = stepCount();
         while (idx < limit) {
             SolutionRecord current = path.get(idx);
-            double minCost = current.cost;
-            int nextIdx = limit;
-            for (int scan = idx + 1; scan < limit; scan++) {
-                SolutionRecord scanning = path.get(scan);
-                if (clearCheck.test(current.coord, scanning.coord)) {
-                    if (scanning.cost < minCost) {
-                        minCost = scanning.cost;
-                        nextIdx = scan;
-                    }
-                }
-            }
+            // costs decrease along the path so the lowest cost visible record is the
+            // one with the highest index.
+            int nextIdx = IntStream.range(idx + 1, limit).parallel()
+                    .filter(scan -> path.get(scan).cost < current.cost
+                            && clearCheck.test(current.coord, path.get(scan).coord))
+                    .max().orElse(limit);
+            result.add(path.get(nextIdx));
+            idx = nextIdx;
+        }
+        setPath(result);
+    }
+
+    private void removeUnnecessaryStepsGreedy(BiPredicate<Coordinate, Coordinate> clearCheck) {
+        List<SolutionRecord> result = new ArrayList<>();
+        result.add(path.get(0));
+        int idx = 0;
+        int limit = stepCount();
+        while (idx < limit) {
+            int nextIdx = farthestVisible(idx, limit, clearCheck);
             result.add(path.get(nextIdx));
             idx = nextIdx;
         }
         setPath(result);
     }
 
+    /**
+     * Finds the farthest visible record from {@code idx} by galloping forward
+     * until a blocked record is found and then binary searching the gap. If no
+     * later record is visible the next record on the path, which was actually
+     * traversed, is returned.
+     * 
+     * @param idx the index of the current record.
+     * @param limit the index of the last record.
+     * @param clearCheck the visibility check.
+     * @return the index of the next record to retain.
+     */
+    private int farthestVisible(int idx, int limit, BiPredicate<Coordinate, Coordinate> clearCheck) {
+        Coordinate current = path.get(idx).coord;
+        int visible = idx + 1;
+        int blocked = -1;
+        int offset = 1;
+        while (blocked == -1) {
+            offset *= 2;
+            int probe = Math.min(idx + offset, limit);
+            if (clearCheck.test(current, path.get(probe).coord)) {
+                visible = probe;
+                if (probe == limit) {
+                    return limit;
+                }
+            } else {
+                blocked = probe;
+            }
+        }
+        while (blocked - visible > 1) {
+            int mid = (visible + blocked) >>> 1;
+            if (clearCheck.test(current, path.get(mid).coord)) {
+                visible = mid;
+            } else {
+                blocked = mid;
+            }
+        }
+        return visible;
+    }
+
     private void setPath(List<SolutionRecord> lst) {
         path.clear();
         path.addAll(lst);
     }
 
     /**
-     * Builds the shortest path based on the path stack and the target.
+     * Builds the shortest path based on the path stack and the target using the
+     * {@link Simplification#EXHAUSTIVE} strategy.
      * 
      * @param clearCheck a predicate that returns clear if the path between the two
      * coordinates is clear.
      */
     public void simplify(BiPredicate<Coordinate, Coordinate> clearCheck) {
-        if (path.size() > 2) {
+        simplify(clearCheck, Simplification.EXHAUSTIVE);
+    }
+
+    /**
+     * Builds the shortest path based on the path stack and the target. Neither
+     * strategy checks a pair of points more than once, so the results of the
+     * clearCheck are not cached here. Simplifying an already simplified solution
+     * is a no-op.
+     * 
+     * @param clearCheck a predicate that returns clear if the path between the two
+     * coordinates is clear. Must be safe to call from multiple threads.
+     * @param mode the simplification strategy to use.
+     */
+    public void simplify(BiPredicate<Coordinate, Coordinate> clearCheck, Simplification mode) {
+        if (path.size() > 2 && !simplified) {
             recalculateCost(end());
-            removeUnnecessarySteps(clearCheck);
+            switch (mode) {
+            case GREEDY:
+                removeUnnecessaryStepsGreedy(clearCheck);
+                break;
+            case EXHAUSTIVE:
+            default:
+                removeUnnecessarySteps(clearCheck);
+                break;
+            }
         }
+        simplified = true;
     }
 
     private class SolutionRecord {
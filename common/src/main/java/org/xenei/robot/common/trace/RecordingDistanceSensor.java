@@ -0,0 +1,45 @@
+package org.xenei.robot.common.trace;
+
+import java.util.function.Supplier;
+
+import org.xenei.robot.common.DistanceSensor;
+import org.xenei.robot.common.Location;
+import org.xenei.robot.common.Position;
+
+/**
+ * A distance sensor that records every scan of another sensor to a trace.
+ */
+public class RecordingDistanceSensor implements DistanceSensor {
+    private final DistanceSensor delegate;
+    private final Supplier<Position> positionSupplier;
+    private final TraceWriter writer;
+
+    /**
+     * Constructor.
+     *
+     * @param delegate the sensor to record.
+     * @param positionSupplier the supplier of the position the scans are taken
+     * from.
+     * @param writer the trace to write to.
+     */
+    public RecordingDistanceSensor(DistanceSensor delegate, Supplier<Position> positionSupplier,
+            TraceWriter writer) {
+        this.delegate = delegate;
+        this.positionSupplier = positionSupplier;
+        this.writer = writer;
+        writer.writeSensor(delegate.maxRange());
+    }
+
+    @Override
+    public Location[] sense() {
+        Position position = positionSupplier.get();
+        Location[] result = delegate.sense();
+        writer.writeScan(position, result);
+        return result;
+    }
+
+    @Override
+    public double maxRange() {
+        return delegate.maxRange();
+    }
+}
@@ -0,0 +1,84 @@
+package org.xenei.robot.common.trace;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.xenei.robot.common.Location;
+import org.xenei.robot.common.Mover;
+import org.xenei.robot.common.Position;
+
+/**
+ * A mover that records the position after every move and heading change of
+ * another mover to a trace.
+ */
+public class RecordingMover implements Mover {
+    private final Mover delegate;
+    private final TraceWriter writer;
+
+    /**
+     * Constructor.
+     *
+     * @param delegate the mover to record.
+     * @param writer the trace to write to.
+     */
+    public RecordingMover(Mover delegate, TraceWriter writer) {
+        this.delegate = delegate;
+        this.writer = writer;
+    }
+
+    @Override
+    public Position move(Location location) {
+        Position result = delegate.move(location);
+        writer.writeMove(result);
+        return result;
+    }
+
+    @Override
+    public Position position() {
+        return delegate.position();
+    }
+
+    @Override
+    public void setHeading(double heading) {
+        delegate.setHeading(heading);
+        writer.writeHeading(delegate.position());
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The delegate future is returned so that cancelling it stops the motors. The
+     * frame is written when the move completes. A cancelled future completes
+     * before the motors stop so no frame is written for a cancelled move, the
+     * position it reached is recorded by the next frame.
+     * </p>
+     */
+    @Override
+    public CompletableFuture<Position> moveAsync(Location location, ProgressListener listener) {
+        CompletableFuture<Position> result = delegate.moveAsync(location, listener);
+        result.whenComplete((position, e) -> {
+            if (!result.isCancelled()) {
+                writer.writeMove(position == null ? delegate.position() : position);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The delegate future is returned so that cancelling it stops the turn. The
+     * frame is written when the turn completes, no frame is written for a
+     * cancelled turn.
+     * </p>
+     */
+    @Override
+    public CompletableFuture<Position> setHeadingAsync(double heading, ProgressListener listener) {
+        CompletableFuture<Position> result = delegate.setHeadingAsync(heading, listener);
+        result.whenComplete((position, e) -> {
+            if (!result.isCancelled()) {
+                writer.writeHeading(position == null ? delegate.position() : position);
+            }
+        });
+        return result;
+    }
+}
@@ -0,0 +1,85 @@
+package org.xenei.robot.common.trace;
+
+import java.util.NoSuchElementException;
+
+import org.xenei.robot.common.DistanceSensor;
+import org.xenei.robot.common.Location;
+import org.xenei.robot.common.Position;
+
+/**
+ * A distance sensor that returns the scans recorded in a trace, in order. Frames
+ * are read from the trace as the scans are requested.
+ */
+public class ReplayDistanceSensor implements DistanceSensor {
+    private final TraceReader reader;
+    private double maxRange = Double.POSITIVE_INFINITY;
+    /** the next scan to return */
+    private TraceFrame next;
+    /** the position of the last scan returned */
+    private Position position;
+
+    /**
+     * Constructor. Reads the trace up to the first scan.
+     *
+     * @param reader the trace to replay.
+     */
+    public ReplayDistanceSensor(TraceReader reader) {
+        this.reader = reader;
+        advance();
+    }
+
+    /**
+     * Reads frames until the next scan, recording the sensor range on the way.
+     */
+    private void advance() {
+        next = null;
+        while (next == null && reader.hasNext()) {
+            TraceFrame frame = reader.next();
+            if (frame.type == TraceFrame.Type.SENSOR) {
+                maxRange = frame.maxRange();
+            } else if (frame.type == TraceFrame.Type.SCAN) {
+                next = frame;
+            }
+        }
+    }
+
+    /**
+     * Returns true if there are more scans in the trace.
+     *
+     * @return true if there are more scans.
+     */
+    public boolean hasNext() {
+        return next != null;
+    }
+
+    /**
+     * Gets the position recorded with the last scan returned by
+     * {@link #sense()}.
+     *
+     * @return the recorded position or null if no scan has been returned.
+     */
+    public Position getPosition() {
+        return position;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws NoSuchElementException if the trace has no more scans.
+     */
+    @Override
+    public Location[] sense() {
+        if (next == null) {
+            throw new NoSuchElementException("No more scans in the trace");
+        }
+        TraceFrame frame = next;
+        position = frame.position();
+        advance();
+        return frame.locations();
+    }
+
+    @Override
+    public double maxRange() {
+        return maxRange;
+    }
+}
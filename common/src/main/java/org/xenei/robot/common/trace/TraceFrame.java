@@ -0,0 +1,83 @@
+package org.xenei.robot.common.trace;
+
+import java.util.Arrays;
+
+import org.xenei.robot.common.Location;
+import org.xenei.robot.common.Position;
+
+/**
+ * A single frame of a sensor trace.
+ */
+public class TraceFrame {
+
+    /**
+     * The types of frame.
+     */
+    public enum Type {
+        /** the sensor description, only the maximum range is set */
+        SENSOR,
+        /** a scan, the position and the scan locations are set */
+        SCAN,
+        /** a completed move, the position is set */
+        MOVE,
+        /** a completed heading change, the position is set */
+        HEADING;
+
+        private static final Type[] VALUES = values();
+
+        static Type fromCode(int code) {
+            if (code < 0 || code >= VALUES.length) {
+                throw new IllegalArgumentException("Unknown trace frame type: " + code);
+            }
+            return VALUES[code];
+        }
+    }
+
+    public final Type type;
+    /** the time of the frame in nanoseconds from the start of the trace */
+    public final long nanos;
+    private final Position position;
+    private final Location[] locations;
+    private final double maxRange;
+
+    TraceFrame(Type type, long nanos, Position position, Location[] locations, double maxRange) {
+        this.type = type;
+        this.nanos = nanos;
+        this.position = position;
+        this.locations = locations;
+        this.maxRange = maxRange;
+    }
+
+    /**
+     * Gets the position of the robot when the frame was recorded.
+     *
+     * @return the position, null for sensor frames.
+     */
+    public Position position() {
+        return position;
+    }
+
+    /**
+     * Gets the scan locations relative to the position.
+     *
+     * @return the scan locations, empty for frames other than scans.
+     */
+    public Location[] locations() {
+        return locations == null ? new Location[0] : Arrays.copyOf(locations, locations.length);
+    }
+
+    /**
+     * Gets the maximum range of the sensor.
+     *
+     * @return the maximum range, NaN for frames other than sensor frames.
+     */
+    public double maxRange() {
+        return maxRange;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("TraceFrame[%s %s %s %s]", type, nanos, position,
+                locations == null ? "" : Arrays.toString(locations));
+    }
+}
@@ -0,0 +1,184 @@
+package org.xenei.robot.common.trace;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xenei.robot.common.Location;
+import org.xenei.robot.common.Position;
+
+/**
+ * Reads a trace written by {@link TraceWriter}. Frames are read from the file as
+ * they are requested so traces of any length can be replayed. A trace that ends
+ * part way through a frame, for example because the robot lost power, ends at
+ * the last complete frame.
+ */
+public class TraceReader implements Iterator<TraceFrame>, Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(TraceReader.class);
+
+    private final FileChannel channel;
+    private final long startMillis;
+    private ByteBuffer buffer;
+    private boolean eof;
+    private TraceFrame next;
+
+    /**
+     * Constructor.
+     *
+     * @param path the path of the trace file.
+     * @throws IOException on error or if the file is not a trace.
+     */
+    public TraceReader(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        buffer = ByteBuffer.allocate(TraceWriter.BUFFER_SIZE);
+        buffer.flip();
+        try {
+            if (!fill(TraceWriter.HEADER_SIZE) || buffer.getInt() != TraceWriter.MAGIC) {
+                throw new IOException(path + " is not a trace file");
+            }
+            short version = buffer.getShort();
+            if (version != TraceWriter.VERSION) {
+                throw new IOException("Unsupported trace version " + version);
+            }
+            startMillis = buffer.getLong();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the time the trace was started.
+     *
+     * @return the start time in epoch milliseconds.
+     */
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    /**
+     * Ensures that the buffer holds at least the number of bytes.
+     *
+     * @param size the number of bytes required.
+     * @return false if the end of the file was reached first.
+     */
+    private boolean fill(int size) throws IOException {
+        if (buffer.remaining() >= size) {
+            return true;
+        }
+        buffer.compact();
+        if (buffer.capacity() < size) {
+            ByteBuffer larger = ByteBuffer.allocate(size);
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+        while (!eof && buffer.position() < size) {
+            if (channel.read(buffer) < 0) {
+                eof = true;
+            }
+        }
+        buffer.flip();
+        return buffer.remaining() >= size;
+    }
+
+    /**
+     * Gets the number of bytes that have not been read from the buffer and file.
+     *
+     * @return the number of unread bytes.
+     */
+    private long available() throws IOException {
+        return buffer.remaining() + channel.size() - channel.position();
+    }
+
+    private Position readPosition() {
+        return Position.from(buffer.getDouble(), buffer.getDouble(), buffer.getDouble());
+    }
+
+    private TraceFrame readFrame() throws IOException {
+        if (!fill(1 + Long.BYTES)) {
+            if (buffer.hasRemaining()) {
+                LOG.warn("Trace ends with a partial frame");
+            }
+            return null;
+        }
+        TraceFrame.Type type;
+        try {
+            type = TraceFrame.Type.fromCode(buffer.get());
+        } catch (IllegalArgumentException e) {
+            // a damaged frame ends the trace like a partial one.
+            LOG.warn("Trace ends with a corrupt frame: {}", e.getMessage());
+            return null;
+        }
+        long nanos = buffer.getLong();
+        switch (type) {
+        case SENSOR:
+            if (fill(Double.BYTES)) {
+                return new TraceFrame(type, nanos, null, null, buffer.getDouble());
+            }
+            break;
+        case SCAN:
+            if (fill(3 * Double.BYTES + Integer.BYTES)) {
+                Position position = readPosition();
+                int count = buffer.getInt();
+                if (count < 0) {
+                    throw new IOException("Corrupt scan frame with " + count + " locations");
+                }
+                // a count larger than the rest of the file is a partial or corrupt frame.
+                long size = (long) count * 2 * Double.BYTES;
+                if (size <= available() && fill((int) size)) {
+                    Location[] locations = new Location[count];
+                    for (int i = 0; i < count; i++) {
+                        locations[i] = Location.from(buffer.getDouble(), buffer.getDouble());
+                    }
+                    return new TraceFrame(type, nanos, position, locations, Double.NaN);
+                }
+            }
+            break;
+        case MOVE:
+        case HEADING:
+        default:
+            if (fill(3 * Double.BYTES)) {
+                return new TraceFrame(type, nanos, readPosition(), null, Double.NaN);
+            }
+            break;
+        }
+        LOG.warn("Trace ends with a partial {} frame", type);
+        return null;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            try {
+                next = readFrame();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to read trace", e);
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public TraceFrame next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        TraceFrame result = next;
+        next = null;
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
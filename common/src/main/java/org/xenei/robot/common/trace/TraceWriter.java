@@ -0,0 +1,153 @@
+package org.xenei.robot.common.trace;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.xenei.robot.common.Location;
+import org.xenei.robot.common.Position;
+
+/**
+ * Writes a binary sensor trace. Frames are appended to a buffer that is written
+ * to the file channel when it fills, so recording costs no more than a copy
+ * into memory for most frames.
+ * <p>
+ * The file starts with a header of the magic number, the format version and the
+ * start time in epoch milliseconds. Each frame is the type code, the time in
+ * nanoseconds since the start, and the frame data. All values are big endian.
+ * </p>
+ * <ul>
+ * <li>SENSOR: the maximum range.</li>
+ * <li>SCAN: the position (x, y, heading), the number of locations and the x, y
+ * of each location.</li>
+ * <li>MOVE and HEADING: the position (x, y, heading).</li>
+ * </ul>
+ */
+public class TraceWriter implements Closeable {
+    /** "RBTR" */
+    static final int MAGIC = 0x52425452;
+    static final short VERSION = 1;
+    /** the size of the header */
+    static final int HEADER_SIZE = Integer.BYTES + Short.BYTES + Long.BYTES;
+    /** the default size of the write buffer */
+    static final int BUFFER_SIZE = 64 * 1024;
+    /** the size of the frame type and time */
+    private static final int FRAME_HEADER = 1 + Long.BYTES;
+    private static final int POSITION_SIZE = 3 * Double.BYTES;
+
+    private final FileChannel channel;
+    private final long start;
+    private ByteBuffer buffer;
+
+    /**
+     * Constructor. Creates or replaces the trace file.
+     *
+     * @param path the path of the trace file.
+     * @throws IOException on error.
+     */
+    public TraceWriter(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        start = System.nanoTime();
+        buffer.putInt(MAGIC).putShort(VERSION).putLong(System.currentTimeMillis());
+    }
+
+    /**
+     * Writes a sensor frame.
+     *
+     * @param maxRange the maximum range of the sensor.
+     */
+    public synchronized void writeSensor(double maxRange) {
+        frame(TraceFrame.Type.SENSOR, Double.BYTES).putDouble(maxRange);
+    }
+
+    /**
+     * Writes a scan frame.
+     *
+     * @param position the position the scan was taken from.
+     * @param locations the scan locations relative to the position.
+     */
+    public synchronized void writeScan(Position position, Location[] locations) {
+        ByteBuffer buf = frame(TraceFrame.Type.SCAN,
+                POSITION_SIZE + Integer.BYTES + locations.length * 2 * Double.BYTES);
+        putPosition(buf, position);
+        buf.putInt(locations.length);
+        for (Location l : locations) {
+            buf.putDouble(l.getX()).putDouble(l.getY());
+        }
+    }
+
+    /**
+     * Writes a move frame.
+     *
+     * @param position the position after the move.
+     */
+    public synchronized void writeMove(Position position) {
+        putPosition(frame(TraceFrame.Type.MOVE, POSITION_SIZE), position);
+    }
+
+    /**
+     * Writes a heading frame.
+     *
+     * @param position the position after the heading change.
+     */
+    public synchronized void writeHeading(Position position) {
+        putPosition(frame(TraceFrame.Type.HEADING, POSITION_SIZE), position);
+    }
+
+    private static void putPosition(ByteBuffer buf, Position position) {
+        buf.putDouble(position.getX()).putDouble(position.getY()).putDouble(position.getHeading());
+    }
+
+    /**
+     * Makes space for a frame and writes the frame header.
+     *
+     * @param type the frame type.
+     * @param size the size of the frame data.
+     * @return the buffer to write the frame data into.
+     */
+    private ByteBuffer frame(TraceFrame.Type type, int size) {
+        int needed = FRAME_HEADER + size;
+        if (buffer.remaining() < needed) {
+            drain();
+            if (buffer.capacity() < needed) {
+                buffer = ByteBuffer.allocateDirect(needed);
+            }
+        }
+        return buffer.put((byte) type.ordinal()).putLong(System.nanoTime() - start);
+    }
+
+    private void drain() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to write trace", e);
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Writes the buffered frames to the file.
+     */
+    public synchronized void flush() {
+        drain();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            drain();
+        } finally {
+            channel.close();
+        }
+    }
+}
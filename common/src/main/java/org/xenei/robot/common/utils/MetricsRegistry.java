@@ -0,0 +1,228 @@
+package org.xenei.robot.common.utils;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * A small registry of named timers and counters. Timers record a histogram of
+ * durations in power of 2 microsecond buckets. The registry can be dumped as a
+ * text report.
+ */
+public class MetricsRegistry {
+    /** the number of histogram buckets, the last bucket holds everything larger */
+    static final int BUCKETS = 32;
+
+    private final Map<String, Timer> timers = new ConcurrentSkipListMap<>();
+    private final Map<String, Counter> counters = new ConcurrentSkipListMap<>();
+
+    /**
+     * Gets or creates the named timer.
+     *
+     * @param name the name of the timer.
+     * @return the timer.
+     */
+    public Timer timer(String name) {
+        return timers.computeIfAbsent(name, k -> new Timer());
+    }
+
+    /**
+     * Gets or creates the named counter.
+     *
+     * @param name the name of the counter.
+     * @return the counter.
+     */
+    public Counter counter(String name) {
+        return counters.computeIfAbsent(name, k -> new Counter());
+    }
+
+    /**
+     * Starts timing the named stage. The duration is recorded when the returned
+     * timing is closed.
+     *
+     * @param name the name of the timer.
+     * @return the running timing.
+     */
+    public Timing time(String name) {
+        return timer(name).start();
+    }
+
+    /**
+     * Clears all timers and counters.
+     */
+    public void reset() {
+        timers.values().forEach(Timer::reset);
+        counters.values().forEach(Counter::reset);
+    }
+
+    /**
+     * Creates a report of all timers and counters that have recorded values.
+     *
+     * @return the report.
+     */
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-32s %8s %12s %10s %10s %10s %10s%n", "timer", "count", "total ms", "mean ms",
+                "p50 ms", "p99 ms", "max ms"));
+        timers.forEach((name, timer) -> {
+            if (timer.count() > 0) {
+                sb.append(String.format("%-32s %8d %12.3f %10.3f %10.3f %10.3f %10.3f%n", name, timer.count(),
+                        toMillis(timer.totalNanos()), toMillis(timer.meanNanos()), toMillis(timer.percentile(0.5)),
+                        toMillis(timer.percentile(0.99)), toMillis(timer.maxNanos())));
+            }
+        });
+        sb.append(String.format("%-32s %8s%n", "counter", "value"));
+        counters.forEach((name, counter) -> {
+            if (counter.get() != 0) {
+                sb.append(String.format("%-32s %8d%n", name, counter.get()));
+            }
+        });
+        return sb.toString();
+    }
+
+    private static double toMillis(double nanos) {
+        return nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * A running timing that records its duration when closed.
+     */
+    public static class Timing implements AutoCloseable {
+        private final Timer timer;
+        private final long start;
+
+        private Timing(Timer timer) {
+            this.timer = timer;
+            this.start = System.nanoTime();
+        }
+
+        @Override
+        public void close() {
+            timer.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * A histogram of durations.
+     */
+    public static class Timer {
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong total = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        private Timer() {
+        }
+
+        /**
+         * Starts a timing.
+         *
+         * @return the running timing.
+         */
+        public Timing start() {
+            return new Timing(this);
+        }
+
+        /**
+         * Records a duration.
+         *
+         * @param nanos the duration in nanoseconds.
+         */
+        public void record(long nanos) {
+            long value = Math.max(0, nanos);
+            count.incrementAndGet();
+            total.addAndGet(value);
+            LongUnaryOperator op = m -> Math.max(m, value);
+            max.getAndUpdate(op);
+            buckets.incrementAndGet(bucket(value));
+        }
+
+        /**
+         * Gets the bucket for the duration. Bucket n holds durations less than 2^n
+         * microseconds.
+         */
+        static int bucket(long nanos) {
+            long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+            int result = 64 - Long.numberOfLeadingZeros(micros);
+            return Math.min(result, BUCKETS - 1);
+        }
+
+        public long count() {
+            return count.get();
+        }
+
+        public long totalNanos() {
+            return total.get();
+        }
+
+        public long maxNanos() {
+            return max.get();
+        }
+
+        public double meanNanos() {
+            long c = count.get();
+            return c == 0 ? 0 : (double) total.get() / c;
+        }
+
+        /**
+         * Estimates the percentile from the histogram. The result is the upper bound
+         * of the bucket that holds the percentile, limited by the maximum.
+         *
+         * @param fraction the percentile as a fraction, 0.0 to 1.0.
+         * @return the estimated duration in nanoseconds.
+         */
+        public double percentile(double fraction) {
+            long c = count.get();
+            if (c == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(fraction * c);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    return Math.min(TimeUnit.MICROSECONDS.toNanos(1L << i), max.get());
+                }
+            }
+            return max.get();
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets.set(i, 0);
+            }
+            count.set(0);
+            total.set(0);
+            max.set(0);
+        }
+    }
+
+    /**
+     * A counter.
+     */
+    public static class Counter {
+        private final AtomicLong value = new AtomicLong();
+
+        private Counter() {
+        }
+
+        public void increment() {
+            value.incrementAndGet();
+        }
+
+        public void add(long delta) {
+            value.addAndGet(delta);
+        }
+
+        public long get() {
+            return value.get();
+        }
+
+        void reset() {
+            value.set(0);
+        }
+    }
+}
@@ -4,14 +4,16 @@ import java.util.Collections;
 import java.util.Map;
 
 import org.apache.commons.collections4.map.LRUMap;
-import org.apache.jena.riot.RIOT;
+import org.apache.jena.sparql.function.FunctionRegistry;
+import org.apache.jena.sparql.util.Context;
 import org.apache.jena.sparql.util.Symbol;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.GeometryFactory;
 import org.xenei.robot.common.ChassisInfo;
 import org.xenei.robot.common.ScaleInfo;
 import org.xenei.robot.mapper.GraphGeomFactory;
-import org.xenei.robot.mapper.rdf.Namespace;
+import org.xenei.robot.mapper.rdf.WktDataType;
+import org.xenei.robot.mapper.rdf.functions.Functions;
 
 public class RobutContext {
 
@@ -22,6 +24,10 @@ public class RobutContext {
     public final GeometryUtils geometryUtils;
     public final GraphGeomFactory graphGeomFactory;
     public final Map<String, Geometry> cache = Collections.synchronizedMap(new LRUMap<String, Geometry>(500));
+    /** the timers and counters for this context */
+    public final MetricsRegistry metrics = new MetricsRegistry();
+    /** the SPARQL functions bound to this context */
+    public final FunctionRegistry functionRegistry;
 
     /**
      * Constructor
@@ -30,14 +36,24 @@ public class RobutContext {
      * @param chassisInfo Info about the chassis of the robot.
      */
     public RobutContext(ScaleInfo scaleInfo, ChassisInfo chassisInfo) {
-        RIOT.getContext().put(symbol, this);
         this.scaleInfo = scaleInfo;
         this.chassisInfo = chassisInfo;
         this.geometryFactory = new GeometryFactory(scaleInfo.getPrecisionModel());
         this.geometryUtils = new GeometryUtils(this);
-        this.graphGeomFactory = new GraphGeomFactory(geometryUtils);
+        this.graphGeomFactory = new GraphGeomFactory(geometryUtils, new WktDataType(geometryFactory, cache));
+        this.functionRegistry = new Functions().createRegistry();
+    }
 
-        Namespace.init(this);
+    /**
+     * Registers this context and its functions in a Jena context, usually the
+     * context of a dataset. Queries executed against the dataset then use this
+     * context and do not see any other robut context in the JVM.
+     * 
+     * @param context the Jena context to register in.
+     */
+    public void register(Context context) {
+        context.set(symbol, this);
+        FunctionRegistry.set(context, functionRegistry);
     }
 
     public double getScaledRadius() {
@@ -15,21 +15,52 @@ import org.locationtech.jts.geom.Geometry;
 import org.xenei.robot.common.FrontsCoordinate;
 import org.xenei.robot.common.utils.GeometryUtils;
 import org.xenei.robot.mapper.rdf.Namespace;
+import org.xenei.robot.mapper.rdf.WktDataType;
 
 public final class GraphGeomFactory {
 
     private final GeometryUtils geometryUtils;
-
-    public GraphGeomFactory(GeometryUtils geometryUtils) {
+    private final WktDataType dataType;
+
+    /**
+     * Constructor.
+     * 
+     * @param geometryUtils the geometry utilities to create geometries with.
+     * @param dataType the datatype for the WKT literals. Literals are always
+     * created with this datatype rather than the one registered in the global
+     * {@code TypeMapper}.
+     */
+    public GraphGeomFactory(GeometryUtils geometryUtils, WktDataType dataType) {
         this.geometryUtils = geometryUtils;
-    }
-
+        this.dataType = dataType;
+    }
+
+    /**
+     * Gets the datatype used for the WKT literals.
+     * 
+     * @return the WKT datatype.
+     */
+    public WktDataType getDataType() {
+        return dataType;
+    }
+
+    /**
+     * Gets the geometry of a WKT literal. Literals of another datatype are parsed
+     * with this factory's datatype so that the geometry uses this context's
+     * precision model.
+     * 
+     * @param wkt the WKT literal.
+     * @return the geometry.
+     */
     public Geometry fromWkt(Literal wkt) {
-        return (Geometry) wkt.getValue();
+        if (wkt.getDatatype() == dataType) {
+            return (Geometry) wkt.getValue();
+        }
+        return dataType.parse(wkt.getLexicalForm());
     }
 
     public Literal asWKT(Geometry geom) {
-        return ResourceFactory.createTypedLiteral(geom);
+        return ResourceFactory.createTypedLiteral(dataType.unparse(geom), dataType);
     }
 
     public Literal asWKT(Coordinate point) {
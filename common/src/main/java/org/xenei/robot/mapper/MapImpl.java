@@ -9,9 +9,11 @@ import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import org.apache.commons.math3.util.Precision;
@@ -47,6 +49,7 @@ import org.apache.jena.update.UpdateExecutionFactory;
 import org.apache.jena.update.UpdateRequest;
 import org.apache.jena.vocabulary.RDF;
 import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -55,20 +58,28 @@ import org.xenei.robot.common.Location;
 import org.xenei.robot.common.Position;
 import org.xenei.robot.common.UnmodifiableCoordinate;
 import org.xenei.robot.common.mapping.Map;
+import org.xenei.robot.common.mapping.MapChange;
 import org.xenei.robot.common.mapping.MapCoord;
 import org.xenei.robot.common.mapping.Obstacle;
 import org.xenei.robot.common.planning.Solution;
 import org.xenei.robot.common.planning.Step;
 import org.xenei.robot.common.utils.CoordUtils;
+import org.xenei.robot.common.utils.MetricsRegistry;
 import org.xenei.robot.common.utils.RobutContext;
 import org.xenei.robot.mapper.rdf.Namespace;
 
 public class MapImpl implements Map {
+    /** the name of the counter of queries issued against the map */
+    public static final String QUERY_COUNTER = "map.queries";
     private static final Logger LOG = LoggerFactory.getLogger(MapImpl.class);
     private final RobutContext ctxt;
     private final Dataset data;
     private final ExprFactory exprF;
     private final ObstacleHandler obstacleHandler;
+    private final VisibilityCache visibilityCache;
+    private final List<MapChange.Listener> changeListeners = new CopyOnWriteArrayList<>();
+    /** the number of step candidates checked concurrently */
+    private int candidateBatchSize = Math.max(2, Runtime.getRuntime().availableProcessors());
 
     public static PrefixMapping getPrefixes() {
         return PrefixMapping.Factory.create().setNsPrefixes(GeoSPARQL_URI.getPrefixes())
@@ -78,6 +89,7 @@ public class MapImpl implements Map {
     public MapImpl(RobutContext ctxt) {
         this.ctxt = ctxt;
         data = DatasetFactory.create();
+        ctxt.register(data.getContext());
         data.getDefaultModel().setNsPrefixes(getPrefixes());
         data.addNamedModel(Namespace.BaseModel, defaultModel());
         data.addNamedModel(Namespace.PlanningModel, defaultModel());
@@ -90,6 +102,8 @@ public class MapImpl implements Map {
             throw new RuntimeException(e);
         }
         obstacleHandler = new ObstacleHandler();
+        visibilityCache = new VisibilityCache(ctxt.geometryFactory,
+                ctxt.chassisInfo.radius + ctxt.scaleInfo.getResolution());
     }
 
     @Override
@@ -103,9 +117,83 @@ public class MapImpl implements Map {
                 data.replaceNamedModel(namedGraph, defaultModel());
             }
         }
+        visibilityCache.invalidateAll();
+        publish(List.of(MapChange.cleared(namedGraph)));
 
     }
 
+    /**
+     * Sets the number of step candidates that are checked concurrently when
+     * selecting a step.
+     * 
+     * @param candidateBatchSize the number of candidates to check at once.
+     */
+    public void setCandidateBatchSize(int candidateBatchSize) {
+        this.candidateBatchSize = Math.max(1, candidateBatchSize);
+    }
+
+    @Override
+    public void addChangeListener(MapChange.Listener listener) {
+        changeListeners.add(listener);
+    }
+
+    @Override
+    public void removeChangeListener(MapChange.Listener listener) {
+        changeListeners.remove(listener);
+    }
+
+    /**
+     * Returns true if there are change listeners. Used to skip building changes
+     * that no one will receive.
+     * 
+     * @return true if there are change listeners.
+     */
+    private boolean publishing() {
+        return !changeListeners.isEmpty();
+    }
+
+    /**
+     * Sends the changes from a single write to the change listeners.
+     * 
+     * @param changes the changes to send.
+     */
+    private void publish(List<MapChange> changes) {
+        if (changes.isEmpty() || !publishing()) {
+            return;
+        }
+        MapChange[] batch = changes.toArray(new MapChange[changes.size()]);
+        for (MapChange.Listener listener : changeListeners) {
+            try {
+                listener.onChange(batch);
+            } catch (RuntimeException e) {
+                LOG.error("Map change listener failed", e);
+            }
+        }
+    }
+
+    @Override
+    public long getObstacleVersion() {
+        return visibilityCache.getVersion();
+    }
+
+    /**
+     * Discards the cached clear path results so that later checks are
+     * calculated. The obstacle version is not changed. Used to measure the
+     * uncached cost of map operations.
+     */
+    public void clearVisibilityCache() {
+        visibilityCache.clear();
+    }
+
+    /**
+     * Gets the visibility cache. Package private for testing.
+     * 
+     * @return the visibility cache.
+     */
+    VisibilityCache getVisibilityCache() {
+        return visibilityCache;
+    }
+
     @Override
     public RobutContext getContext() {
         return ctxt;
@@ -136,22 +224,40 @@ public class MapImpl implements Map {
         }
     }
 
+    /**
+     * Counts a query in the metrics.
+     * 
+     * @param kind the kind of query.
+     */
+    private void countQuery(String kind) {
+        ctxt.metrics.counter(QUERY_COUNTER).increment();
+        ctxt.metrics.counter(QUERY_COUNTER + "." + kind).increment();
+    }
+
     private void doUpdate(UpdateBuilder update) {
-        try (LockHandler lh = new LockHandler(Lock.WRITE)) {
-            UpdateExecutionFactory.create(update.build(), data).execute();
-        }
+        doUpdate(update.build());
     }
 
     private void doUpdate(UpdateRequest request) {
-        try (LockHandler lh = new LockHandler(Lock.WRITE)) {
+        countQuery("update");
+        MapQueryEvent event = new MapQueryEvent("update");
+        try (LockHandler lh = new LockHandler(Lock.WRITE, event)) {
             UpdateExecutionFactory.create(request, data).execute();
+        } finally {
+            event.finish();
         }
     }
 
     public boolean ask(AskBuilder ask) {
-        try (LockHandler lh = new LockHandler(Lock.READ);
+        countQuery("ask");
+        MapQueryEvent event = new MapQueryEvent("ask");
+        try (LockHandler lh = new LockHandler(Lock.READ, event);
                 QueryExecution exec = QueryExecutionFactory.create(ask.build(), data)) {
-            return exec.execAsk();
+            boolean result = exec.execAsk();
+            event.rows = result ? 1 : 0;
+            return result;
+        } finally {
+            event.finish();
         }
     }
 
@@ -169,19 +275,31 @@ public class MapImpl implements Map {
      * @param processor the processor to run to handle the results.
      */
     void exec(SelectBuilder select, Predicate<QuerySolution> processor) {
-        try (LockHandler lh = new LockHandler(Lock.READ);
+        countQuery("select");
+        MapQueryEvent event = new MapQueryEvent("select");
+        try (LockHandler lh = new LockHandler(Lock.READ, event);
                 QueryExecution qexec = QueryExecutionFactory.create(select.build(), data)) {
             Iterator<QuerySolution> results = qexec.execSelect();
-            while (results.hasNext() && processor.test(results.next())) {
-                // all work is done in the processor above
+            boolean more = true;
+            while (more && results.hasNext()) {
+                event.rows++;
+                more = processor.test(results.next());
             }
+        } finally {
+            event.finish();
         }
     }
 
     Model construct(ConstructBuilder select) {
-        try (LockHandler lh = new LockHandler(Lock.READ);
+        countQuery("construct");
+        MapQueryEvent event = new MapQueryEvent("construct");
+        try (LockHandler lh = new LockHandler(Lock.READ, event);
                 QueryExecution qexec = QueryExecutionFactory.create(select.build(), data)) {
-            return qexec.execConstruct();
+            Model result = qexec.execConstruct();
+            event.rows = result.size();
+            return result;
+        } finally {
+            event.finish();
         }
     }
 
@@ -189,7 +307,8 @@ public class MapImpl implements Map {
     public Optional<Step> addCoord(Coordinate coord, Double distance, boolean visited, Boolean isIndirect) {
         MapCoordinate mapCoord = new MapCoordinate(coord);
         UpdateRequest req = new UpdateRequest();
-        if (exists(mapCoord, Namespace.Coord)) {
+        boolean existing = exists(mapCoord, Namespace.Coord);
+        if (existing) {
             WhereBuilder where = new WhereBuilder().addWhere(Namespace.s, RDF.type, Namespace.Coord)
                     .addWhere(Namespace.s, Geo.AS_WKT_PROP, ctxt.graphGeomFactory.asWKT(mapCoord.getCoordinate()));
             UpdateBuilder newDat = new UpdateBuilder().addWhere(where);
@@ -222,6 +341,9 @@ public class MapImpl implements Map {
         }
 
         doUpdate(req);
+        publish(List.of(MapChange.coord(existing ? MapChange.Type.COORD_UPDATED : MapChange.Type.COORD_ADDED,
+                Namespace.PlanningModel.getURI(),
+                asMapCoord(mapCoord.getCoordinate(), isIndirect != null && isIndirect))));
         LOG.debug("Added {} for {}", mapCoord, coord);
         return Optional.ofNullable(distance == null || distance <= 0 ? null
                 : StepImpl.builder().setCoordinate(mapCoord).setDistance(distance)
@@ -234,6 +356,28 @@ public class MapImpl implements Map {
         return (Set<Obstacle>) obstacleHandler.addObstacle(obst);
     }
 
+    @Override
+    public Set<Obstacle> addObstacles(Collection<Geometry> geometries) {
+        Model model = ModelFactory.createDefaultModel();
+        Set<Obstacle> result = new HashSet<>();
+        for (Geometry geom : geometries) {
+            ObstacleImpl obst = new ObstacleImpl(geom);
+            obst.in(model);
+            result.add(obst);
+        }
+        // add the statements directly rather than building an update request.
+        try (LockHandler lh = new LockHandler(Lock.WRITE)) {
+            data.getNamedModel(Namespace.PlanningModel).add(model);
+        }
+        visibilityCache.invalidateAll();
+        LOG.debug("Loaded {} obstacles", result.size());
+        if (publishing()) {
+            String layer = Namespace.PlanningModel.getURI();
+            publish(result.stream().map(o -> MapChange.obstacleAdded(layer, o)).collect(Collectors.toList()));
+        }
+        return result;
+    }
+
     @Override
     public boolean isObstacle(Coordinate point) {
         return obstacleHandler.isObstacle(point);
@@ -324,10 +468,30 @@ public class MapImpl implements Map {
         triples.add(Triple.create(tn.asNode(), RDF.type.asNode(), Namespace.Path.asNode()));
         triples.add(Triple.create(tn.asNode(), Geo.AS_WKT_PROP.asNode(), path.asNode()));
         doUpdate(new UpdateBuilder().addInsert(model, triples));
+        publish(List.of(MapChange.pathRecorded(model.getURI(), points)));
         LOG.debug("Path <{} {}>", points[0], points[points.length - 1]);
         return points;
     }
 
+    @Override
+    public Collection<Coordinate[]> getPaths(Resource model) {
+        Var wkt = Var.alloc("wkt");
+        SelectBuilder sb = new SelectBuilder().addVar(wkt) //
+                .from(model.getURI()) //
+                .addWhere(Namespace.s, RDF.type, Namespace.Path) //
+                .addWhere(Namespace.s, Geo.AS_WKT_PROP, wkt);
+
+        List<Coordinate[]> result = new ArrayList<>();
+
+        Predicate<QuerySolution> processor = soln -> {
+            result.add(ctxt.graphGeomFactory.fromWkt(soln.getLiteral(wkt.getName())).getCoordinates());
+            return true;
+        };
+
+        exec(sb, processor);
+        return result;
+    }
+
     @Override
     public void cutPath(Coordinate a, Coordinate b) {
         cutPath(Namespace.PlanningModel, a, b);
@@ -371,6 +535,18 @@ public class MapImpl implements Map {
 
     @Override
     public boolean isClearPath(Coordinate from, Coordinate target) {
+        return visibilityCache.isClearPath(from, target, this::calcClearPath);
+    }
+
+    /**
+     * Queries the map to determine if there is a clear path between the
+     * coordinates.
+     * 
+     * @param from the starting coordinate.
+     * @param target the ending coordinate.
+     * @return true if there are no obstacles on the path.
+     */
+    private boolean calcClearPath(Coordinate from, Coordinate target) {
         LOG.debug("checking clearView from {} to {} ", from, target);
         Literal pathWkt = ctxt.graphGeomFactory.asWKTPath(ctxt.chassisInfo.radius, from, target);
         Var wkt = Var.alloc("wkt");
@@ -427,6 +603,12 @@ public class MapImpl implements Map {
      */
     @Override
     public Optional<Step> getBestStep(Coordinate currentCoords) {
+        try (MetricsRegistry.Timing timing = ctxt.metrics.time("map.getBestStep")) {
+            return bestStep(currentCoords);
+        }
+    }
+
+    private Optional<Step> bestStep(Coordinate currentCoords) {
         if (data.isEmpty()) {
             LOG.debug("No map points");
             return Optional.empty();
@@ -461,8 +643,8 @@ public class MapImpl implements Map {
 
     @Override
     public void setVisited(Coordinate finalTarget, Coordinate coord) {
+        MapCoordinate mapCoord = new MapCoordinate(coord);
         if (!updateCoordinate(Namespace.PlanningModel, coord, Namespace.visited, Boolean.TRUE)) {
-            MapCoordinate mapCoord = new MapCoordinate(coord);
             UpdateRequest req = new UpdateRequest();
             Resource qA = ctxt.graphGeomFactory.asRDF(mapCoord, Namespace.Coord);
             req.add(new UpdateBuilder().addInsert(Namespace.PlanningModel, qA.getModel()) //
@@ -472,6 +654,19 @@ public class MapImpl implements Map {
                     .build());
             doUpdate(req);
         }
+        publish(List.of(MapChange.coord(MapChange.Type.VISITED, Namespace.PlanningModel.getURI(),
+                asMapCoord(mapCoord.getCoordinate(), false))));
+    }
+
+    /**
+     * Creates the coordinate data reported in a map change.
+     *
+     * @param coord the coordinate.
+     * @param isIndirect true if the change marked the coordinate as indirect.
+     * @return the coordinate data.
+     */
+    private MapCoord asMapCoord(Coordinate coord, boolean isIndirect) {
+        return new MapCoord(coord.getX(), coord.getY(), isIndirect, ctxt.geometryFactory.createPoint(coord));
     }
 
     @Override
@@ -499,14 +694,22 @@ public class MapImpl implements Map {
                                 .addBind(ctxt.graphGeomFactory.calcDistance(exprF, targ, wkt), distance))
                         .build());
 
-        getCoords().stream().filter(mc -> !isClearPath(mc.location.getCoordinate(), target))
-                .forEach(mc -> req.add(new UpdateBuilder() //
+        List<MapCoord> recalculated = new ArrayList<>();
+        for (MapCoord mc : getCoords()) {
+            boolean indirect = !isClearPath(mc.location.getCoordinate(), target);
+            if (indirect) {
+                req.add(new UpdateBuilder() //
                         .addInsert(Namespace.PlanningModel, Namespace.s, Namespace.isIndirect, true) //
                         .addGraph(Namespace.UnionModel, new WhereBuilder() //
                                 .addWhere(Namespace.s, Geo.AS_WKT_PROP, ctxt.graphGeomFactory.asWKT(mc.geometry))) //
-                        .build()));
+                        .build());
+            }
+            recalculated.add(new MapCoord(mc.location.getX(), mc.location.getY(), indirect, mc.geometry));
+        }
 
         doUpdate(req);
+        publish(List.of(
+                MapChange.recalculated(Namespace.PlanningModel.getURI(), result.getCoordinate(), recalculated)));
 
         return result.getCoordinate();
     }
@@ -595,12 +798,15 @@ public class MapImpl implements Map {
         this.exec(sb, processor);
 
         List<Literal> updateCoords = new ArrayList<>();
+        List<MapChange> changes = new ArrayList<>();
 
         for (Coordinate c : candidates) {
             Geometry path = ctxt.geometryUtils.asPath(ctxt.chassisInfo.radius, c, finalTarget);
             for (Obstacle obst : newObstacles) {
                 if (path.distance(obst.geom()) == 0) {
                     updateCoords.add(ctxt.graphGeomFactory.asWKT(c));
+                    changes.add(MapChange.coord(MapChange.Type.COORD_UPDATED, Namespace.PlanningModel.getURI(),
+                            asMapCoord(c, true)));
                     break;
                 }
             }
@@ -614,6 +820,7 @@ public class MapImpl implements Map {
                             .addWhere(Namespace.s, Geo.AS_WKT_NODE, wkt)
                             .addFilter(exprF.in(wkt, updateCoords.toArray())));
             doUpdate(ub);
+            publish(changes);
         }
     }
 
@@ -630,6 +837,20 @@ public class MapImpl implements Map {
             lock.enterCriticalSection(flag);
         }
 
+        /**
+         * Constructor that records the time spent waiting for the lock in the
+         * event.
+         * 
+         * @param flag the lock type.
+         * @param event the event to record the wait in.
+         */
+        private LockHandler(boolean flag, MapQueryEvent event) {
+            lock = data.getLock();
+            long start = System.nanoTime();
+            lock.enterCriticalSection(flag);
+            event.lockWait = System.nanoTime() - start;
+        }
+
         @Override
         public void close() {
             lock.leaveCriticalSection();
@@ -739,12 +960,14 @@ public class MapImpl implements Map {
         Var other2Wkt = Var.alloc("other2Wkt");
 
         final SelectBuilder query;
-        final AskBuilder checkVisited;
-        final Predicate<QuerySolution> processor;
+        private final Coordinate currentCoords;
+        private final Predicate<StepImpl.Builder> builderPred;
 
         StepQuery(Coordinate currentCoords, Predicate<StepImpl.Builder> builderPred) {
             MapCoordinate mapCoords = new MapCoordinate(currentCoords);
             wkt = ctxt.graphGeomFactory.asWKT(mapCoords.getCoordinate());
+            this.currentCoords = currentCoords;
+            this.builderPred = builderPred;
 
             query = new SelectBuilder().addVar(indirectFlg).addVar(cost).addVar(otherWkt).addVar(other).addVar(dist) //
                     .from(Namespace.UnionModel.getURI()) //
@@ -761,36 +984,93 @@ public class MapImpl implements Map {
                             indirectFlg)
                     .addOrderBy(indirectFlg, Order.ASCENDING).addOrderBy(cost, Order.ASCENDING)
                     ;
+        }
 
-            // skip coords that are within the tolerance range of visited coords
-            // returns true if the position has been visited.
-            checkVisited = new AskBuilder() //
+        /**
+         * Creates the query to skip coords that are within the tolerance range of
+         * visited coords. The query returns true if the position has been visited.
+         * 
+         * @param candidateWkt the WKT of the candidate coordinate.
+         * @return the ask query.
+         */
+        private AskBuilder checkVisited(Literal candidateWkt) {
+            return new AskBuilder() //
                     .addWhere(other2, Namespace.visited, "?ignore") //
                     .addWhere(other2, RDF.type, Namespace.Coord)//
                     .addWhere(other2, Geo.AS_WKT_PROP, other2Wkt) //
-                    .addFilter(exprF.le(ctxt.graphGeomFactory.calcDistance(exprF, otherWkt, other2Wkt),
-                            ctxt.chassisInfo.radius)) //
-            ;
-
-            processor = soln -> {
-                Geometry geom = ctxt.graphGeomFactory.fromWkt(soln.getLiteral(otherWkt.getName()));
-                for (Coordinate candidate : geom.getCoordinates()) {
-                    Literal candidateWkt = ctxt.graphGeomFactory.asWKT(candidate);
-                    checkVisited.setVar(otherWkt, candidateWkt);
-                    // if not visited and has a clear path
-                    if (!ask(checkVisited) && isClearPath(currentCoords, candidate)) {
-                        StepImpl.Builder builder = StepImpl.builder().setCoordinate(candidate)
-                                .setCost(soln.getLiteral(cost.getName()).getDouble())
-                                .setDistance(soln.getLiteral(dist.getName()).getDouble()).setGeometry(geom);
-                        return builderPred.test(builder);
+                    .addFilter(exprF.le(ctxt.graphGeomFactory.calcDistance(exprF, candidateWkt, other2Wkt),
+                            ctxt.chassisInfo.radius));
+        }
+
+        /**
+         * Returns true if the candidate has not been visited and has a clear path
+         * from the current coordinates.
+         * 
+         * @param candidate the candidate coordinate.
+         * @return true if the candidate may be selected.
+         */
+        private boolean isAvailable(Coordinate candidate) {
+            return !ask(checkVisited(ctxt.graphGeomFactory.asWKT(candidate))) && isClearPath(currentCoords, candidate);
+        }
+
+        /**
+         * Executes the query and then checks the candidates in cost order. The
+         * candidates are checked concurrently in batches of
+         * {@code candidateBatchSize} and the lowest cost passing candidate is passed
+         * to the builder predicate. Processing stops when the predicate returns
+         * false.
+         */
+        public void execute() {
+            List<Row> rows = new ArrayList<>();
+            // read all the rows so the read lock is released before the checks run.
+            exec(query, soln -> {
+                rows.add(new Row(soln));
+                return true;
+            });
+
+            for (int start = 0; start < rows.size(); start += candidateBatchSize) {
+                List<Row> batch = rows.subList(start, Math.min(start + candidateBatchSize, rows.size()));
+                List<Coordinate> candidates = new ArrayList<>();
+                batch.forEach(r -> candidates.addAll(Arrays.asList(r.candidates)));
+                boolean[] available = new boolean[candidates.size()];
+                IntStream.range(0, available.length).parallel()
+                        .forEach(i -> available[i] = isAvailable(candidates.get(i)));
+
+                int idx = 0;
+                for (Row row : batch) {
+                    Coordinate selected = null;
+                    for (Coordinate candidate : row.candidates) {
+                        if (selected == null && available[idx]) {
+                            selected = candidate;
+                        }
+                        idx++;
+                    }
+                    if (selected != null) {
+                        StepImpl.Builder builder = StepImpl.builder().setCoordinate(selected).setCost(row.cost)
+                                .setDistance(row.dist).setGeometry(row.geom);
+                        if (!builderPred.test(builder)) {
+                            return;
+                        }
                     }
                 }
-                return true;
-            };
+            }
         }
 
-        public void execute() {
-            exec(query, processor);
+        /**
+         * A result row from the step query.
+         */
+        private class Row {
+            final Geometry geom;
+            final Coordinate[] candidates;
+            final double cost;
+            final double dist;
+
+            Row(QuerySolution soln) {
+                geom = ctxt.graphGeomFactory.fromWkt(soln.getLiteral(otherWkt.getName()));
+                candidates = geom.getCoordinates();
+                cost = soln.getLiteral(StepQuery.this.cost.getName()).getDouble();
+                dist = soln.getLiteral(StepQuery.this.dist.getName()).getDouble();
+            }
         }
     }
 
@@ -902,7 +1182,7 @@ public class MapImpl implements Map {
             return ctxt.geometryFactory.createLineString(cSet.toArray(new Coordinate[cSet.size()]));
         }
 
-        private Set<Obstacle> mergeIntersectOrTouch(UpdateRequest req, Obstacle obstacle) {
+        private Set<Obstacle> mergeIntersectOrTouch(UpdateRequest req, Obstacle obstacle, Set<Obstacle> removed) {
             Var otherWkt = Var.alloc("otherWkt");
             SelectBuilder sb = new SelectBuilder().setDistinct(true).addVar(Namespace.s).addVar(otherWkt) //
                     .from(Namespace.UnionModel.getURI()) //
@@ -931,6 +1211,7 @@ public class MapImpl implements Map {
                 solns.remove(obstacle);
                 if (!solns.isEmpty()) {
                     Geometry result = makeCloud(obstacle, solns);
+                    removed.addAll(solns);
                     for (Obstacle obst : solns) {
                         req.add(new UpdateBuilder()
                                 .addDelete(Namespace.PlanningModel, obst.rdf(), Namespace.p, Namespace.o)
@@ -961,8 +1242,9 @@ public class MapImpl implements Map {
 
             UpdateRequest req = new UpdateRequest();
             Set<Obstacle> work;
+            Set<Obstacle> removed = new HashSet<>();
             if (ask(askBuilder)) {
-                work = mergeIntersectOrTouch(req, obst);
+                work = mergeIntersectOrTouch(req, obst, removed);
             } else {
                 Model merged = ModelFactory.createDefaultModel();
                 obst.in(merged);
@@ -984,10 +1266,67 @@ public class MapImpl implements Map {
                                     exprF.asList(
                                             work.stream().map(Obstacle::rdf).collect(Collectors.toList()).toArray()))))
                     .build());
-            doUpdate(req);
+            List<Coordinate> deleted;
+            try (LockHandler lh = new LockHandler(Lock.WRITE)) {
+                // only needed to report the deleted coords, found under the same lock as
+                // the delete so that the report matches it.
+                deleted = publishing() ? coordsNear(work) : List.of();
+                doUpdate(req);
+            }
+            // only paths near the added or removed obstacles can change visibility.
+            List<Geometry> changed = new ArrayList<>();
+            work.forEach(o -> changed.add(o.geom()));
+            removed.forEach(o -> changed.add(o.geom()));
+            visibilityCache.invalidate(changed);
+
+            List<MapChange> changes = new ArrayList<>();
+            String layer = Namespace.PlanningModel.getURI();
+            removed.forEach(o -> changes.add(MapChange.obstacleRemoved(layer, o)));
+            work.forEach(o -> changes.add(MapChange.obstacleAdded(layer, o)));
+            deleted.forEach(c -> changes.add(MapChange.coord(MapChange.Type.COORD_DELETED, layer, c)));
+            publish(changes);
             return work;
         }
 
+        /**
+         * Finds the planning coords that are within the chassis radius of the
+         * obstacles. Only the coords within the envelope of the obstacles expanded
+         * by the radius are read from the map.
+         * 
+         * @param obstacles the obstacles to check.
+         * @return the coordinates of the coords near the obstacles.
+         */
+        private List<Coordinate> coordsNear(Collection<? extends Obstacle> obstacles) {
+            double radius = ctxt.chassisInfo.radius;
+            Envelope envelope = new Envelope();
+            obstacles.forEach(o -> envelope.expandToInclude(o.geom().getEnvelopeInternal()));
+            envelope.expandBy(radius);
+            Var x = Var.alloc("x");
+            Var y = Var.alloc("y");
+            SelectBuilder sb = new SelectBuilder().addVar(x).addVar(y) //
+                    .from(Namespace.PlanningModel.getURI()) //
+                    .addWhere(Namespace.s, RDF.type, Namespace.Coord) //
+                    .addWhere(Namespace.s, Namespace.x, x) //
+                    .addWhere(Namespace.s, Namespace.y, y) //
+                    .addFilter(exprF.and(exprF.and(exprF.ge(x, envelope.getMinX()), exprF.le(x, envelope.getMaxX())),
+                            exprF.and(exprF.ge(y, envelope.getMinY()), exprF.le(y, envelope.getMaxY()))));
+            List<Coordinate> result = new ArrayList<>();
+            Predicate<QuerySolution> processor = soln -> {
+                Coordinate c = new Coordinate(soln.getLiteral(x.getName()).getDouble(),
+                        soln.getLiteral(y.getName()).getDouble());
+                Geometry point = ctxt.geometryFactory.createPoint(c);
+                for (Obstacle obst : obstacles) {
+                    if (point.distance(obst.geom()) < radius) {
+                        result.add(c);
+                        break;
+                    }
+                }
+                return true;
+            };
+            exec(sb, processor);
+            return result;
+        }
+
         boolean isObstacle(Coordinate point) {
             Literal pointWKT = ctxt.graphGeomFactory.asWKT(point);
             Var wkt = Var.alloc("wkt");
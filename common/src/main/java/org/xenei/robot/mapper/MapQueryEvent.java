@@ -0,0 +1,93 @@
+package org.xenei.robot.mapper;
+
+import java.lang.StackWalker.StackFrame;
+import java.util.Iterator;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A Java Flight Recorder event for a query against the map. The event duration
+ * covers lock acquisition, execution and result processing.
+ * <p>
+ * Enable with {@code -XX:StartFlightRecording:settings=profile} or by enabling
+ * {@code org.xenei.robot.MapQuery} in a recording.
+ * </p>
+ */
+@Name(MapQueryEvent.NAME)
+@Label("Map Query")
+@Category({ "Robut", "Map" })
+@Description("A query executed against the map")
+@StackTrace(false)
+class MapQueryEvent extends Event {
+    static final String NAME = "org.xenei.robot.MapQuery";
+
+    private static final String MAP_CLASS = MapImpl.class.getName();
+    private static final StackWalker WALKER = StackWalker.getInstance();
+
+    @Label("Kind")
+    @Description("The kind of query: select, ask, construct or update")
+    String kind;
+
+    @Label("Caller")
+    @Description("The map method that issued the query")
+    String caller;
+
+    @Label("Lock Wait")
+    @Timespan(Timespan.NANOSECONDS)
+    long lockWait;
+
+    @Label("Rows")
+    @Description("The number of result rows, triples for construct, 1 for a true ask")
+    long rows;
+
+    /**
+     * Constructor. Starts timing the event.
+     *
+     * @param kind the kind of query.
+     */
+    MapQueryEvent(String kind) {
+        this.kind = kind;
+        begin();
+    }
+
+    /**
+     * Ends the event and commits it if it is enabled and over the threshold. The
+     * caller is only resolved when the event is committed.
+     */
+    void finish() {
+        end();
+        if (shouldCommit()) {
+            caller = findCaller();
+            commit();
+        }
+    }
+
+    /**
+     * Finds the outermost map method on the stack before the first non map, non
+     * JDK frame. This is the map method that the rest of the application called.
+     *
+     * @return the class and method name of the caller.
+     */
+    private static String findCaller() {
+        return WALKER.walk(frames -> {
+            String result = null;
+            Iterator<StackFrame> iter = frames.iterator();
+            while (iter.hasNext()) {
+                StackFrame frame = iter.next();
+                String className = frame.getClassName();
+                if (className.startsWith(MAP_CLASS)) {
+                    result = className.substring(className.lastIndexOf('.') + 1) + "." + frame.getMethodName();
+                } else if (result != null && !className.startsWith("java.")) {
+                    break;
+                }
+            }
+            return result;
+        });
+    }
+}
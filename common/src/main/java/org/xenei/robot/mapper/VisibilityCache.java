@@ -0,0 +1,226 @@
+package org.xenei.robot.mapper;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.BiPredicate;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.index.quadtree.Quadtree;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A cache of clear path results between pairs of coordinates. The results are
+ * only valid for an obstacle version. When obstacles are added only the edges
+ * that pass near the new obstacles are invalidated, when obstacles are cleared
+ * all the edges are invalidated.
+ */
+class VisibilityCache {
+    private static final Logger LOG = LoggerFactory.getLogger(VisibilityCache.class);
+
+    /** the maximum number of edges to retain */
+    static final int MAX_EDGES = 50_000;
+
+    private final GeometryFactory geometryFactory;
+    /** the distance from an edge that an obstacle affects the edge */
+    private final double radius;
+    /** the cached edges */
+    private final java.util.Map<Key, Edge> edges = new HashMap<>();
+    /** the spatial index of the cached edges */
+    private final Quadtree index = new Quadtree();
+    /** the obstacle version */
+    private long version;
+    private long hits;
+    private long misses;
+
+    /**
+     * Constructor.
+     *
+     * @param geometryFactory the geometry factory to create edge geometries with.
+     * @param radius the distance from an edge that an obstacle affects the edge.
+     */
+    VisibilityCache(GeometryFactory geometryFactory, double radius) {
+        this.geometryFactory = geometryFactory;
+        this.radius = radius;
+    }
+
+    /**
+     * Gets the current obstacle version.
+     *
+     * @return the obstacle version.
+     */
+    synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * Gets the number of cached edges.
+     *
+     * @return the number of cached edges.
+     */
+    synchronized int size() {
+        return edges.size();
+    }
+
+    /**
+     * Gets the number of requests answered from the cache.
+     *
+     * @return the number of cache hits.
+     */
+    synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Gets the number of requests that were calculated.
+     *
+     * @return the number of cache misses.
+     */
+    synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the clear path result between {@code from} and {@code to}. If the
+     * result is not cached it is calculated with {@code calc} and cached as long
+     * as the obstacle version did not change during the calculation.
+     *
+     * @param from the starting coordinate.
+     * @param to the ending coordinate.
+     * @param calc the clear path calculation.
+     * @return true if the path is clear.
+     */
+    boolean isClearPath(Coordinate from, Coordinate to, BiPredicate<Coordinate, Coordinate> calc) {
+        Key key = new Key(from, to);
+        long startVersion;
+        synchronized (this) {
+            Edge edge = edges.get(key);
+            if (edge != null) {
+                hits++;
+                return edge.clear;
+            }
+            misses++;
+            startVersion = version;
+        }
+        // calculate outside of the lock so that the checks can run concurrently.
+        boolean result = calc.test(from, to);
+        synchronized (this) {
+            if (startVersion == version) {
+                if (edges.size() >= MAX_EDGES) {
+                    LOG.debug("Visibility cache full, clearing");
+                    edges.clear();
+                    resetIndex();
+                }
+                if (!edges.containsKey(key)) {
+                    Edge edge = new Edge(key, result);
+                    edges.put(key, edge);
+                    index.insert(edge.envelope, edge);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Increments the obstacle version and invalidates the edges that pass within
+     * the radius of any of the geometries.
+     *
+     * @param changed the obstacle geometries that were added or removed.
+     */
+    synchronized void invalidate(List<Geometry> changed) {
+        version++;
+        int count = 0;
+        for (Geometry geom : changed) {
+            Envelope env = new Envelope(geom.getEnvelopeInternal());
+            env.expandBy(radius);
+            for (Object o : index.query(env)) {
+                Edge edge = (Edge) o;
+                if (edges.get(edge.key) == edge && edge.geometry().isWithinDistance(geom, radius)) {
+                    edges.remove(edge.key);
+                    index.remove(edge.envelope, edge);
+                    count++;
+                }
+            }
+        }
+        LOG.debug("Visibility cache version {} invalidated {} edges", version, count);
+    }
+
+    /**
+     * Increments the obstacle version and invalidates all edges.
+     */
+    synchronized void invalidateAll() {
+        version++;
+        edges.clear();
+        resetIndex();
+        LOG.debug("Visibility cache version {} invalidated all edges", version);
+    }
+
+    /**
+     * Discards all edges without changing the obstacle version.
+     */
+    synchronized void clear() {
+        edges.clear();
+        resetIndex();
+    }
+
+    private void resetIndex() {
+        // Quadtree has no clear method so remove everything that remains.
+        for (Object o : index.queryAll()) {
+            Edge edge = (Edge) o;
+            index.remove(edge.envelope, edge);
+        }
+    }
+
+    /**
+     * An unordered pair of coordinates.
+     */
+    private static class Key {
+        final Coordinate a;
+        final Coordinate b;
+
+        Key(Coordinate from, Coordinate to) {
+            if (from.compareTo(to) <= 0) {
+                a = from.copy();
+                b = to.copy();
+            } else {
+                a = to.copy();
+                b = from.copy();
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            return a.hashCode() * 31 + b.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj instanceof Key) {
+                Key other = (Key) obj;
+                return a.equals2D(other.a) && b.equals2D(other.b);
+            }
+            return false;
+        }
+    }
+
+    private class Edge {
+        final Key key;
+        final boolean clear;
+        final Envelope envelope;
+
+        Edge(Key key, boolean clear) {
+            this.key = key;
+            this.clear = clear;
+            this.envelope = new Envelope(key.a, key.b);
+            this.envelope.expandBy(radius);
+        }
+
+        Geometry geometry() {
+            return key.a.equals2D(key.b) ? geometryFactory.createPoint(key.a)
+                    : geometryFactory.createLineString(new Coordinate[] { key.a, key.b });
+        }
+    }
+}
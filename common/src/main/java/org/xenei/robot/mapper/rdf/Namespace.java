@@ -4,8 +4,6 @@ import org.apache.jena.rdf.model.Property;
 import org.apache.jena.rdf.model.Resource;
 import org.apache.jena.rdf.model.ResourceFactory;
 import org.apache.jena.sparql.core.Var;
-import org.xenei.robot.common.utils.RobutContext;
-import org.xenei.robot.mapper.rdf.functions.Functions;
 
 public class Namespace {
     public static final String URI = "urn:org.xenei.robut:";
@@ -39,9 +37,4 @@ public class Namespace {
     public static final Var p = Var.alloc("p");
     public static final Var o = Var.alloc("o");
 
-    public static void init(RobutContext context) {
-        new WktDataType(context.geometryFactory, context.cache);
-        new Functions().register();
-    }
-
 }
\ No newline at end of file
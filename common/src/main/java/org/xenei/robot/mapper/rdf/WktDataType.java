@@ -5,8 +5,6 @@ import java.util.Map;
 
 import org.apache.jena.datatypes.BaseDatatype;
 import org.apache.jena.datatypes.DatatypeFormatException;
-import org.apache.jena.datatypes.RDFDatatype;
-import org.apache.jena.datatypes.TypeMapper;
 import org.apache.jena.geosparql.implementation.datatype.WKTDatatype;
 import org.apache.jena.geosparql.implementation.jts.CoordinateSequenceDimensions;
 import org.apache.jena.geosparql.implementation.jts.CustomCoordinateSequence;
@@ -45,11 +43,6 @@ public class WktDataType extends BaseDatatype {
         super(URI);
         this.factory = factory;
         this.cache = cache;
-        TypeMapper typeMapper = TypeMapper.getInstance();
-        typeMapper.registerDatatype(this);
-        for (SupportedTypes type : SupportedTypes.values()) {
-            typeMapper.registerDatatype( new Wrapped(type));
-        }
     }
 
     static final Logger LOGGER = LoggerFactory.getLogger(WKTDatatype.class);
@@ -348,30 +341,4 @@ public class WktDataType extends BaseDatatype {
         }
 
     }
-    
-    private class Wrapped extends BaseDatatype {
-        SupportedTypes type;
-        
-        Wrapped(SupportedTypes type) {
-            super(Namespace.URI+":SupportedTypes:" + type);
-            this.type = type;
-        }
-          @Override
-          public RDFDatatype normalizeSubType(Object value, RDFDatatype dt) {
-              return WktDataType.this;
-          }
-          @Override
-        public Class<?> getJavaClass() {
-            return type.supporting;
-        }
-
-        @Override
-          public String unparse(Object geometry) {
-              return WktDataType.this.unparse(geometry);
-          }
-          @Override
-          public Geometry parse(String literalForm) throws DatatypeFormatException {
-              return WktDataType.this.parse(literalForm);
-          }
-      }
 }
@@ -2,13 +2,11 @@ package org.xenei.robot.mapper.rdf.functions;
 
 import java.util.function.BiFunction;
 
-import org.apache.jena.datatypes.TypeMapper;
 import org.apache.jena.sparql.expr.ExprList;
 import org.apache.jena.sparql.expr.NodeValue;
 import org.apache.jena.sparql.function.FunctionBase2;
 import org.apache.jena.sparql.util.Context;
 import org.locationtech.jts.geom.Geometry;
-import org.xenei.robot.common.utils.RobutContext;
 import org.xenei.robot.mapper.rdf.WktDataType;
 
 public class FF2 extends FunctionBase2 {
@@ -24,11 +22,7 @@ public class FF2 extends FunctionBase2 {
     @Override
     public void build(String uri, ExprList args, Context context) {
        
-        dataType = (WktDataType) TypeMapper.getInstance().getTypeByClass(Geometry.class);
-        
-        if (context.get(RobutContext.symbol) == null) {
-            throw new IllegalStateException("Robot context not set in Jena context");
-        }
+        dataType = Functions.dataType(context);
         checkBuild(uri, args) ;
     }
 
@@ -8,7 +8,10 @@ import org.apache.jena.sparql.expr.NodeValue;
 import org.apache.jena.sparql.function.Function;
 import org.apache.jena.sparql.function.FunctionFactory;
 import org.apache.jena.sparql.function.FunctionRegistry;
+import org.apache.jena.sparql.util.Context;
+import org.xenei.robot.common.utils.RobutContext;
 import org.xenei.robot.mapper.rdf.Namespace;
+import org.xenei.robot.mapper.rdf.WktDataType;
 
 public class Functions implements FunctionFactory {
 
@@ -36,13 +39,38 @@ public class Functions implements FunctionFactory {
         return map.get(uri);
     }
 
-    public void register() {
-        FunctionRegistry registry = FunctionRegistry.get();
+    public void register(FunctionRegistry registry) {
         map.keySet().forEach(e -> registry.put(e, this));
     }
 
-    public void remove() {
-        FunctionRegistry registry = FunctionRegistry.get();
-        map.keySet().forEach(e -> registry.remove(e));
+    /**
+     * Creates a function registry that contains the functions in the global
+     * registry and these functions. The result is intended to be set in the
+     * context of a single dataset so that the functions are not shared between
+     * robut contexts.
+     * 
+     * @return a new function registry.
+     */
+    public FunctionRegistry createRegistry() {
+        FunctionRegistry global = FunctionRegistry.get();
+        FunctionRegistry registry = new FunctionRegistry();
+        global.keys().forEachRemaining(uri -> registry.put(uri, global.get(uri)));
+        register(registry);
+        return registry;
+    }
+
+    /**
+     * Gets the WKT datatype of the robut context in the Jena context.
+     * 
+     * @param context the Jena context the function is built in.
+     * @return the WKT datatype.
+     * @throws IllegalStateException if the robut context is not set.
+     */
+    static WktDataType dataType(Context context) {
+        RobutContext ctxt = context.get(RobutContext.symbol);
+        if (ctxt == null) {
+            throw new IllegalStateException("Robot context not set in Jena context");
+        }
+        return ctxt.graphGeomFactory.getDataType();
     }
 }
@@ -2,6 +2,8 @@ package org.xenei.robot.mapper.visualization;
 
 import java.awt.Color;
 import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -16,6 +18,8 @@ import javax.swing.JPanel;
 public class JTSPanel extends JPanel {
 
     private List<DrawingCommand> drawPathCommand = new ArrayList<>();
+    /** the retained image drawn beneath the drawing commands */
+    private BufferedImage image;
 
     public JTSPanel() {
         setSize(900, 900);
@@ -45,6 +49,14 @@ public class JTSPanel extends JPanel {
             g.drawString(Integer.toString(i), 10, i);
         }
 
+        BufferedImage img = image;
+        if (img != null) {
+            // the image is updated off the event thread so lock it while drawing.
+            synchronized (img) {
+                g.drawImage(img, 0, 0, null);
+            }
+        }
+
         g.setColor(Color.BLACK);
 
         for (DrawingCommand drawingCommand : drawPathCommand) {
@@ -63,4 +75,29 @@ public class JTSPanel extends JPanel {
         this.drawPathCommand.clear();
     }
 
+    /**
+     * Sets the image that is drawn beneath the drawing commands. Updates to the
+     * image must be made while holding the image lock.
+     * 
+     * @param image the image to draw, may be null.
+     */
+    public void setImage(BufferedImage image) {
+        this.image = image;
+    }
+
+    /**
+     * Replaces the drawing commands and repaints the dirty region.
+     * 
+     * @param cmds the new drawing commands.
+     * @param dirty the region to repaint, null to repaint everything.
+     */
+    public void setDrawCommands(List<? extends DrawingCommand> cmds, Rectangle dirty) {
+        this.drawPathCommand = new ArrayList<>(cmds);
+        if (dirty == null) {
+            repaint();
+        } else if (!dirty.isEmpty()) {
+            repaint(dirty);
+        }
+    }
+
 }
@@ -1,11 +1,24 @@
 package org.xenei.robot.mapper.visualization;
 
+import java.awt.AlphaComposite;
 import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.EventQueue;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
@@ -19,29 +32,68 @@ import org.locationtech.jts.geom.LineString;
 import org.locationtech.jts.geom.MultiLineString;
 import org.locationtech.jts.geom.Point;
 import org.locationtech.jts.geom.Polygon;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.xenei.robot.common.Position;
 import org.xenei.robot.common.mapping.Map;
+import org.xenei.robot.common.mapping.MapChange;
 import org.xenei.robot.common.mapping.MapCoord;
 import org.xenei.robot.common.mapping.Mapper;
 import org.xenei.robot.common.mapping.Obstacle;
 import org.xenei.robot.common.planning.Solution;
 import org.xenei.robot.common.utils.GeometryUtils;
 
+/**
+ * A visualization of the map. The obstacles and coordinates are retained in a
+ * scene that is updated from the map change events and rendered into an
+ * offscreen image. Only the regions that changed are redrawn and frames are
+ * limited to a maximum rate. The solution and target are drawn over the image.
+ */
 public class MapViz implements Mapper.Visualization {
+    private static final Logger LOG = LoggerFactory.getLogger(MapViz.class);
+    /** the default maximum number of frames per second */
+    public static final int DEFAULT_MAX_FPS = 10;
+    /** the size of the offscreen image */
+    private static final int SIZE = 1000;
+
     private final Supplier<Solution> solutionSupplier;
     private final Supplier<Position> positionSupplier;
     private final Map map;
     private final JTSPanel panel;
     private final int scale;
     private final int buffer;
+    /** the minimum time between frames */
+    private final long frameIntervalMs;
+    private final ScheduledExecutorService renderer;
+    private final AtomicBoolean framePending = new AtomicBoolean();
+    private final BufferedImage image = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_ARGB);
+    /** the retained scene, all access must be synchronized on the scene */
+    private final Scene scene = new Scene();
+    private volatile Coordinate target;
+    private volatile long lastFrame;
+    /** the bounds of the last overlay, only used on the render thread */
+    private Rectangle lastOverlay;
 
     public MapViz(int scale, Map map, Supplier<Solution> solutionSupplier, Supplier<Position> positionSupplier) {
+        this(scale, map, solutionSupplier, positionSupplier, DEFAULT_MAX_FPS);
+    }
+
+    public MapViz(int scale, Map map, Supplier<Solution> solutionSupplier, Supplier<Position> positionSupplier,
+            int maxFps) {
         this.map = map;
         this.panel = new JTSPanel();
         this.solutionSupplier = solutionSupplier;
         this.positionSupplier = positionSupplier;
         this.scale = scale;
         this.buffer = (int) (map.getContext().scaleInfo.getResolution() * scale) / 2;
+        this.frameIntervalMs = 1000 / Math.max(1, maxFps);
+        this.renderer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "MapViz-render");
+            t.setDaemon(true);
+            return t;
+        });
+        panel.setImage(image);
+        map.addChangeListener(this::apply);
 
         JFrame frame = new JFrame("Map Visualization");
         frame.setLayout(new BorderLayout());
@@ -50,7 +102,7 @@ public class MapViz implements Mapper.Visualization {
         frame.add(panel, BorderLayout.CENTER);
 
         frame.pack();
-        frame.setSize(1000, 1000);
+        frame.setSize(SIZE, SIZE);
         frame.setVisible(true);
     }
 
@@ -89,26 +141,139 @@ public class MapViz implements Mapper.Visualization {
         };
     }
 
-    @Override
-    public void redraw(Coordinate target) {
-        GeometryUtils geometryUtils = map.getContext().geometryUtils;
+    private List<AbstractDrawingCommand> obstacleCommands(Obstacle obst) {
         List<AbstractDrawingCommand> cmds = new ArrayList<>();
-        for (Obstacle obst : map.getObstacles()) {
-            if (obst.geom() instanceof GeometryCollection) {
-                GeometryCollection gCollection = (GeometryCollection) obst.geom();
+        if (obst.geom() instanceof GeometryCollection) {
+            GeometryCollection gCollection = (GeometryCollection) obst.geom();
+
+            for (int i = 0; i < gCollection.getNumGeometries(); i++) {
+                cmds.add(getPoly(gCollection.getGeometryN(i), Color.RED));
+            }
+        } else {
+            cmds.add(getPoly(obst.geom(), Color.RED));
+        }
+        return cmds;
+    }
+
+    private AbstractDrawingCommand coordCommand(Geometry geometry, boolean isIndirect) {
+        return getPoly(geometry, coordColor(isIndirect));
+    }
+
+    private static Color coordColor(boolean isIndirect) {
+        return isIndirect ? Color.CYAN : Color.BLUE;
+    }
 
-                for (int i = 0; i < gCollection.getNumGeometries(); i++) {
-                    cmds.add(getPoly(gCollection.getGeometryN(i), Color.RED));
+    /**
+     * Applies the map changes to the scene.
+     *
+     * @param changes the changes from a single map write.
+     */
+    private void apply(MapChange[] changes) {
+        synchronized (scene) {
+            for (MapChange change : changes) {
+                switch (change.type) {
+                case OBSTACLE_ADDED:
+                    change.obstacle().ifPresent(o -> scene.putObstacle(o.uuid(), obstacleCommands(o)));
+                    break;
+                case OBSTACLE_REMOVED:
+                    change.uuid().ifPresent(scene::removeObstacle);
+                    break;
+                case COORD_DELETED:
+                    for (Coordinate c : change.coordinates()) {
+                        scene.removeCoord(c);
+                    }
+                    break;
+                case COORD_ADDED:
+                case COORD_UPDATED:
+                case VISITED:
+                    for (MapCoord mapCoord : change.mapCoords()) {
+                        scene.putCoord(mapCoord);
+                    }
+                    break;
+                case RECALCULATED:
+                    scene.loadCoords(Arrays.asList(change.mapCoords()));
+                    break;
+                case CLEARED:
+                    scene.reloadAll = true;
+                    break;
+                default:
+                    break;
                 }
-            } else {
-                cmds.add(getPoly(obst.geom(), Color.RED));
             }
         }
+        requestFrame();
+    }
 
-        for (MapCoord mapCoord : map.getCoords()) {
-            cmds.add(getPoly(mapCoord.geometry, mapCoord.isIndirect ? Color.CYAN : Color.BLUE));
+    @Override
+    public void redraw(Coordinate target) {
+        this.target = target;
+        requestFrame();
+    }
+
+    /**
+     * Schedules a frame if one is not already pending. Frames are not rendered
+     * more often than the frame interval.
+     */
+    private void requestFrame() {
+        if (framePending.compareAndSet(false, true)) {
+            long delay = Math.max(0, lastFrame + frameIntervalMs - System.currentTimeMillis());
+            renderer.schedule(this::renderFrame, delay, TimeUnit.MILLISECONDS);
         }
+    }
+
+    private void renderFrame() {
+        framePending.set(false);
+        lastFrame = System.currentTimeMillis();
+        try {
+            boolean reloadAll;
+            synchronized (scene) {
+                reloadAll = scene.reloadAll;
+                scene.reloadAll = false;
+            }
+            // query the map outside of the scene lock.
+            Collection<Obstacle> obstacles = reloadAll ? map.getObstacles() : null;
+            Collection<MapCoord> coords = reloadAll ? map.getCoords() : null;
+            List<AbstractDrawingCommand> overlay = overlay(target);
 
+            Rectangle dirty;
+            synchronized (scene) {
+                if (obstacles != null) {
+                    scene.loadObstacles(obstacles);
+                }
+                if (coords != null) {
+                    scene.loadCoords(coords);
+                }
+                scene.grow(overlay);
+                dirty = scene.render(image);
+                overlay.forEach(scene::transform);
+            }
+
+            Rectangle overlayBounds = bounds(overlay);
+            Rectangle repaint = null;
+            if (dirty != null) {
+                // partial render, repaint the changes and where the overlay was and is.
+                repaint = union(union(dirty.isEmpty() ? null : dirty, lastOverlay), overlayBounds);
+                if (repaint == null) {
+                    repaint = new Rectangle();
+                }
+            }
+            lastOverlay = overlayBounds;
+            Rectangle region = repaint;
+            EventQueue.invokeLater(() -> panel.setDrawCommands(overlay, region));
+        } catch (RuntimeException e) {
+            LOG.error("Unable to render map", e);
+        }
+    }
+
+    /**
+     * Creates the commands for the parts of the display that change every frame.
+     *
+     * @param target the current target.
+     * @return the overlay commands.
+     */
+    private List<AbstractDrawingCommand> overlay(Coordinate target) {
+        GeometryUtils geometryUtils = map.getContext().geometryUtils;
+        List<AbstractDrawingCommand> cmds = new ArrayList<>();
         List<Coordinate> lst = solutionSupplier.get().stream().collect(Collectors.toList());
         if (lst.size() > 1) {
             cmds.add(getPoly(geometryUtils.asPath(0.25, lst.toArray(new Coordinate[lst.size()])), Color.WHITE));
@@ -119,73 +284,267 @@ public class MapViz implements Mapper.Visualization {
         if (target != null) {
             cmds.add(getPoly(geometryUtils.asPolygon(target, 0.25), Color.GREEN));
         }
+        return cmds;
+    }
 
-        rescale(cmds);
+    private static Rectangle bounds(Collection<AbstractDrawingCommand> cmds) {
+        Rectangle result = null;
+        for (AbstractDrawingCommand cmd : cmds) {
+            result = union(result, cmd.bounds);
+        }
+        return result;
+    }
 
-        EventQueue.invokeLater(new LaterInvoker(cmds));
+    private static Rectangle union(Rectangle a, Rectangle b) {
+        if (a == null) {
+            return b;
+        }
+        return b == null ? a : a.union(b);
     }
 
-    private void rescale(List<AbstractDrawingCommand> lst) {
+    /**
+     * The retained obstacles and coordinates along with the changes that have not
+     * been rendered.
+     */
+    private class Scene {
+        private final java.util.Map<UUID, List<AbstractDrawingCommand>> obstacles = new LinkedHashMap<>();
+        private final java.util.Map<Coordinate, AbstractDrawingCommand> coords = new LinkedHashMap<>();
+        /** the commands that were added or removed since the last render */
+        private final List<AbstractDrawingCommand> dirty = new ArrayList<>();
+        /** the largest absolute scaled coordinate value */
+        private int extent = Integer.MIN_VALUE;
+        /** true if the extent changed since the last render */
+        private boolean extentChanged = true;
+        /** true if the obstacles and coordinates must be reloaded */
+        boolean reloadAll = true;
+        private int max;
+        private int offset = 1;
 
-        double max = Integer.MIN_VALUE;
-        for (AbstractDrawingCommand cmd : lst) {
-            for (int i : cmd.xler) {
-                double ii = Math.abs(i);
-                max = ii < max ? max : ii;
+        void putObstacle(UUID uuid, List<AbstractDrawingCommand> cmds) {
+            List<AbstractDrawingCommand> old = obstacles.put(uuid, cmds);
+            if (old != null) {
+                dirty.addAll(old);
             }
-            for (int i : cmd.yler) {
-                double ii = Math.abs(i);
-                max = ii < max ? max : ii;
+            dirty.addAll(cmds);
+            grow(cmds);
+        }
+
+        void removeObstacle(UUID uuid) {
+            List<AbstractDrawingCommand> old = obstacles.remove(uuid);
+            if (old != null) {
+                dirty.addAll(old);
             }
         }
-        max += buffer;
-        int offset = (int) Math.max(2 * max / 700, 1);
-        for (AbstractDrawingCommand cmd : lst) {
-            for (int i = 0; i < cmd.xler.length; i++) {
-                cmd.xler[i] += max;
-                cmd.xler[i] /= offset;
+
+        void removeCoord(Coordinate c) {
+            AbstractDrawingCommand old = coords.remove(new Coordinate(c.getX(), c.getY()));
+            if (old != null) {
+                dirty.add(old);
             }
-            for (int i = 0; i < cmd.yler.length; i++) {
-                cmd.yler[i] += max;
-                cmd.yler[i] /= offset;
+        }
+
+        /**
+         * Adds or updates a coordinate. The indirect flag is only cleared by a
+         * recalculation so a coordinate that is drawn as indirect stays indirect.
+         *
+         * @param mapCoord the coordinate data from the change.
+         */
+        void putCoord(MapCoord mapCoord) {
+            Coordinate key = key(mapCoord);
+            AbstractDrawingCommand old = coords.get(key);
+            boolean isIndirect = mapCoord.isIndirect || (old != null && old.color.equals(coordColor(true)));
+            if (old != null) {
+                if (old.color.equals(coordColor(isIndirect))) {
+                    return;
+                }
+                dirty.add(old);
             }
+            AbstractDrawingCommand cmd = coordCommand(mapCoord.geometry, isIndirect);
+            coords.put(key, cmd);
+            dirty.add(cmd);
+            grow(cmd);
         }
-    }
 
-    private class LaterInvoker implements Runnable {
-        List<AbstractDrawingCommand> cmds;
+        private Coordinate key(MapCoord mapCoord) {
+            return new Coordinate(mapCoord.geometry.getCoordinate().getX(), mapCoord.geometry.getCoordinate().getY());
+        }
 
-        LaterInvoker(List<AbstractDrawingCommand> cmds) {
-            this.cmds = cmds;
+        void loadObstacles(Collection<Obstacle> obsts) {
+            obstacles.clear();
+            obsts.forEach(o -> obstacles.put(o.uuid(), obstacleCommands(o)));
+            // the map may have shrunk so recalculate the extent.
+            extent = Integer.MIN_VALUE;
+            extentChanged = true;
+            obstacles.values().forEach(this::grow);
+            coords.values().forEach(this::grow);
         }
 
-        @Override
-        public void run() {
-            panel.clear();
-            cmds.forEach(panel::addDrawCommand);
-        };
+        /**
+         * Replaces the coordinates, only the coordinates that changed are marked as
+         * dirty.
+         *
+         * @param mapCoords the coordinates from the map.
+         */
+        void loadCoords(Collection<MapCoord> mapCoords) {
+            java.util.Map<Coordinate, AbstractDrawingCommand> old = new HashMap<>(coords);
+            coords.clear();
+            for (MapCoord mapCoord : mapCoords) {
+                Coordinate key = key(mapCoord);
+                AbstractDrawingCommand cmd = old.remove(key);
+                Color color = coordColor(mapCoord.isIndirect);
+                if (cmd == null || !cmd.color.equals(color)) {
+                    if (cmd != null) {
+                        dirty.add(cmd);
+                    }
+                    cmd = coordCommand(mapCoord.geometry, mapCoord.isIndirect);
+                    dirty.add(cmd);
+                    grow(cmd);
+                }
+                coords.put(key, cmd);
+            }
+            dirty.addAll(old.values());
+        }
+
+        void grow(Collection<AbstractDrawingCommand> cmds) {
+            cmds.forEach(this::grow);
+        }
+
+        void grow(AbstractDrawingCommand cmd) {
+            int cmdExtent = cmd.extent();
+            if (cmdExtent > extent) {
+                extent = cmdExtent;
+                extentChanged = true;
+            }
+        }
+
+        void transform(AbstractDrawingCommand cmd) {
+            cmd.transform(max, offset);
+        }
+
+        /**
+         * Renders the changes into the image.
+         *
+         * @param image the image to render into.
+         * @return the region of the image that changed or null if the entire image
+         * changed.
+         */
+        Rectangle render(BufferedImage image) {
+            Rectangle region = null;
+            if (extentChanged) {
+                max = Math.max(extent, 0) + buffer;
+                offset = (int) Math.max(2 * max / 700, 1);
+                obstacles.values().forEach(l -> l.forEach(this::transform));
+                coords.values().forEach(this::transform);
+            } else {
+                // only new commands need to be transformed, the old are unchanged.
+                dirty.forEach(this::transform);
+                region = bounds(dirty);
+                if (region == null) {
+                    return new Rectangle();
+                }
+            }
+
+            synchronized (image) {
+                Graphics2D g = image.createGraphics();
+                try {
+                    if (region != null) {
+                        g.setClip(region);
+                    }
+                    g.setComposite(AlphaComposite.Clear);
+                    g.fillRect(0, 0, SIZE, SIZE);
+                    g.setComposite(AlphaComposite.SrcOver);
+                    for (List<AbstractDrawingCommand> cmds : obstacles.values()) {
+                        for (AbstractDrawingCommand cmd : cmds) {
+                            draw(g, cmd, region);
+                        }
+                    }
+                    for (AbstractDrawingCommand cmd : coords.values()) {
+                        draw(g, cmd, region);
+                    }
+                } finally {
+                    g.dispose();
+                }
+            }
+            LOG.debug("Rendered {} region {}", extentChanged ? "full" : "partial", region);
+            dirty.clear();
+            extentChanged = false;
+            return region;
+        }
+
+        private void draw(Graphics g, AbstractDrawingCommand cmd, Rectangle region) {
+            if (region == null || region.intersects(cmd.bounds)) {
+                cmd.doDrawing(g);
+            }
+        }
     }
 
     /**
-     * 
+     *
      * @see https://www.smartycoder.com
      *
      */
     public abstract class AbstractDrawingCommand implements DrawingCommand {
+        /** the scaled coordinates */
+        final int[] xraw;
+        final int[] yraw;
+        /** the screen coordinates */
         int[] xler;
         int[] yler;
+        /** the screen bounds */
+        Rectangle bounds;
         private Color color;
 
         AbstractDrawingCommand(Geometry geom, Color color) {
             this.color = color;
             Coordinate[] coords = geom.getCoordinates();
-            xler = new int[coords.length];
-            yler = new int[coords.length];
+            xraw = new int[coords.length];
+            yraw = new int[coords.length];
 
             for (int i = 0; i < coords.length; i++) {
-                xler[i] = (int) Math.round(coords[i].getX() * scale);
-                yler[i] = -1 * (int) Math.round(coords[i].getY() * scale);
+                xraw[i] = (int) Math.round(coords[i].getX() * scale);
+                yraw[i] = -1 * (int) Math.round(coords[i].getY() * scale);
+            }
+            xler = xraw.clone();
+            yler = yraw.clone();
+            bounds = new Rectangle();
+        }
+
+        /**
+         * Gets the largest absolute scaled coordinate value.
+         *
+         * @return the extent of the command.
+         */
+        int extent() {
+            int result = Integer.MIN_VALUE;
+            for (int i = 0; i < xraw.length; i++) {
+                result = Math.max(result, Math.max(Math.abs(xraw[i]), Math.abs(yraw[i])));
+            }
+            return result;
+        }
+
+        /**
+         * Calculates the screen coordinates and bounds.
+         *
+         * @param max the value added to center the scaled coordinates.
+         * @param offset the divisor to fit the coordinates on the screen.
+         */
+        void transform(int max, int offset) {
+            int minX = Integer.MAX_VALUE;
+            int minY = Integer.MAX_VALUE;
+            int maxX = Integer.MIN_VALUE;
+            int maxY = Integer.MIN_VALUE;
+            for (int i = 0; i < xraw.length; i++) {
+                xler[i] = (xraw[i] + max) / offset;
+                yler[i] = (yraw[i] + max) / offset;
+                minX = Math.min(minX, xler[i]);
+                minY = Math.min(minY, yler[i]);
+                maxX = Math.max(maxX, xler[i]);
+                maxY = Math.max(maxY, yler[i]);
             }
+            // allow for the point radius and line width.
+            int pad = buffer + 2;
+            bounds = xraw.length == 0 ? new Rectangle()
+                    : new Rectangle(minX - pad, minY - pad, maxX - minX + 2 * pad, maxY - minY + 2 * pad);
         }
 
         @Override
@@ -1,9 +1,21 @@
 package org.xenei.robot.planner;
 
+import java.time.Duration;
+import java.util.ArrayDeque;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Stack;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
@@ -21,6 +33,7 @@ import org.xenei.robot.common.planning.Planner;
 import org.xenei.robot.common.planning.Solution;
 import org.xenei.robot.common.planning.Step;
 import org.xenei.robot.common.utils.CoordUtils;
+import org.xenei.robot.mapper.StepImpl;
 import org.xenei.robot.mapper.rdf.Namespace;
 
 public class PlannerImpl implements Planner {
@@ -29,8 +42,23 @@ public class PlannerImpl implements Planner {
     private final Map map;
     private final ListenerContainer listeners;
     private final Supplier<Position> positionSupplier;
+    private final RouteCache routeCache;
+    /** the remaining points of a recorded route being followed */
+    private final Deque<Coordinate> route;
     private Solution solution;
     private NavigationSnapshot snapshot;
+    /**
+     * executes step selections in the background for anytime planning. Each
+     * selection gets its own thread so a new selection never waits behind a stale
+     * one that could not be stopped.
+     */
+    private final ExecutorService executor;
+    /** the background selection that has not yet been consumed */
+    private volatile Selection pending;
+    /** true if the last budgeted selection returned before a step was known */
+    private volatile boolean deferred;
+    private final AtomicLong budgetedSelections = new AtomicLong();
+    private final AtomicLong budgetExceeded = new AtomicLong();
 
     /**
      * Constructs a planner.
@@ -55,6 +83,15 @@ public class PlannerImpl implements Planner {
         this.target = new TargetStack();
         this.positionSupplier = positionSupplier;
         this.solution = new Solution();
+        this.route = new ArrayDeque<>();
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "PlannerImpl-selection");
+            t.setDaemon(true);
+            return t;
+        });
+        this.routeCache = new RouteCache();
+        map.getPaths(Namespace.KnownModel).forEach(routeCache::add);
+        map.getPaths(Namespace.BaseModel).forEach(routeCache::add);
 
         this.snapshot = new NavigationSnapshot(positionSupplier.get(), target == null ? null : target.getCoordinate());
         boolean isIndirect = false;
@@ -100,16 +137,106 @@ public class PlannerImpl implements Planner {
     @Override
     public Optional<Step> selectTarget() {
         Position pos = positionSupplier.get();
+        if (reachedFinalTarget(pos)) {
+            return Optional.empty();
+        }
+        Optional<Step> routeStep = followRoute(pos);
+        if (routeStep.isPresent()) {
+            return routeStep;
+        }
+        return registerSelected(map.getBestStep(pos.getCoordinate()));
+    }
+
+    @Override
+    public Optional<Step> selectTarget(Duration budget) {
+        deferred = false;
+        Position pos = positionSupplier.get();
+        if (reachedFinalTarget(pos)) {
+            return Optional.empty();
+        }
+        Optional<Step> routeStep = followRoute(pos);
+        if (routeStep.isPresent()) {
+            return routeStep;
+        }
+        budgetedSelections.incrementAndGet();
+        Selection selection = startSelection(pos.getCoordinate());
+        try {
+            Optional<Step> selected;
+            try {
+                selected = selection.future.get(budget.toNanos(), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                budgetExceeded.incrementAndGet();
+                Optional<Step> interim = continueToTarget(pos);
+                if (interim.isPresent()) {
+                    LOG.debug("Planning budget {} exceeded, continuing to {}", budget, getTarget());
+                    // the next call is from the next position so the selection is of no use.
+                    cancelPending();
+                    return interim;
+                }
+                LOG.debug("Planning budget {} exceeded, selection continues in the background", budget);
+                deferred = true;
+                return Optional.empty();
+            }
+            pending = null;
+            // a speculative step is only rechecked if obstacles changed after it was selected.
+            if (selection.speculative && selected.isPresent() && map.getObstacleVersion() != selection.version
+                    && !map.isClearPath(pos.getCoordinate(), selected.get().getCoordinate())) {
+                LOG.debug("Speculative step {} is blocked, replanning", selected.get());
+                selected = map.getBestStep(pos.getCoordinate());
+            }
+            registerSelected(selected);
+            selected.ifPresent(s -> prefetch(s.getCoordinate()));
+            return selected;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Optional.empty();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Step selection failed", e.getCause());
+        }
+    }
+
+    @Override
+    public boolean isSelectionPending() {
+        return deferred;
+    }
+
+    @Override
+    public long getBudgetedSelectionCount() {
+        return budgetedSelections.get();
+    }
+
+    @Override
+    public long getBudgetExceededCount() {
+        return budgetExceeded.get();
+    }
+
+    /**
+     * Checks if the position has reached the current target. If so the target is
+     * marked as visited and removed from the target stack.
+     * 
+     * @param pos the current position.
+     * @return true if the final target has been reached.
+     */
+    private boolean reachedFinalTarget(Position pos) {
         if (pos.equals2D(getTarget(), map.getContext().scaleInfo.getResolution())) {
             LOG.debug("Reached intermediate target");
             // TODO use thread for set visited
             map.setVisited(getFinalTarget(), target.pop());
             if (target.isEmpty()) {
                 LOG.debug("Reached final target");
-                return Optional.empty();
+                return true;
             }
         }
-        Optional<Step> selected = map.getBestStep(pos.getCoordinate());
+        return false;
+    }
+
+    /**
+     * Registers the selected step as the current target if it is not already.
+     * 
+     * @param selected the selected step.
+     * @return the selected step.
+     */
+    private Optional<Step> registerSelected(Optional<Step> selected) {
         if (selected.isPresent()) {
             if (!map.areEquivalent(selected.get().getCoordinate(), getTarget())) {
                 target.push(selected.get().getCoordinate());
@@ -121,6 +248,109 @@ public class PlannerImpl implements Planner {
         return selected;
     }
 
+    /**
+     * Gets the step selection for the coordinate. If a background selection from
+     * an equivalent coordinate toward the same final target is pending it is
+     * reused, otherwise a new selection is started.
+     * 
+     * @param from the coordinate to select a step from.
+     * @return the selection.
+     */
+    private Selection startSelection(Coordinate from) {
+        Selection selection = pending;
+        if (selection != null && map.areEquivalent(selection.from, from)
+                && Objects.equals(selection.finalTarget, getFinalTarget())) {
+            return selection;
+        }
+        cancelPending();
+        selection = new Selection(from, false);
+        pending = selection;
+        return selection;
+    }
+
+    /**
+     * Cancels the pending selection. A selection that has started is interrupted,
+     * if it does not stop it completes on its own thread and the result is
+     * discarded.
+     */
+    private void cancelPending() {
+        Selection selection = pending;
+        if (selection != null) {
+            selection.future.cancel(true);
+            pending = null;
+        }
+    }
+
+    /**
+     * Starts a speculative selection from the coordinate we are about to move to
+     * so that the next call to {@code selectTarget(Duration)} can use it.
+     * 
+     * @param from the coordinate the next selection will start from.
+     */
+    private void prefetch(Coordinate from) {
+        cancelPending();
+        pending = new Selection(from, true);
+    }
+
+    /**
+     * Creates a step toward the current target if it can be seen from the
+     * position.
+     * 
+     * @param pos the current position.
+     * @return the step toward the current target or an empty Optional if it can
+     * not be seen.
+     */
+    private Optional<Step> continueToTarget(Position pos) {
+        Coordinate current = getTarget();
+        if (current == null || map.areEquivalent(pos.getCoordinate(), current)
+                || !map.isClearPath(pos.getCoordinate(), current)) {
+            return Optional.empty();
+        }
+        return Optional.of(makeStep(pos, current));
+    }
+
+    private Step makeStep(Position pos, Coordinate next) {
+        double distance = next.distance(getFinalTarget());
+        return new StepImpl.Builder().setCoordinate(next).setDistance(distance)
+                .setCost(pos.distance(next) + distance).build(map.getContext());
+    }
+
+    /**
+     * Selects the next point on the recorded route being followed. If the route
+     * is blocked by an obstacle that was mapped after the route was recorded the
+     * route is abandoned.
+     * 
+     * @param pos the current position.
+     * @return the step to the next point on the route or an empty Optional if
+     * there is no route to follow.
+     */
+    private Optional<Step> followRoute(Position pos) {
+        if (route.isEmpty()) {
+            return Optional.empty();
+        }
+        double resolution = map.getContext().scaleInfo.getResolution();
+        while (!route.isEmpty() && pos.equals2D(route.peek(), resolution)) {
+            route.remove();
+        }
+        if (route.isEmpty()) {
+            return Optional.empty();
+        }
+        Coordinate next = route.peek();
+        if (!map.isClearPath(pos.getCoordinate(), next)) {
+            LOG.debug("Recorded route blocked at {}, replanning", next);
+            route.clear();
+            return Optional.empty();
+        }
+        Step step = makeStep(pos, next);
+        if (!map.areEquivalent(next, getTarget())) {
+            target.push(next);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Route target registered: " + step);
+            }
+        }
+        return Optional.of(step);
+    }
+
     @Override
     public void recalculateCosts() {
         // recalculate the distances
@@ -137,6 +367,14 @@ public class PlannerImpl implements Planner {
         map.recalculate(target);
         solution = new Solution();
         solution.add(pos);
+        route.clear();
+        if (!routeCache.isEmpty()) {
+            routeCache.find(pos.getCoordinate(), target, map.getContext().scaleInfo.getResolution())
+                    .ifPresent(r -> {
+                        LOG.info("Following recorded route of {} points", r.size());
+                        route.addAll(r);
+                    });
+        }
         return heading;
     }
 
@@ -155,6 +393,8 @@ public class PlannerImpl implements Planner {
             LOG.info("Adding target to {} to {}", target, getTarget());
         }
         this.target.push(target);
+        // the target was replaced so the recorded route no longer applies.
+        route.clear();
         this.snapshot = new NavigationSnapshot(snapshot.position, target);
         return CoordUtils.calcHeading(pos.getCoordinate(), getTarget());
     }
@@ -182,9 +422,20 @@ public class PlannerImpl implements Planner {
         if (solution.stepCount() > 0) {
             Coordinate[] coords = solution.stream().collect(Collectors.toList()).toArray(new Coordinate[0]);
             map.addPath(Namespace.KnownModel, coords);
+            routeCache.add(coords);
         }
     }
 
+    /**
+     * Cancels any background selection and stops the selection threads. The
+     * planner can not select targets after it is closed.
+     */
+    @Override
+    public void close() {
+        cancelPending();
+        executor.shutdownNow();
+    }
+
     /**
      * For testing only
      * 
@@ -194,6 +445,31 @@ public class PlannerImpl implements Planner {
         return map;
     }
 
+    /**
+     * A step selection running in the background.
+     */
+    private class Selection {
+        final Coordinate from;
+        final Coordinate finalTarget;
+        /** true if the selection was started before the robot arrived at from */
+        final boolean speculative;
+        /** the obstacle version when the selection was started */
+        final long version;
+        final Future<Optional<Step>> future;
+
+        Selection(Coordinate from, boolean speculative) {
+            this.from = from;
+            this.finalTarget = getFinalTarget();
+            this.speculative = speculative;
+            this.version = map.getObstacleVersion();
+            try {
+                this.future = executor.submit(() -> map.getBestStep(from));
+            } catch (RejectedExecutionException e) {
+                throw new IllegalStateException("Planner is closed", e);
+            }
+        }
+    }
+
     private class TargetStack extends Stack<Coordinate> {
         TargetStack() {
             super();
@@ -0,0 +1,152 @@
+package org.xenei.robot.planner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.index.quadtree.Quadtree;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A library of previously recorded routes. The vertices of every route are
+ * spatially indexed so that a route segment connecting a start and a goal can
+ * be located without searching the map.
+ */
+public class RouteCache {
+    private static final Logger LOG = LoggerFactory.getLogger(RouteCache.class);
+
+    /** the spatial index of route vertices */
+    private final Quadtree index = new Quadtree();
+    /** the routes, the position in the list is the route id */
+    private final List<Coordinate[]> routes = new ArrayList<>();
+
+    /**
+     * Adds a route to the cache. Routes with fewer than 2 points and routes that
+     * are already in the cache are ignored.
+     *
+     * @param route the coordinates of the route.
+     */
+    public synchronized void add(Coordinate... route) {
+        if (route == null || route.length < 2) {
+            return;
+        }
+        for (Coordinate[] existing : routes) {
+            if (Arrays.equals(existing, route)) {
+                return;
+            }
+        }
+        int id = routes.size();
+        Coordinate[] copy = Arrays.copyOf(route, route.length);
+        routes.add(copy);
+        for (int i = 0; i < copy.length; i++) {
+            index.insert(new Envelope(copy[i]), new Vertex(id, i));
+        }
+        LOG.debug("Route {} added <{} {}>", id, copy[0], copy[copy.length - 1]);
+    }
+
+    /**
+     * Gets the number of routes in the cache.
+     *
+     * @return the number of routes in the cache.
+     */
+    public synchronized int size() {
+        return routes.size();
+    }
+
+    /**
+     * Returns true if there are no routes in the cache.
+     *
+     * @return true if there are no routes in the cache.
+     */
+    public synchronized boolean isEmpty() {
+        return routes.isEmpty();
+    }
+
+    /**
+     * Finds the shortest recorded route segment that starts within tolerance of
+     * {@code start} and ends within tolerance of {@code goal}. Routes may be
+     * traversed in either direction.
+     *
+     * @param start the starting coordinate.
+     * @param goal the goal coordinate.
+     * @param tolerance the maximum distance between a route vertex and the start or
+     * goal.
+     * @return the coordinates of the route segment from start to goal or an empty
+     * Optional if there is none.
+     */
+    public synchronized Optional<List<Coordinate>> find(Coordinate start, Coordinate goal, double tolerance) {
+        if (routes.isEmpty()) {
+            return Optional.empty();
+        }
+        List<Vertex> starts = near(start, tolerance);
+        if (starts.isEmpty()) {
+            return Optional.empty();
+        }
+        List<Vertex> goals = near(goal, tolerance);
+
+        Vertex bestStart = null;
+        Vertex bestGoal = null;
+        double bestLength = Double.POSITIVE_INFINITY;
+        for (Vertex s : starts) {
+            for (Vertex g : goals) {
+                if (s.route == g.route && s.idx != g.idx) {
+                    double length = length(routes.get(s.route), s.idx, g.idx);
+                    if (length < bestLength) {
+                        bestLength = length;
+                        bestStart = s;
+                        bestGoal = g;
+                    }
+                }
+            }
+        }
+        if (bestStart == null) {
+            return Optional.empty();
+        }
+        Coordinate[] route = routes.get(bestStart.route);
+        List<Coordinate> result = new ArrayList<>();
+        int step = bestStart.idx < bestGoal.idx ? 1 : -1;
+        for (int i = bestStart.idx; i != bestGoal.idx + step; i += step) {
+            result.add(route[i]);
+        }
+        LOG.debug("Found route {} from {} to {} with {} points", bestStart.route, start, goal, result.size());
+        return Optional.of(Collections.unmodifiableList(result));
+    }
+
+    private List<Vertex> near(Coordinate c, double tolerance) {
+        Envelope env = new Envelope(c);
+        env.expandBy(tolerance);
+        List<Vertex> result = new ArrayList<>();
+        for (Object o : index.query(env)) {
+            Vertex v = (Vertex) o;
+            if (routes.get(v.route)[v.idx].distance(c) <= tolerance) {
+                result.add(v);
+            }
+        }
+        return result;
+    }
+
+    private static double length(Coordinate[] route, int from, int to) {
+        int lo = Math.min(from, to);
+        int hi = Math.max(from, to);
+        double result = 0;
+        for (int i = lo; i < hi; i++) {
+            result += route[i].distance(route[i + 1]);
+        }
+        return result;
+    }
+
+    private static class Vertex {
+        final int route;
+        final int idx;
+
+        Vertex(int route, int idx) {
+            this.route = route;
+            this.idx = idx;
+        }
+    }
+}
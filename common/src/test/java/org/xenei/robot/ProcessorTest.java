@@ -34,12 +34,19 @@ public class ProcessorTest {
 
     private void doTest(Location startCoord, Location finalCoord, Mover mover, DistanceSensor sensor)
             throws AbortedException {
+        doTest(startCoord, finalCoord, mover, sensor, false);
+    }
+
+    private void doTest(Location startCoord, Location finalCoord, Mover mover, DistanceSensor sensor,
+            boolean pipelined) throws AbortedException {
         Supplier<Position> positionSupplier = mover::position;
 
-        Processor underTest = new Processor(ctxt, mover, positionSupplier, sensor);
-        MapViz mapViz = new MapViz(100, underTest.map, underTest.planner::getSolution, positionSupplier);
-        underTest.add(mapViz);
-        underTest.moveTo(finalCoord, new StepTracker());
+        try (Processor underTest = new Processor(ctxt, mover, positionSupplier, sensor)) {
+            underTest.setPipelined(pipelined);
+            MapViz mapViz = new MapViz(100, underTest.map, underTest.planner::getSolution, positionSupplier);
+            underTest.add(mapViz);
+            underTest.moveTo(finalCoord, new StepTracker());
+        }
     }
 
     @Test
@@ -52,6 +59,16 @@ public class ProcessorTest {
         doTest(startCoord, finalCoord, mover, sensor);
     }
 
+    @Test
+    public void stepTestMap2Pipelined() throws AbortedException {
+        Location startCoord = Location.from(-1, -3);
+        Mover mover = new FakeMover(Location.from(startCoord), 1);
+        Map m = new MapImpl(new RobutContext(ScaleInfo.DEFAULT, TestChassisInfo.DEFAULT));
+        DistanceSensor sensor = new FakeDistanceSensor1(MapLibrary.map2(m), mover::position);
+        Location finalCoord = Location.from(-1, 1);
+        doTest(startCoord, finalCoord, mover, sensor, true);
+    }
+
     @Test
     @Disabled
     public void stepTestMap3() throws AbortedException {
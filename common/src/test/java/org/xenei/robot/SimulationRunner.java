@@ -0,0 +1,318 @@
+package org.xenei.robot;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xenei.robot.common.AbortedException;
+import org.xenei.robot.common.DistanceSensor;
+import org.xenei.robot.common.Location;
+import org.xenei.robot.common.Mover;
+import org.xenei.robot.common.Position;
+import org.xenei.robot.common.ScaleInfo;
+import org.xenei.robot.common.mapping.FloorPlan;
+import org.xenei.robot.common.mapping.FloorPlanGenerator;
+import org.xenei.robot.common.mapping.FloorPlanGenerator.Layout;
+import org.xenei.robot.common.mapping.Map;
+import org.xenei.robot.common.testUtils.FakeDistanceSensor1;
+import org.xenei.robot.common.testUtils.FakeMover;
+import org.xenei.robot.common.testUtils.MapLibrary;
+import org.xenei.robot.common.testUtils.TestChassisInfo;
+import org.xenei.robot.common.utils.RobutContext;
+import org.xenei.robot.mapper.MapImpl;
+
+/**
+ * Runs navigation episodes without a display and reports how they performed.
+ * Each episode builds the world map, drives a {@link Processor} with a
+ * {@link FakeMover} and a {@link FakeDistanceSensor1} from the start to the goal
+ * and records the wall time, the number of planning steps, the number of map
+ * queries and the length of the path driven. Episodes run in parallel, each
+ * with its own context so that the metrics, RDF datatype and functions are not
+ * shared.
+ */
+public class SimulationRunner {
+    private static final Logger LOG = LoggerFactory.getLogger(SimulationRunner.class);
+    /** the maximum number of planning steps before an episode is aborted */
+    private static final int MAX_STEPS = 100;
+
+    /**
+     * The outcome of an episode.
+     */
+    public enum Outcome {
+        /** the goal was reached */
+        REACHED,
+        /** the planner stopped before the goal was reached */
+        STOPPED,
+        /** the step limit was exceeded */
+        ABORTED,
+        /** the episode threw an exception */
+        FAILED
+    }
+
+    /**
+     * An episode to run. The map factory populates the world map that the sensor
+     * reads.
+     */
+    public static class Episode {
+        public final String name;
+        public final UnaryOperator<Map> mapFactory;
+        public final Location start;
+        public final Location goal;
+
+        public Episode(String name, UnaryOperator<Map> mapFactory, Location start, Location goal) {
+            this.name = name;
+            this.mapFactory = mapFactory;
+            this.start = start;
+            this.goal = goal;
+        }
+    }
+
+    /**
+     * The measurements from one episode.
+     */
+    public static class Result {
+        public final Episode episode;
+        public final Outcome outcome;
+        public final long wallNanos;
+        public final long steps;
+        public final long queries;
+        public final double pathLength;
+
+        Result(Episode episode, Outcome outcome, long wallNanos, long steps, long queries, double pathLength) {
+            this.episode = episode;
+            this.outcome = outcome;
+            this.wallNanos = wallNanos;
+            this.steps = steps;
+            this.queries = queries;
+            this.pathLength = pathLength;
+        }
+
+        /**
+         * The straight line distance from the start to the goal.
+         *
+         * @return the direct distance.
+         */
+        public double directLength() {
+            return episode.start.distance(episode.goal);
+        }
+    }
+
+    private final int threads;
+
+    /**
+     * Constructor.
+     *
+     * @param threads the number of episodes to run concurrently.
+     */
+    public SimulationRunner(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * The default episodes.
+     *
+     * @return the list of default episodes.
+     */
+    public static List<Episode> defaultEpisodes() {
+        List<Episode> result = new ArrayList<>();
+        result.add(new Episode("map2", MapLibrary::map2, Location.from(-1, -3), Location.from(-1, 1)));
+        result.add(new Episode("map2-corner", MapLibrary::map2, Location.from(-3, -3), Location.from(2, 2)));
+        result.add(new Episode("map3", MapLibrary::map3, Location.from(-1, -3), Location.from(-1, 1)));
+        result.add(new Episode("empty", m -> m, Location.from(-1, -3), Location.from(-1, 1)));
+        result.add(new Episode("empty-diagonal", m -> m, Location.from(0, 0), Location.from(5, 5)));
+        result.add(new Episode("empty-long", m -> m, Location.from(3, -2), Location.from(-4, 4)));
+        for (Layout layout : Layout.values()) {
+            result.add(generatedEpisode(layout, 40, 1));
+        }
+        return result;
+    }
+
+    /**
+     * Creates an episode on a generated floor plan with a random start and goal.
+     *
+     * @param layout the floor plan layout.
+     * @param size the length of a side of the floor plan.
+     * @param seed the random seed for the floor plan, start and goal.
+     * @return the episode.
+     */
+    public static Episode generatedEpisode(Layout layout, int size, long seed) {
+        FloorPlanGenerator generator = new FloorPlanGenerator(seed);
+        FloorPlan plan = generator.generate(layout, size, size);
+        Location start = Location.from(plan.randomClear(generator.random()));
+        Location goal = Location.from(plan.randomClear(generator.random()));
+        String name = String.format("%s-%d-%d", layout.name().toLowerCase(), size, seed);
+        return new Episode(name, plan::load, start, goal);
+    }
+
+    /**
+     * Runs the episodes in parallel.
+     *
+     * @param episodes the episodes to run.
+     * @return the results in the same order as the episodes.
+     */
+    public List<Result> run(List<Episode> episodes) {
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "SimulationRunner-episode");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<CompletableFuture<Result>> futures = episodes.stream()
+                    .map(e -> CompletableFuture.supplyAsync(() -> run(e), executor)).collect(Collectors.toList());
+            return futures.stream().map(CompletableFuture::join).collect(Collectors.toList());
+        } catch (CompletionException e) {
+            throw new IllegalStateException("Episode did not complete", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs a single episode.
+     *
+     * @param episode the episode to run.
+     * @return the result of the episode.
+     */
+    public static Result run(Episode episode) {
+        RobutContext worldCtxt = new RobutContext(ScaleInfo.DEFAULT, TestChassisInfo.DEFAULT);
+        Map world = episode.mapFactory.apply(new MapImpl(worldCtxt));
+        RobutContext ctxt = new RobutContext(ScaleInfo.DEFAULT, TestChassisInfo.DEFAULT);
+        TrackingMover mover = new TrackingMover(new FakeMover(episode.start, 1));
+        DistanceSensor sensor = new FakeDistanceSensor1(world, mover::position, false);
+        Processor processor = new Processor(ctxt, mover, mover::position, sensor);
+
+        Outcome outcome;
+        long start = System.nanoTime();
+        try (processor) {
+            processor.moveTo(episode.goal, p -> {
+                if (processor.getMetrics().counter(Processor.STEP_COUNTER).get() > MAX_STEPS) {
+                    throw new AbortedException("Did not find solution in " + MAX_STEPS + " steps");
+                }
+            });
+            outcome = processor.map.areEquivalent(mover.position().getCoordinate(), episode.goal.getCoordinate())
+                    ? Outcome.REACHED
+                    : Outcome.STOPPED;
+        } catch (AbortedException e) {
+            outcome = Outcome.ABORTED;
+        } catch (RuntimeException e) {
+            LOG.error("Episode {} failed", episode.name, e);
+            outcome = Outcome.FAILED;
+        }
+        long wall = System.nanoTime() - start;
+        return new Result(episode, outcome, wall, processor.getMetrics().counter(Processor.STEP_COUNTER).get(),
+                processor.getMetrics().counter(MapImpl.QUERY_COUNTER).get(), mover.pathLength);
+    }
+
+    /**
+     * Writes the per episode results and a summary.
+     *
+     * @param results the results to report.
+     * @param out the stream to write to.
+     */
+    public static void report(List<Result> results, PrintStream out) {
+        out.format("%-20s %-8s %10s %6s %8s %8s %8s%n", "episode", "outcome", "wall ms", "steps", "queries", "path",
+                "direct");
+        for (Result r : results) {
+            out.format("%-20s %-8s %10.1f %6d %8d %8.2f %8.2f%n", r.episode.name, r.outcome, toMillis(r.wallNanos),
+                    r.steps, r.queries, r.pathLength, r.directLength());
+        }
+        if (results.isEmpty()) {
+            return;
+        }
+        List<Long> walls = results.stream().map(r -> r.wallNanos).sorted().collect(Collectors.toList());
+        long reached = results.stream().filter(r -> r.outcome == Outcome.REACHED).count();
+        long steps = results.stream().mapToLong(r -> r.steps).sum();
+        long queries = results.stream().mapToLong(r -> r.queries).sum();
+        double ratio = results.stream().filter(r -> r.outcome == Outcome.REACHED && r.directLength() > 0)
+                .mapToDouble(r -> r.pathLength / r.directLength()).average().orElse(Double.NaN);
+        out.format("episodes: %d reached: %d%n", results.size(), reached);
+        out.format("wall ms: p50 %.1f p90 %.1f max %.1f total %.1f%n", toMillis(percentile(walls, 0.5)),
+                toMillis(percentile(walls, 0.9)), toMillis(Collections.max(walls)),
+                toMillis(walls.stream().mapToLong(Long::longValue).sum()));
+        out.format("steps: %d queries: %d queries/step: %.1f%n", steps, queries,
+                steps == 0 ? 0.0 : (double) queries / steps);
+        out.format("mean path/direct for reached episodes: %.3f%n", ratio);
+    }
+
+    private static long percentile(List<Long> sorted, double fraction) {
+        int idx = (int) Math.ceil(fraction * sorted.size()) - 1;
+        return sorted.get(Math.max(0, idx));
+    }
+
+    private static double toMillis(long nanos) {
+        return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Runs the default episodes.
+     *
+     * @param args optional number of threads and number of repetitions of each
+     * episode.
+     */
+    public static void main(String[] args) {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int repeats = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        List<Episode> episodes = new ArrayList<>();
+        for (int i = 0; i < repeats; i++) {
+            episodes.addAll(defaultEpisodes());
+        }
+        long start = System.nanoTime();
+        List<Result> results = new SimulationRunner(threads).run(episodes);
+        report(results, System.out);
+        System.out.format("elapsed ms: %.1f on %d threads%n", toMillis(System.nanoTime() - start), threads);
+    }
+
+    /**
+     * A mover that records the length of the path driven.
+     */
+    private static class TrackingMover implements Mover {
+        private final Mover delegate;
+        private volatile double pathLength;
+
+        TrackingMover(Mover delegate) {
+            this.delegate = delegate;
+        }
+
+        private Position track(Position before, Position after) {
+            pathLength += before.distance(after);
+            return after;
+        }
+
+        @Override
+        public Position move(Location location) {
+            Position before = delegate.position();
+            return track(before, delegate.move(location));
+        }
+
+        @Override
+        public Position position() {
+            return delegate.position();
+        }
+
+        @Override
+        public void setHeading(double heading) {
+            delegate.setHeading(heading);
+        }
+
+        @Override
+        public CompletableFuture<Position> moveAsync(Location location, ProgressListener listener) {
+            Position before = delegate.position();
+            return delegate.moveAsync(location, listener).thenApply(after -> track(before, after));
+        }
+
+        @Override
+        public CompletableFuture<Position> setHeadingAsync(double heading, ProgressListener listener) {
+            return delegate.setHeadingAsync(heading, listener);
+        }
+    }
+}
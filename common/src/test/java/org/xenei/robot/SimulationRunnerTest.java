@@ -0,0 +1,43 @@
+package org.xenei.robot;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.xenei.robot.SimulationRunner.Episode;
+import org.xenei.robot.SimulationRunner.Outcome;
+import org.xenei.robot.SimulationRunner.Result;
+import org.xenei.robot.common.Location;
+import org.xenei.robot.common.testUtils.MapLibrary;
+
+public class SimulationRunnerTest {
+
+    @Test
+    public void parallelEpisodesTest() {
+        List<Episode> episodes = List.of(
+                new Episode("map2", MapLibrary::map2, Location.from(-1, -3), Location.from(-1, 1)),
+                new Episode("empty", m -> m, Location.from(-1, -3), Location.from(-1, 1)));
+        List<Result> results = new SimulationRunner(2).run(episodes);
+        assertEquals(2, results.size());
+        for (int i = 0; i < episodes.size(); i++) {
+            Result result = results.get(i);
+            assertEquals(episodes.get(i), result.episode);
+            assertNotEquals(Outcome.FAILED, result.outcome);
+            assertTrue(result.steps > 0);
+            assertTrue(result.queries > 0);
+            assertTrue(result.wallNanos > 0);
+            assertTrue(result.pathLength > 0);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        SimulationRunner.report(results, new PrintStream(bytes, true));
+        String report = bytes.toString();
+        assertTrue(report.contains("map2"));
+        assertTrue(report.contains("episodes: 2"));
+    }
+}
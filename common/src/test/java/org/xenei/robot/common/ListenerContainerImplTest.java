@@ -0,0 +1,95 @@
+package org.xenei.robot.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+public class ListenerContainerImplTest {
+
+    @Test
+    public void synchronousTest() {
+        ListenerContainerImpl underTest = new ListenerContainerImpl();
+        AtomicInteger count = new AtomicInteger();
+        underTest.addListener(count::incrementAndGet);
+        underTest.notifyListeners();
+        underTest.notifyListeners();
+        assertEquals(2, count.get());
+        assertEquals(0, underTest.getCoalescedCount());
+    }
+
+    @Test
+    public void coalesceTest() throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            ListenerContainerImpl underTest = new ListenerContainerImpl(executor);
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            AtomicInteger count = new AtomicInteger();
+            underTest.addListener(() -> {
+                count.incrementAndGet();
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+
+            underTest.notifyListeners();
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            // the listener is busy so these collapse into one update.
+            for (int i = 0; i < 10; i++) {
+                underTest.notifyListeners();
+            }
+            release.countDown();
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+            assertEquals(2, count.get());
+            assertEquals(9, underTest.getCoalescedCount());
+            assertEquals(0, underTest.getDroppedCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void droppedTest() {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+        ListenerContainerImpl underTest = new ListenerContainerImpl(executor);
+        AtomicInteger count = new AtomicInteger();
+        underTest.addListener(count::incrementAndGet);
+        underTest.notifyListeners();
+        assertEquals(0, count.get());
+        assertEquals(1, underTest.getDroppedCount());
+    }
+
+    @Test
+    public void closeTest() throws InterruptedException {
+        ListenerContainerImpl underTest = ListenerContainerImpl.asynchronous();
+        CountDownLatch notified = new CountDownLatch(1);
+        AtomicInteger count = new AtomicInteger();
+        underTest.addListener(() -> {
+            count.incrementAndGet();
+            notified.countDown();
+        });
+        underTest.notifyListeners();
+        assertTrue(notified.await(5, TimeUnit.SECONDS));
+
+        underTest.close();
+        // the dispatch thread may still be finishing the first notification.
+        for (int i = 0; i < 50 && underTest.getDroppedCount() == 0; i++) {
+            underTest.notifyListeners();
+            Thread.sleep(10);
+        }
+        assertEquals(1, count.get());
+        assertTrue(underTest.getDroppedCount() > 0);
+    }
+}
@@ -7,6 +7,7 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import org.junit.jupiter.api.BeforeEach;
@@ -84,4 +85,54 @@ public class SolutionTest {
         assertEquals(expectedSimplifiedCost, underTest.cost());
     }
 
+    private static boolean[][] canSee() {
+        boolean canSee[][] = new boolean[expectedSolution.length][expectedSolution.length];
+
+        /*                                        0     1     2     3     4     5      6      7 */
+        /* -1, -3 */ canSee[0] = new boolean[] { true, true, true, true, true, false, false, false };
+        /* -1, -2 */ canSee[1] = new boolean[] { true, true, true, true, true, false, false, false };
+        /* -2, -2 */ canSee[2] = new boolean[] { true, true, true, true, true, false, false, false };
+        /* -0, -2 */ canSee[3] = new boolean[] { true, true, true, true, true, false, false, false };
+        /*  2, -2 */ canSee[4] = new boolean[] { true, true, true, true, true, true, true, false };
+        /*  2, -1 */ canSee[5] = new boolean[] { false, false, false, false, true, true, true, false  };
+        /*  2,  0 */ canSee[6] = new boolean[] { false, false, false, false, true, true, true, true };
+        /* -1,  1 */ canSee[7] = new boolean[] { false, false, false, false, false, false, true, true };
+        return canSee;
+    }
+
+    @Test
+    public void simplifyGreedyTest() {
+        boolean canSee[][] = canSee();
+        AtomicInteger checks = new AtomicInteger();
+        List<Coordinate> idx = Arrays.asList(expectedSolution);
+        underTest.simplify((x, y) -> {
+            checks.incrementAndGet();
+            return canSee[idx.indexOf(x)][idx.indexOf(y)];
+        }, Solution.Simplification.GREEDY);
+        assertEquals(3, underTest.stepCount());
+        List<Coordinate> solution = underTest.stream().collect(Collectors.toList());
+        List<Coordinate> expected = Arrays.stream(expectedSimplification).collect(Collectors.toList());
+        assertEquals(expected, solution);
+        assertEquals(expectedSimplifiedCost, underTest.cost());
+        assertTrue(checks.get() < expectedSolution.length * 2, () -> "Too many checks: " + checks.get());
+    }
+
+    @Test
+    public void simplifyOnlyOnceTest() {
+        boolean canSee[][] = canSee();
+        AtomicInteger checks = new AtomicInteger();
+        List<Coordinate> idx = Arrays.asList(expectedSolution);
+        underTest.simplify((x, y) -> {
+            checks.incrementAndGet();
+            return canSee[idx.indexOf(x)][idx.indexOf(y)];
+        });
+        int count = checks.get();
+        underTest.simplify((x, y) -> {
+            checks.incrementAndGet();
+            return canSee[idx.indexOf(x)][idx.indexOf(y)];
+        });
+        assertEquals(count, checks.get());
+        assertEquals(3, underTest.stepCount());
+    }
+
 }
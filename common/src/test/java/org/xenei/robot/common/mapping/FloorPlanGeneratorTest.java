@@ -0,0 +1,72 @@
+package org.xenei.robot.common.mapping;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.xenei.robot.common.ScaleInfo;
+import org.xenei.robot.common.mapping.FloorPlanGenerator.Layout;
+import org.xenei.robot.common.testUtils.TestChassisInfo;
+import org.xenei.robot.common.utils.RobutContext;
+
+public class FloorPlanGeneratorTest {
+
+    private static RobutContext ctxt = new RobutContext(ScaleInfo.DEFAULT, TestChassisInfo.DEFAULT);
+
+    private static int cellCount(List<Geometry> geoms) {
+        int count = 0;
+        for (Geometry geom : geoms) {
+            Coordinate[] coords = geom.getCoordinates();
+            count += coords.length == 1 ? 1 : (int) Math.round(coords[0].distance(coords[coords.length - 1])) + 1;
+        }
+        return count;
+    }
+
+    @Test
+    public void deterministicTest() {
+        for (Layout layout : Layout.values()) {
+            FloorPlan first = new FloorPlanGenerator(42).generate(layout, 60, 40);
+            FloorPlan second = new FloorPlanGenerator(42).generate(layout, 60, 40);
+            assertEquals(first.obstacleCount(), second.obstacleCount(), layout::name);
+            assertEquals(first.toGeometries(ctxt.geometryUtils), second.toGeometries(ctxt.geometryUtils),
+                    layout::name);
+        }
+    }
+
+    @Test
+    public void geometriesCoverCellsTest() {
+        for (Layout layout : Layout.values()) {
+            FloorPlan plan = new FloorPlanGenerator(7).generate(layout, 50, 50);
+            List<Geometry> geoms = plan.toGeometries(ctxt.geometryUtils);
+            assertEquals(plan.obstacleCount(), cellCount(geoms), layout::name);
+            // runs are merged so there are far fewer geometries than cells.
+            assertTrue(geoms.size() < plan.obstacleCount(), layout::name);
+        }
+    }
+
+    @Test
+    public void largePlanTest() {
+        FloorPlan plan = new FloorPlanGenerator(3).warehouse(300, 300);
+        assertTrue(plan.obstacleCount() > 10_000);
+        assertEquals(plan.obstacleCount(), cellCount(plan.toGeometries(ctxt.geometryUtils)));
+    }
+
+    @Test
+    public void randomClearTest() {
+        FloorPlan plan = new FloorPlanGenerator(5).office(40, 40);
+        Random random = new Random(5);
+        for (int i = 0; i < 20; i++) {
+            Coordinate c = plan.randomClear(random);
+            int x = (int) c.x + plan.getWidth() / 2;
+            int y = (int) c.y + plan.getHeight() / 2;
+            assertTrue(plan.isClear(x, y));
+            assertFalse(plan.isObstacle(x, y));
+        }
+    }
+}
@@ -27,10 +27,24 @@ public class FakeDistanceSensor1 implements FakeDistanceSensor {
     private static final double MAX_RANGE = 350;
     private final Supplier<Position> positionSupplier;
     private final LinkedHashMap<Position, Location[]> history = new LinkedHashMap<>();
+    /** true if the history is written to /tmp/sensorData.txt after each reading */
+    private final boolean writeHistory;
 
     public FakeDistanceSensor1(Map map, Supplier<Position> positionSupplier) {
+        this(map, positionSupplier, true);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param map the map to read the obstacles from.
+     * @param positionSupplier the supplier of the current position.
+     * @param writeHistory true to write the history file after each reading.
+     */
+    public FakeDistanceSensor1(Map map, Supplier<Position> positionSupplier, boolean writeHistory) {
         this.map = map;
         this.positionSupplier = positionSupplier;
+        this.writeHistory = writeHistory;
     }
 
     @Override
@@ -91,12 +105,13 @@ public class FakeDistanceSensor1 implements FakeDistanceSensor {
                 }
             }
             history.put(position, result);
-            try {
-                writeHistory(new FileOutputStream("/tmp/sensorData.txt"));
-            } catch (IOException e) {
-                LOG.error("Can not write sensor data");
+            if (writeHistory) {
+                try {
+                    writeHistory(new FileOutputStream("/tmp/sensorData.txt"));
+                } catch (IOException e) {
+                    LOG.error("Can not write sensor data");
+                }
             }
-
         }
         return result;
     }
@@ -1,5 +1,7 @@
 package org.xenei.robot.common.testUtils;
 
+import java.util.concurrent.CompletableFuture;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xenei.robot.common.FrontsCoordinate;
@@ -10,7 +12,9 @@ import org.xenei.robot.common.utils.CoordUtils;
 
 public class FakeMover implements Mover {
     private static final Logger LOG = LoggerFactory.getLogger(FakeMover.class);
-    Position position;
+    /** the number of increments an asynchronous move is divided into */
+    private static final int INCREMENTS = 10;
+    volatile Position position;
     private int speed;
 
     public FakeMover(FrontsCoordinate initial, int speed) {
@@ -22,12 +26,13 @@ public class FakeMover implements Mover {
     }
     
 
+    private Location limit(Location move) {
+        return move.range() > speed ? Location.from(CoordUtils.fromAngle(move.theta(), speed)) : move;
+    }
+
     @Override
     public Position move(Location move) {
-        if (move.range() > speed) {
-            move = Location.from(CoordUtils.fromAngle(move.theta(), speed));
-        }
-        position = position.nextPosition(move);
+        position = position.nextPosition(limit(move));
         if (LOG.isDebugEnabled()) {
             LOG.debug("New position {}", position);
         }
@@ -44,4 +49,35 @@ public class FakeMover implements Mover {
         position = Position.from(position, heading);
     }
 
+    @Override
+    public CompletableFuture<Position> moveAsync(Location move, ProgressListener listener) {
+        Location limited = limit(move);
+        Position start = position;
+        CompletableFuture<Position> result = new CompletableFuture<>();
+        CompletableFuture.runAsync(() -> {
+            for (int i = 1; i <= INCREMENTS && !result.isCancelled(); i++) {
+                double fraction = (double) i / INCREMENTS;
+                position = start.nextPosition(i == INCREMENTS ? limited
+                        : Location.from(CoordUtils.fromAngle(limited.theta(), limited.range() * fraction)));
+                if (listener != null) {
+                    listener.progress(fraction, position);
+                }
+            }
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("New position {}", position);
+            }
+            result.complete(position);
+        });
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<Position> setHeadingAsync(double heading, ProgressListener listener) {
+        setHeading(heading);
+        if (listener != null) {
+            listener.progress(1.0, position);
+        }
+        return CompletableFuture.completedFuture(position);
+    }
+
 }
@@ -1,11 +1,20 @@
 package org.xenei.robot.common.testUtils;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.xenei.robot.common.utils.AngleUtils.RADIANS_135;
 import static org.xenei.robot.common.utils.AngleUtils.RADIANS_225;
 import static org.xenei.robot.common.utils.AngleUtils.RADIANS_315;
 import static org.xenei.robot.common.utils.AngleUtils.RADIANS_45;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.xenei.robot.common.Location;
@@ -63,4 +72,67 @@ public class FakeMoverTest {
         assertEquals(0, underTest.position().getX(), DELTA);
         assertEquals(0, underTest.position().getY(), DELTA);
     }
+
+    @Test
+    public void moveAsyncTest() throws Exception {
+        List<Double> fractions = new ArrayList<>();
+        List<Position> positions = new ArrayList<>();
+        Location move = Location.from(CoordUtils.fromAngle(RADIANS_45, 2));
+        Position result = underTest.moveAsync(move, (fraction, position) -> {
+            fractions.add(fraction);
+            positions.add(position);
+        }).get(5, TimeUnit.SECONDS);
+
+        assertEquals(sqrt2, result.getX(), DELTA);
+        assertEquals(sqrt2, result.getY(), DELTA);
+        assertEquals(RADIANS_45, result.getHeading(), DELTA);
+        assertEquals(result, underTest.position());
+
+        assertEquals(10, fractions.size());
+        for (int i = 1; i < fractions.size(); i++) {
+            assertTrue(fractions.get(i) > fractions.get(i - 1));
+            assertTrue(positions.get(i).getX() > positions.get(i - 1).getX());
+        }
+        assertEquals(1.0, fractions.get(fractions.size() - 1), DELTA);
+        assertEquals(result, positions.get(positions.size() - 1));
+    }
+
+    @Test
+    public void moveAsyncCancelTest() throws Exception {
+        CountDownLatch paused = new CountDownLatch(1);
+        CountDownLatch resume = new CountDownLatch(1);
+        List<Double> fractions = new ArrayList<>();
+        Location move = Location.from(CoordUtils.fromAngle(0, 2));
+        CompletableFuture<Position> result = underTest.moveAsync(move, (fraction, position) -> {
+            fractions.add(fraction);
+            if (fractions.size() == 3) {
+                paused.countDown();
+                try {
+                    resume.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        assertTrue(paused.await(5, TimeUnit.SECONDS));
+        assertTrue(result.cancel(true));
+        resume.countDown();
+
+        assertThrows(CancellationException.class, () -> result.get(5, TimeUnit.SECONDS));
+        // the move stops at the increment where it was cancelled.
+        assertEquals(0.6, underTest.position().getX(), DELTA);
+        assertEquals(0.0, underTest.position().getY(), DELTA);
+        assertEquals(3, fractions.size());
+    }
+
+    @Test
+    public void setHeadingAsyncTest() throws Exception {
+        List<Double> fractions = new ArrayList<>();
+        Position result = underTest.setHeadingAsync(RADIANS_135, (fraction, position) -> fractions.add(fraction))
+                .get(5, TimeUnit.SECONDS);
+        assertEquals(RADIANS_135, result.getHeading(), DELTA);
+        assertEquals(0.0, result.getX(), DELTA);
+        assertEquals(0.0, result.getY(), DELTA);
+        assertEquals(List.of(1.0), fractions);
+    }
 }
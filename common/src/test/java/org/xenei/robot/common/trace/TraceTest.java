@@ -0,0 +1,210 @@
+package org.xenei.robot.common.trace;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.xenei.robot.common.DistanceSensor;
+import org.xenei.robot.common.Location;
+import org.xenei.robot.common.Mover;
+import org.xenei.robot.common.Position;
+import org.xenei.robot.common.testUtils.FakeMover;
+
+public class TraceTest {
+    private static final double DELTA = 0.0000001;
+
+    @TempDir
+    Path dir;
+
+    /**
+     * A sensor that returns a different scan each time it is called.
+     */
+    private static class CountingSensor implements DistanceSensor {
+        private int count;
+
+        @Override
+        public Location[] sense() {
+            count++;
+            return new Location[] { Location.from(count, 0), Location.from(0, -count), Location.INFINITE };
+        }
+
+        @Override
+        public double maxRange() {
+            return 350;
+        }
+    }
+
+    private static void assertLocations(Location[] expected, Location[] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i].getX(), actual[i].getX(), DELTA);
+            assertEquals(expected[i].getY(), actual[i].getY(), DELTA);
+        }
+    }
+
+    @Test
+    public void recordAndReplayTest() throws IOException {
+        Path path = dir.resolve("trace.bin");
+        List<Location[]> scans = new ArrayList<>();
+        List<Position> positions = new ArrayList<>();
+        try (TraceWriter writer = new TraceWriter(path)) {
+            Mover mover = new RecordingMover(new FakeMover(Location.ORIGIN, 1), writer);
+            DistanceSensor sensor = new RecordingDistanceSensor(new CountingSensor(), mover::position, writer);
+            // enough scans to fill the write buffer several times.
+            for (int i = 0; i < 5000; i++) {
+                mover.setHeading(i % 4);
+                mover.move(Location.from(0.5, 0.5));
+                positions.add(mover.position());
+                scans.add(sensor.sense());
+            }
+        }
+
+        try (TraceReader reader = new TraceReader(path)) {
+            ReplayDistanceSensor replay = new ReplayDistanceSensor(reader);
+            assertEquals(350, replay.maxRange(), DELTA);
+            for (int i = 0; i < scans.size(); i++) {
+                assertTrue(replay.hasNext());
+                assertLocations(scans.get(i), replay.sense());
+                assertEquals(positions.get(i).getX(), replay.getPosition().getX(), DELTA);
+                assertEquals(positions.get(i).getY(), replay.getPosition().getY(), DELTA);
+                assertEquals(positions.get(i).getHeading(), replay.getPosition().getHeading(), DELTA);
+            }
+            assertFalse(replay.hasNext());
+            assertThrows(NoSuchElementException.class, replay::sense);
+        }
+    }
+
+    @Test
+    public void frameOrderTest() throws IOException {
+        Path path = dir.resolve("trace.bin");
+        try (TraceWriter writer = new TraceWriter(path)) {
+            Mover mover = new RecordingMover(new FakeMover(Location.ORIGIN, 1), writer);
+            DistanceSensor sensor = new RecordingDistanceSensor(new CountingSensor(), mover::position, writer);
+            sensor.sense();
+            mover.setHeading(1);
+            mover.move(Location.from(1, 0));
+        }
+        List<TraceFrame.Type> types = new ArrayList<>();
+        long last = -1;
+        try (TraceReader reader = new TraceReader(path)) {
+            while (reader.hasNext()) {
+                TraceFrame frame = reader.next();
+                types.add(frame.type);
+                assertTrue(frame.nanos >= last);
+                last = frame.nanos;
+            }
+        }
+        assertEquals(List.of(TraceFrame.Type.SENSOR, TraceFrame.Type.SCAN, TraceFrame.Type.HEADING,
+                TraceFrame.Type.MOVE), types);
+    }
+
+    @Test
+    public void truncatedTraceTest() throws IOException {
+        Path path = dir.resolve("trace.bin");
+        try (TraceWriter writer = new TraceWriter(path)) {
+            DistanceSensor sensor = new RecordingDistanceSensor(new CountingSensor(), () -> Position.from(0, 0),
+                    writer);
+            sensor.sense();
+            sensor.sense();
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(path) - 5);
+        }
+        try (TraceReader reader = new TraceReader(path)) {
+            ReplayDistanceSensor replay = new ReplayDistanceSensor(reader);
+            replay.sense();
+            // the second scan is incomplete so the trace ends after the first.
+            assertFalse(replay.hasNext());
+        }
+    }
+
+    @Test
+    public void corruptScanCountTest() throws IOException {
+        Path path = dir.resolve("trace.bin");
+        try (TraceWriter writer = new TraceWriter(path)) {
+            writer.writeScan(Position.from(0, 0), new Location[] { Location.from(1, 0) });
+        }
+        // overwrite the location count with a value that would overflow the frame size.
+        long countOffset = TraceWriter.HEADER_SIZE + 1 + Long.BYTES + 3 * Double.BYTES;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, Integer.MAX_VALUE / 4), countOffset);
+        }
+        try (TraceReader reader = new TraceReader(path)) {
+            assertFalse(reader.hasNext());
+        }
+    }
+
+    @Test
+    public void corruptTypeTest() throws IOException {
+        Path path = dir.resolve("trace.bin");
+        try (TraceWriter writer = new TraceWriter(path)) {
+            writer.writeSensor(2.0);
+            writer.writeSensor(3.0);
+        }
+        // overwrite the type of the second frame with an unknown code.
+        long typeOffset = TraceWriter.HEADER_SIZE + 1 + Long.BYTES + Double.BYTES;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(1).put(0, (byte) 0x7F), typeOffset);
+        }
+        try (TraceReader reader = new TraceReader(path)) {
+            assertTrue(reader.hasNext());
+            assertEquals(2.0, reader.next().maxRange());
+            assertFalse(reader.hasNext());
+        }
+    }
+
+    @Test
+    public void cancelledMoveTest() throws Exception {
+        Path path = dir.resolve("trace.bin");
+        Mover mover;
+        try (TraceWriter writer = new TraceWriter(path)) {
+            mover = new RecordingMover(new FakeMover(Location.ORIGIN, 1), writer);
+            CountDownLatch paused = new CountDownLatch(1);
+            CountDownLatch resume = new CountDownLatch(1);
+            CompletableFuture<Position> result = mover.moveAsync(Location.from(1, 0), (fraction, position) -> {
+                paused.countDown();
+                try {
+                    resume.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            assertTrue(paused.await(5, TimeUnit.SECONDS));
+            assertTrue(result.cancel(true));
+            resume.countDown();
+            mover.setHeading(1);
+        }
+        List<TraceFrame> frames = new ArrayList<>();
+        try (TraceReader reader = new TraceReader(path)) {
+            reader.forEachRemaining(frames::add);
+        }
+        // the cancelled move is not recorded, the heading frame has the position it reached.
+        assertEquals(1, frames.size());
+        assertEquals(TraceFrame.Type.HEADING, frames.get(0).type);
+        assertEquals(mover.position().getX(), frames.get(0).position().getX(), DELTA);
+        assertEquals(1, frames.get(0).position().getHeading(), DELTA);
+    }
+
+    @Test
+    public void notATraceTest() throws IOException {
+        Path path = dir.resolve("other.txt");
+        Files.writeString(path, "this is not a trace file");
+        assertThrows(IOException.class, () -> new TraceReader(path));
+    }
+}
@@ -0,0 +1,57 @@
+package org.xenei.robot.common.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public class MetricsRegistryTest {
+
+    @Test
+    public void timerTest() {
+        MetricsRegistry underTest = new MetricsRegistry();
+        MetricsRegistry.Timer timer = underTest.timer("test");
+        assertSame(timer, underTest.timer("test"));
+        for (int i = 1; i <= 100; i++) {
+            timer.record(TimeUnit.MICROSECONDS.toNanos(i));
+        }
+        assertEquals(100, timer.count());
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(100), timer.maxNanos());
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(5050), timer.totalNanos());
+        // 50 microseconds is in the bucket that ends at 64 microseconds.
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(64), timer.percentile(0.5));
+        // the percentile never exceeds the maximum.
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(100), timer.percentile(0.99));
+    }
+
+    @Test
+    public void timingTest() throws InterruptedException {
+        MetricsRegistry underTest = new MetricsRegistry();
+        try (MetricsRegistry.Timing timing = underTest.time("sleep")) {
+            Thread.sleep(5);
+        }
+        MetricsRegistry.Timer timer = underTest.timer("sleep");
+        assertEquals(1, timer.count());
+        assertTrue(timer.totalNanos() >= TimeUnit.MILLISECONDS.toNanos(5));
+    }
+
+    @Test
+    public void reportTest() {
+        MetricsRegistry underTest = new MetricsRegistry();
+        underTest.timer("stage").record(1000);
+        underTest.counter("queries").add(3);
+        underTest.counter("unused");
+        String report = underTest.report();
+        assertTrue(report.contains("stage"));
+        assertTrue(report.contains("queries"));
+        assertFalse(report.contains("unused"));
+
+        underTest.reset();
+        assertEquals(0, underTest.timer("stage").count());
+        assertEquals(0, underTest.counter("queries").get());
+    }
+}
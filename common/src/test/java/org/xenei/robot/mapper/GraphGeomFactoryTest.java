@@ -28,6 +28,7 @@ public class GraphGeomFactoryTest {
 
     private Dataset createDataset(Model m) {
         Dataset ds = DatasetFactory.create(m);
+        ctxt.register(ds.getContext());
         try {
             SpatialIndex.buildSpatialIndex(ds, "http://www.opengis.net/def/crs/OGC/1.3/CRS84");
         } catch (SpatialIndexException e) {
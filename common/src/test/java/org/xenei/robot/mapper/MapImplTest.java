@@ -31,6 +31,9 @@ import org.slf4j.LoggerFactory;
 import org.xenei.robot.common.Location;
 import org.xenei.robot.common.Position;
 import org.xenei.robot.common.ScaleInfo;
+import org.xenei.robot.common.mapping.FloorPlan;
+import org.xenei.robot.common.mapping.FloorPlanGenerator;
+import org.xenei.robot.common.mapping.MapChange;
 import org.xenei.robot.common.mapping.MapCoord;
 import org.xenei.robot.common.mapping.Obstacle;
 import org.xenei.robot.common.planning.Solution;
@@ -119,6 +122,20 @@ public class MapImplTest {
         assertFalse(pr.isPresent());
     }
 
+    @Test
+    public void getBestTargetBatchSizeTest() {
+        setup();
+        underTest.setCandidateBatchSize(1);
+        Optional<Step> serial = underTest.getBestStep(p);
+        underTest.setCandidateBatchSize(16);
+        Optional<Step> parallel = underTest.getBestStep(p);
+        assertTrue(serial.isPresent());
+        assertTrue(parallel.isPresent());
+        assertEquals(serial.get().getCoordinate(), parallel.get().getCoordinate());
+        assertEquals(serial.get().cost(), parallel.get().cost());
+        assertEquals(12, underTest.getSteps(p).size());
+    }
+
     /**
      * Checks that at least oneof the geometries (obsts) contains the coordinate.
      * 
@@ -436,6 +453,63 @@ public class MapImplTest {
         assertEquals(1, underTest.getObstacles().size());
     }
 
+    @Test
+    public void changeListenerTest() {
+        underTest = new MapImpl(ctxt);
+        List<MapChange[]> batches = new ArrayList<>();
+        underTest.addChangeListener(batches::add);
+
+        underTest.addCoord(p, 2.0, false, false);
+        assertEquals(1, batches.size());
+        assertEquals(MapChange.Type.COORD_ADDED, batches.get(0)[0].type);
+        // the coordinate data is carried so listeners need not query the map.
+        MapCoord[] mapCoords = batches.get(0)[0].mapCoords();
+        assertEquals(1, mapCoords.length);
+        assertEquals(0, CoordUtils.XYCompr.compare(p, mapCoords[0].geometry.getCoordinate()));
+        assertFalse(mapCoords[0].isIndirect);
+
+        underTest.setVisited(t, p);
+        assertEquals(MapChange.Type.VISITED, batches.get(1)[0].type);
+        assertEquals(1, batches.get(1)[0].mapCoords().length);
+
+        Position pos = Position.from(p, 0);
+        Obstacle obst = underTest.createObstacle(pos, Location.from(1, 0));
+        Coordinate near = obst.geom().getCoordinate();
+        underTest.addCoord(near, 2.0, false, false);
+        assertEquals(3, batches.size());
+
+        underTest.addObstacle(obst);
+        MapChange[] batch = batches.get(3);
+        assertEquals(MapChange.Type.OBSTACLE_ADDED, batch[0].type);
+        assertEquals(obst.uuid(), batch[0].uuid().get());
+        // the coord under the obstacle is deleted.
+        assertEquals(2, batch.length);
+        assertEquals(MapChange.Type.COORD_DELETED, batch[1].type);
+        assertEquals(0, CoordUtils.XYCompr.compare(near, batch[1].coordinates()[0]));
+
+        // merging removes the existing obstacle.
+        Obstacle obst2 = underTest.createObstacle(pos, Location.from(1, ctxt.scaleInfo.getResolution()));
+        underTest.addObstacle(obst2);
+        batch = batches.get(4);
+        assertEquals(MapChange.Type.OBSTACLE_REMOVED, batch[0].type);
+        assertEquals(obst.uuid(), batch[0].uuid().get());
+        assertEquals(MapChange.Type.OBSTACLE_ADDED, batch[1].type);
+
+        underTest.addPath(p, t);
+        assertEquals(MapChange.Type.PATH_RECORDED, batches.get(5)[0].type);
+        assertEquals(2, batches.get(5)[0].coordinates().length);
+
+        underTest.recalculate(t);
+        MapChange recalculated = batches.get(6)[0];
+        assertEquals(MapChange.Type.RECALCULATED, recalculated.type);
+        // every coord is reported with its recalculated indirect flag.
+        assertEquals(underTest.getCoords().size(), recalculated.mapCoords().length);
+
+        underTest.clear(Namespace.UnionModel.getURI());
+        assertEquals(MapChange.Type.CLEARED, batches.get(7)[0].type);
+        assertEquals(8, batches.size());
+    }
+
     @Test
     public void isObstacleTest() {
         underTest = new MapImpl(ctxt);
@@ -457,6 +531,49 @@ public class MapImplTest {
             assertTrue(underTest.isObstacle(c), () -> "Did not find c");
     }
 
+    @Test
+    public void addObstaclesTest() {
+        underTest = new MapImpl(ctxt);
+        FloorPlan plan = new FloorPlanGenerator(1).office(30, 30);
+        List<Geometry> geoms = plan.toGeometries(ctxt.geometryUtils);
+        long version = underTest.getObstacleVersion();
+        Set<Obstacle> added = underTest.addObstacles(geoms);
+        assertEquals(geoms.size(), added.size());
+        assertEquals(geoms.size(), underTest.getObstacles().size());
+        assertNotEquals(version, underTest.getObstacleVersion());
+        // the corner of the border and an open cell in the ring corridor.
+        assertTrue(underTest.isObstacle(plan.toCoordinate(0, 0)));
+        assertFalse(underTest.isObstacle(plan.toCoordinate(2, 2)));
+        // along the ring corridor and through the wall of the first row of rooms.
+        assertTrue(underTest.isClearPath(plan.toCoordinate(2, 2), plan.toCoordinate(2, 20)));
+        assertFalse(underTest.isClearPath(plan.toCoordinate(6, 2), plan.toCoordinate(6, 6)));
+    }
+
+    @Test
+    public void independentContextsTest() {
+        RobutContext coarse = new RobutContext(ScaleInfo.builder().setResolution(0.5).build(),
+                TestChassisInfo.DEFAULT);
+        MapImpl coarseMap = new MapImpl(coarse);
+        // creating a second context must not replace the datatype or functions of the first.
+        RobutContext fine = new RobutContext(ScaleInfo.builder().setResolution(0.1).build(), TestChassisInfo.DEFAULT);
+        MapImpl fineMap = new MapImpl(fine);
+        assertNotEquals(coarse.graphGeomFactory.getDataType(), fine.graphGeomFactory.getDataType());
+        assertNotEquals(coarse.functionRegistry, fine.functionRegistry);
+
+        Coordinate start = new Coordinate(0, 0);
+        Coordinate end = new Coordinate(4, 0);
+        coarseMap.addPath(start, end);
+        fineMap.addPath(start, end);
+
+        // the end point is 0.3 from the path so it is only nearby at the coarse resolution.
+        Location a = Location.from(start);
+        Location b = Location.from(2, 0.3);
+        assertTrue(coarseMap.hasPath(a, b));
+        assertFalse(fineMap.hasPath(a, b));
+        assertEquals(coarse.geometryFactory, coarse.graphGeomFactory
+                .fromWkt(coarse.graphGeomFactory.asWKT(start)).getFactory());
+    }
+
     @Test
     public void isClearPathTest() {
         setup();
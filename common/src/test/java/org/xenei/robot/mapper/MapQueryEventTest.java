@@ -0,0 +1,60 @@
+package org.xenei.robot.mapper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.xenei.robot.common.ScaleInfo;
+import org.xenei.robot.common.testUtils.TestChassisInfo;
+import org.xenei.robot.common.utils.RobutContext;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class MapQueryEventTest {
+
+    private static RobutContext ctxt = new RobutContext(ScaleInfo.DEFAULT, TestChassisInfo.DEFAULT);
+
+    @Test
+    public void recordingTest() throws Exception {
+        MapImpl underTest = new MapImpl(ctxt);
+        Path file = Files.createTempFile("mapQuery", ".jfr");
+        try {
+            try (Recording recording = new Recording()) {
+                recording.enable(MapQueryEvent.NAME).withThreshold(Duration.ZERO);
+                recording.start();
+                underTest.addCoord(new Coordinate(1, 1), 1.0, false, false);
+                underTest.getCoords();
+                recording.stop();
+                recording.dump(file);
+            }
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+                    .filter(e -> e.getEventType().getName().equals(MapQueryEvent.NAME)).collect(Collectors.toList());
+            assertFalse(events.isEmpty());
+
+            List<RecordedEvent> updates = events.stream().filter(e -> "update".equals(e.getString("kind")))
+                    .collect(Collectors.toList());
+            assertFalse(updates.isEmpty());
+            updates.forEach(e -> assertEquals("MapImpl.addCoord", e.getString("caller")));
+
+            List<RecordedEvent> selects = events.stream().filter(e -> "MapImpl.getCoords".equals(e.getString("caller")))
+                    .collect(Collectors.toList());
+            assertEquals(1, selects.size());
+            assertEquals("select", selects.get(0).getString("kind"));
+            assertEquals(1, selects.get(0).getLong("rows"));
+
+            events.forEach(e -> assertTrue(e.getLong("lockWait") >= 0));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
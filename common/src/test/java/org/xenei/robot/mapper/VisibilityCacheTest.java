@@ -0,0 +1,104 @@
+package org.xenei.robot.mapper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiPredicate;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+
+public class VisibilityCacheTest {
+
+    private final GeometryFactory factory = new GeometryFactory();
+
+    private VisibilityCache underTest;
+
+    private AtomicInteger calls;
+
+    private BiPredicate<Coordinate, Coordinate> calc;
+
+    @BeforeEach
+    public void setup() {
+        underTest = new VisibilityCache(factory, 0.5);
+        calls = new AtomicInteger();
+        calc = (a, b) -> {
+            calls.incrementAndGet();
+            return true;
+        };
+    }
+
+    @Test
+    public void reuseTest() {
+        Coordinate a = new Coordinate(0, 0);
+        Coordinate b = new Coordinate(4, 0);
+        assertTrue(underTest.isClearPath(a, b, calc));
+        assertTrue(underTest.isClearPath(a, b, calc));
+        // order does not matter
+        assertTrue(underTest.isClearPath(b, a, calc));
+        assertEquals(1, calls.get());
+        assertEquals(1, underTest.size());
+        assertEquals(2, underTest.getHits());
+        assertEquals(1, underTest.getMisses());
+    }
+
+    @Test
+    public void invalidateNearbyTest() {
+        Coordinate a = new Coordinate(0, 0);
+        Coordinate b = new Coordinate(4, 0);
+        Coordinate c = new Coordinate(0, 10);
+        Coordinate d = new Coordinate(4, 10);
+        underTest.isClearPath(a, b, calc);
+        underTest.isClearPath(c, d, calc);
+        long version = underTest.getVersion();
+
+        underTest.invalidate(List.of(factory.createPoint(new Coordinate(2, 0.25))));
+        assertEquals(version + 1, underTest.getVersion());
+        assertEquals(1, underTest.size());
+
+        underTest.isClearPath(c, d, calc);
+        assertEquals(2, calls.get());
+        underTest.isClearPath(a, b, calc);
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    public void invalidateAllTest() {
+        underTest.isClearPath(new Coordinate(0, 0), new Coordinate(4, 0), calc);
+        underTest.isClearPath(new Coordinate(0, 10), new Coordinate(4, 10), calc);
+        long version = underTest.getVersion();
+        underTest.invalidateAll();
+        assertEquals(version + 1, underTest.getVersion());
+        assertEquals(0, underTest.size());
+    }
+
+    @Test
+    public void clearTest() {
+        Coordinate a = new Coordinate(0, 0);
+        Coordinate b = new Coordinate(4, 0);
+        underTest.isClearPath(a, b, calc);
+        long version = underTest.getVersion();
+        underTest.clear();
+        assertEquals(version, underTest.getVersion());
+        assertEquals(0, underTest.size());
+        underTest.isClearPath(a, b, calc);
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void versionChangeDuringCalculationTest() {
+        Coordinate a = new Coordinate(0, 0);
+        Coordinate b = new Coordinate(4, 0);
+        assertFalse(underTest.isClearPath(a, b, (x, y) -> {
+            underTest.invalidateAll();
+            return false;
+        }));
+        // result calculated against an old version is not cached.
+        assertEquals(0, underTest.size());
+    }
+}
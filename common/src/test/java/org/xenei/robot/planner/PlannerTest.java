@@ -3,6 +3,7 @@ package org.xenei.robot.planner;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
@@ -11,12 +12,16 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.time.Duration;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Optional;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
@@ -34,6 +39,7 @@ import org.xenei.robot.common.Position;
 import org.xenei.robot.common.ScaleInfo;
 import org.xenei.robot.common.UnmodifiableCoordinate;
 import org.xenei.robot.common.mapping.Map;
+import org.xenei.robot.common.mapping.MapChange;
 import org.xenei.robot.common.mapping.MapCoord;
 import org.xenei.robot.common.mapping.Obstacle;
 import org.xenei.robot.common.planning.Planner;
@@ -322,6 +328,148 @@ public class PlannerTest {
         CoordinateUtils.assertEquivalent(positionSupplier.position, visitedTarget[0]);
     }
 
+    @Test
+    public void selectTargetBudgetTest() throws InterruptedException {
+        Location finalLocation = Location.from(-1, 1);
+        Step best = new TestingStep(3, 2, 1, 1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+
+        Map map = new TestingMap() {
+            @Override
+            public Optional<Step> getBestStep(Coordinate currentCoords) {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                    Thread.currentThread().interrupt();
+                }
+                return Optional.of(best);
+            }
+        };
+
+        TestingPositionSupplier positionSupplier = new TestingPositionSupplier(Position.from(-1, -3));
+        underTest = new PlannerImpl(map, positionSupplier, finalLocation);
+
+        // budget exceeded so continue toward the current target.
+        Optional<Step> opStep = underTest.selectTarget(Duration.ofMillis(10));
+        assertTrue(opStep.isPresent());
+        CoordinateUtils.assertEquivalent(finalLocation, opStep.get());
+        assertFalse(underTest.isSelectionPending());
+        assertEquals(1, underTest.getBudgetedSelectionCount());
+        assertEquals(1, underTest.getBudgetExceededCount());
+        // the selection from the old position is cancelled.
+        assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+
+        // enough budget to find the best step.
+        opStep = underTest.selectTarget(Duration.ofSeconds(5));
+        assertTrue(opStep.isPresent());
+        CoordinateUtils.assertEquivalent(best, opStep.get());
+        CoordinateUtils.assertEquivalent(best, underTest.getTarget());
+        assertEquals(2, underTest.getBudgetedSelectionCount());
+        assertEquals(1, underTest.getBudgetExceededCount());
+    }
+
+    @Test
+    public void selectTargetDeferredTest() {
+        Location finalLocation = Location.from(-1, 1);
+        Step best = new TestingStep(3, 2, 1, 1);
+
+        Map map = new TestingMap() {
+            @Override
+            public Optional<Step> getBestStep(Coordinate currentCoords) {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return Optional.of(best);
+            }
+
+            @Override
+            public boolean isClearPath(Coordinate source, Coordinate dest) {
+                return false;
+            }
+        };
+
+        TestingPositionSupplier positionSupplier = new TestingPositionSupplier(Position.from(-1, -3));
+        underTest = new PlannerImpl(map, positionSupplier, finalLocation);
+        try {
+            // budget exceeded and the target can not be seen so there is no step yet.
+            Optional<Step> opStep = underTest.selectTarget(Duration.ofMillis(10));
+            assertFalse(opStep.isPresent());
+            assertTrue(underTest.isSelectionPending());
+            assertEquals(1, underTest.getBudgetExceededCount());
+
+            // the next call from the same position uses the background selection.
+            opStep = underTest.selectTarget(Duration.ofSeconds(5));
+            assertTrue(opStep.isPresent());
+            CoordinateUtils.assertEquivalent(best, opStep.get());
+            assertFalse(underTest.isSelectionPending());
+            assertEquals(1, underTest.getBudgetExceededCount());
+        } finally {
+            underTest.close();
+        }
+    }
+
+    @Test
+    public void staleSelectionTest() throws Exception {
+        Location finalLocation = Location.from(-1, 1);
+        Step best = new TestingStep(3, 2, 1, 1);
+        Step next = new TestingStep(4, 2, 1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Map map = new TestingMap() {
+            @Override
+            public Optional<Step> getBestStep(Coordinate currentCoords) {
+                if (currentCoords.equals2D(best.getCoordinate())) {
+                    // a selection that ignores interruption.
+                    boolean done = false;
+                    while (!done) {
+                        try {
+                            done = release.await(10, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            // keep running
+                        }
+                    }
+                    return Optional.of(best);
+                }
+                return Optional.of(next);
+            }
+        };
+
+        TestingPositionSupplier positionSupplier = new TestingPositionSupplier(Position.from(-1, -3));
+        underTest = new PlannerImpl(map, positionSupplier, finalLocation);
+        try {
+            // selects best and speculatively starts the blocked selection from best.
+            assertTrue(underTest.selectTarget(Duration.ofSeconds(5)).isPresent());
+            // the robot ends up somewhere else so the speculative selection is stale.
+            positionSupplier.position = Position.from(2, 2);
+            Optional<Step> opStep = underTest.selectTarget(Duration.ofSeconds(2));
+            assertTrue(opStep.isPresent());
+            CoordinateUtils.assertEquivalent(next, opStep.get());
+            // the new selection did not wait behind the stale one.
+            assertEquals(0, underTest.getBudgetExceededCount());
+        } finally {
+            release.countDown();
+            underTest.close();
+        }
+    }
+
+    @Test
+    public void closeTest() {
+        Map map = new TestingMap() {
+            @Override
+            public Optional<Step> getBestStep(Coordinate currentCoords) {
+                return Optional.of(new TestingStep(3, 2, 1, 1));
+            }
+        };
+        underTest = new PlannerImpl(map, new TestingPositionSupplier(Position.from(-1, -3)), Location.from(-1, 1));
+        underTest.close();
+        // closing twice is harmless.
+        underTest.close();
+        assertThrows(IllegalStateException.class, () -> underTest.selectTarget(Duration.ofSeconds(1)));
+    }
+
     private class StepSupplier implements Supplier<Step> {
         Queue<Step> queue = new LinkedList<Step>();
 
@@ -395,6 +543,19 @@ public class PlannerTest {
             return true;
         }
 
+        @Override
+        public long getObstacleVersion() {
+            return 0;
+        }
+
+        @Override
+        public void addChangeListener(MapChange.Listener listener) {
+        }
+
+        @Override
+        public void removeChangeListener(MapChange.Listener listener) {
+        }
+
         @Override
         public Optional<Step> addCoord(Coordinate target, Double distance, boolean visited, Boolean isIndirect) {
             return null;
@@ -423,6 +584,11 @@ public class PlannerTest {
             return null;
         }
 
+        @Override
+        public Collection<Coordinate[]> getPaths(Resource model) {
+            return Collections.emptyList();
+        }
+
         @Override
         public Coordinate recalculate(Coordinate target) {
             // TODO Auto-generated method stub
@@ -446,6 +612,11 @@ public class PlannerTest {
             return null;
         }
 
+        @Override
+        public Set<Obstacle> addObstacles(Collection<Geometry> geometries) {
+            return Collections.emptySet();
+        }
+
         @Override
         public Set<Obstacle> getObstacles() {
             // TODO Auto-generated method stub
@@ -0,0 +1,54 @@
+package org.xenei.robot.planner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+
+public class RouteCacheTest {
+
+    private static final Coordinate[] route = { new Coordinate(-1, -3), new Coordinate(2, -2), new Coordinate(2, 0),
+            new Coordinate(-1, 1) };
+
+    @Test
+    public void findForwardTest() {
+        RouteCache underTest = new RouteCache();
+        underTest.add(route);
+        Optional<List<Coordinate>> result = underTest.find(new Coordinate(-1.1, -3), new Coordinate(-1, 1.1), 0.5);
+        assertTrue(result.isPresent());
+        assertEquals(List.of(route), result.get());
+    }
+
+    @Test
+    public void findReverseSegmentTest() {
+        RouteCache underTest = new RouteCache();
+        underTest.add(route);
+        Optional<List<Coordinate>> result = underTest.find(new Coordinate(2, 0), new Coordinate(2, -2), 0.5);
+        assertTrue(result.isPresent());
+        assertEquals(List.of(route[2], route[1]), result.get());
+    }
+
+    @Test
+    public void findMissingTest() {
+        RouteCache underTest = new RouteCache();
+        assertFalse(underTest.find(route[0], route[3], 0.5).isPresent());
+        underTest.add(route);
+        assertFalse(underTest.find(route[0], new Coordinate(5, 5), 0.5).isPresent());
+        assertFalse(underTest.find(new Coordinate(5, 5), route[3], 0.5).isPresent());
+    }
+
+    @Test
+    public void duplicateRouteTest() {
+        RouteCache underTest = new RouteCache();
+        underTest.add(route);
+        underTest.add(route);
+        assertEquals(1, underTest.size());
+        underTest.add(route[0]);
+        assertEquals(1, underTest.size());
+    }
+}
@@ -1,58 +1,148 @@
 package org.xenei.robot.rpi;
 
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xenei.robot.common.Compass;
-import org.xenei.robot.common.Position;
-import org.xenei.robot.common.ScaleInfo;
 import org.xenei.robot.common.utils.AngleUtils;
 import org.xenei.robot.common.utils.DoubleUtils;
 import org.xenei.robot.rpi.sensors.MMC3416xPJ;
 import org.xenei.robot.rpi.sensors.MMC3416xPJ.Axis;
 
-public class CompassImpl implements Compass {
+/**
+ * A compass that samples the magnetometer on a dedicated thread and averages the
+ * most recent samples. Each sample publishes a new immutable snapshot through a
+ * volatile reference so readers never wait on the sampler or the device.
+ */
+public class CompassImpl implements Compass, AutoCloseable {
     private static final Logger LOG = LoggerFactory.getLogger(CompassImpl.class);
-    private MMC3416xPJ compass = new MMC3416xPJ();
-    private final int limit = 10;
-    private final MMC3416xPJ.Values[] samples;
-    private int position = 0;
-    private Timer timer;;
-    private float XSum = 0.0f;
-    private float YSum = 0.0f;
-    private final ReentrantLock lock;
+    /** the default number of milliseconds between samples */
+    public static final long DEFAULT_PERIOD_MILLIS = 50;
+    private static final int limit = 10;
     private static final int accuracy = 2;
-    private TimerTask task = new TimerTask() {
-        @Override
-        public void run() {
-            MMC3416xPJ.Values oldSample = samples[position];
-            samples[position] = compass.getHeading();
-            lock.lock();
-            try {
-                XSum += samples[position].getAxisValue(Axis.X) - oldSample.getAxisValue(Axis.X);
-                YSum += samples[position].getAxisValue(Axis.Y) - oldSample.getAxisValue(Axis.Y);
-            } finally {
-                lock.unlock();
+    private final Supplier<MMC3416xPJ.Values> sampler;
+    private final ScheduledExecutorService executor;
+    private volatile Snapshot snapshot;
+
+    /**
+     * An immutable view of the most recent samples.
+     */
+    static final class Snapshot {
+        /** the x values of the samples, oldest first */
+        final float[] x;
+        /** the y values of the samples, oldest first */
+        final float[] y;
+        final float xSum;
+        final float ySum;
+        /** the {@link System#nanoTime()} of the most recent sample */
+        final long timestamp;
+
+        private Snapshot(float[] x, float[] y, long timestamp) {
+            this.x = x;
+            this.y = y;
+            float xs = 0;
+            float ys = 0;
+            for (int i = 0; i < x.length; i++) {
+                xs += x[i];
+                ys += y[i];
             }
-            position = Math.floorMod(position + 1, limit);
+            this.xSum = xs;
+            this.ySum = ys;
+            this.timestamp = timestamp;
+        }
+
+        /**
+         * Creates a snapshot with the sample added, dropping the oldest sample when
+         * the window is full.
+         */
+        Snapshot add(float sx, float sy, long now) {
+            int keep = Math.min(x.length, limit - 1);
+            float[] nx = new float[keep + 1];
+            float[] ny = new float[keep + 1];
+            System.arraycopy(x, x.length - keep, nx, 0, keep);
+            System.arraycopy(y, y.length - keep, ny, 0, keep);
+            nx[keep] = sx;
+            ny[keep] = sy;
+            return new Snapshot(nx, ny, now);
         }
-    };
+
+        int count() {
+            return x.length;
+        }
+    }
 
     public CompassImpl() {
-        lock = new ReentrantLock();
-        samples = new MMC3416xPJ.Values[limit];
-        for (int i = 0; i < limit; i++) {
-            samples[i] = compass.getHeading();
-            XSum += samples[i].getAxisValue(Axis.X);
-            YSum += samples[i].getAxisValue(Axis.Y);
+        this(DEFAULT_PERIOD_MILLIS);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param periodMillis the number of milliseconds between samples.
+     */
+    public CompassImpl(long periodMillis) {
+        this(new MMC3416xPJ(), periodMillis);
+    }
+
+    private CompassImpl(MMC3416xPJ compass, long periodMillis) {
+        this(compass::getHeading, periodMillis);
+        LOG.info("Compass: " + compass);
+    }
+
+    /**
+     * Constructor. Takes the first sample before returning.
+     * 
+     * @param sampler reads the magnetometer.
+     * @param periodMillis the number of milliseconds between samples.
+     */
+    CompassImpl(Supplier<MMC3416xPJ.Values> sampler, long periodMillis) {
+        this.sampler = sampler;
+        this.snapshot = new Snapshot(new float[0], new float[0], System.nanoTime());
+        sample();
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "CompassImpl-sample");
+            t.setDaemon(true);
+            return t;
+        });
+        executor.scheduleAtFixedRate(this::sample, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Reads the magnetometer and publishes a new snapshot. Only called from the
+     * sampling thread, or from the constructor and tests.
+     */
+    void sample() {
+        try {
+            MMC3416xPJ.Values values = sampler.get();
+            snapshot = snapshot.add(values.getAxisValue(Axis.X), values.getAxisValue(Axis.Y), System.nanoTime());
+        } catch (RuntimeException e) {
+            // an exception would stop the scheduled sampling.
+            LOG.error("Unable to read compass", e);
         }
-        position = 0;
-        timer = new Timer();
-        timer.schedule(task, 0, 250);
-        LOG.info("Compass: "+compass);
+    }
+
+    /**
+     * Gets the age of the most recent sample.
+     * 
+     * @param unit the unit to return the age in.
+     * @return the time since the most recent sample was taken.
+     */
+    public long sampleAge(TimeUnit unit) {
+        return unit.convert(System.nanoTime() - snapshot.timestamp, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public long sampleTime() {
+        return snapshot.timestamp;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
     }
 
     /* package private for testing */
@@ -85,52 +175,52 @@ public class CompassImpl implements Compass {
 
     @Override
     public double heading() {
-        float x;
-        float y;
-        lock.lock();
-        try {
-            x = XSum;
-            y = YSum;
-        } finally {
-            lock.unlock();
-        }
-        return DoubleUtils.round(heading(x, y), accuracy);
+        Snapshot current = snapshot;
+        return DoubleUtils.round(heading(current.xSum, current.ySum), accuracy);
     }
 
+    /**
+     * The heading of the most recent sample. This does not read the device so it
+     * is up to one sample period old, see {@link #sampleAge(TimeUnit)}.
+     * 
+     * @return the heading of the most recent sample.
+     */
     @Override
     public double instantaneousHeading() {
-        MMC3416xPJ.Values values = compass.getHeading();
-        return DoubleUtils.round(heading(values.getAxisValue(Axis.X), values.getAxisValue(Axis.Y)), accuracy);
+        Snapshot current = snapshot;
+        int last = current.count() - 1;
+        return last < 0 ? heading() : DoubleUtils.round(heading(current.x[last], current.y[last]), accuracy);
     }
     
     @Override
     public double sd() {
+        Snapshot current = snapshot;
+        int count = current.count();
+        if (count < 2) {
+            return 0;
+        }
         double mean = 0;
-        double headings[] = new double[limit];
-        lock.lock();
-        try {
-            for (int i = 0; i < limit; i++) {
-                headings[i] = heading(samples[i].getAxisValue(Axis.X), samples[i].getAxisValue(Axis.Y));
-                mean += headings[i];
-            }
-        } finally {
-            lock.unlock();
+        double headings[] = new double[count];
+        for (int i = 0; i < count; i++) {
+            headings[i] = heading(current.x[i], current.y[i]);
+            mean += headings[i];
         }
-        mean /= limit;
+        mean /= count;
         double sum = 0;
         double value = 0;
-        for (int i = 0; i < limit; i++) {
+        for (int i = 0; i < count; i++) {
             value = headings[i] - mean;
             sum += (value * value);
         }
-        return DoubleUtils.round(Math.sqrt(sum / (limit - 1)), accuracy + 1);
+        return DoubleUtils.round(Math.sqrt(sum / (count - 1)), accuracy + 1);
     }
 
     @Override
     public String toString() {
         double h = heading();
         double sd = sd();
-        return String.format("Compass[Heading: %s %s degrees  sd:%s]", h, DoubleUtils.round(Math.toDegrees(h), accuracy + 1), sd);
+        return String.format("Compass[Heading: %s %s degrees  sd:%s age:%sms]", h,
+                DoubleUtils.round(Math.toDegrees(h), accuracy + 1), sd, sampleAge(TimeUnit.MILLISECONDS));
     }
 
     public static void main(String[] args) throws InterruptedException {
@@ -3,6 +3,7 @@ package org.xenei.robot.rpi;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.file.Path;
 import java.util.Scanner;
 import java.util.function.Supplier;
 
@@ -12,26 +13,51 @@ import org.slf4j.LoggerFactory;
 import org.xenei.robot.Processor;
 import org.xenei.robot.common.AbortedException;
 import org.xenei.robot.common.ChassisInfo;
+import org.xenei.robot.common.DistanceSensor;
 import org.xenei.robot.common.Location;
 import org.xenei.robot.common.Mover;
 import org.xenei.robot.common.Position;
 import org.xenei.robot.common.ScaleInfo;
+import org.xenei.robot.common.trace.RecordingDistanceSensor;
+import org.xenei.robot.common.trace.RecordingMover;
+import org.xenei.robot.common.trace.TraceWriter;
 import org.xenei.robot.common.utils.CoordUtils;
 import org.xenei.robot.common.utils.RobutContext;
 import org.xenei.robot.rpi.sensors.Arduino;
 
-public class Robut {
+public class Robut implements AutoCloseable {
 
     private final Supplier<Position> positionSupplier;
     private final Processor processor;
+    /** the sensor trace, null if the trace is not recorded */
+    private final TraceWriter writer;
 
     private static final Logger LOG = LoggerFactory.getLogger(Robut.class);
 
-    public Robut(Coordinate origin) throws InterruptedException {
+    /** the system property that names the file to record the sensor trace to */
+    public static final String TRACE_PROPERTY = "robut.trace";
+
+    public Robut(Coordinate origin) throws InterruptedException, IOException {
         RobutContext ctxt = new RobutContext(ScaleInfo.DEFAULT, new ChassisInfo(0.24, 8, 60));
-        Mover mover = new RpiMover(ctxt, new CompassImpl(), origin);
+        RpiMover rpiMover = new RpiMover(ctxt, new CompassImpl(), origin);
+        Arduino arduino = new Arduino(true);
+        // the sensor only reports readings taken after the robot stops.
+        rpiMover.setStopListener(arduino::motionStopped);
+        Mover mover = rpiMover;
+        DistanceSensor sensor = arduino;
+        String tracePath = System.getProperty(TRACE_PROPERTY);
+        if (tracePath != null) {
+            writer = new TraceWriter(Path.of(tracePath));
+            // close the trace if the JVM exits without closing the robot.
+            Runtime.getRuntime().addShutdownHook(new Thread(this::closeTrace, "Robut-trace"));
+            mover = new RecordingMover(mover, writer);
+            sensor = new RecordingDistanceSensor(sensor, mover::position, writer);
+            LOG.info("Recording sensor trace to {}", tracePath);
+        } else {
+            writer = null;
+        }
         positionSupplier = mover::position;
-        this.processor = new Processor(ctxt, mover, positionSupplier, new Arduino());
+        this.processor = new Processor(ctxt, mover, positionSupplier, sensor);
     }
 
     public void moveTo(Location relativeLocation) throws AbortedException {
@@ -39,6 +65,25 @@ public class Robut {
         processor.moveTo(nextCoord);
     }
 
+    @Override
+    public void close() {
+        processor.close();
+        closeTrace();
+    }
+
+    /**
+     * Flushes and closes the trace if it is recorded. Safe to call more than once.
+     */
+    private void closeTrace() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                LOG.error("Unable to close trace", e);
+            }
+        }
+    }
+
     static BufferedReader BUFFER;
 
     private static void checkContinue() {
@@ -58,22 +103,22 @@ public class Robut {
 
         BUFFER = new BufferedReader(new InputStreamReader(System.in));
 
-        Robut robut = new Robut(new Coordinate(0, 0));
-
-        while (true) {
-            System.out.print("Target (theta, range): ");
-            String line = BUFFER.readLine();
-            System.out.format("Read: %s\n", line);
-            if (line == null || line.length() == 0) {
-                return;
+        try (Robut robut = new Robut(new Coordinate(0, 0))) {
+            while (true) {
+                System.out.print("Target (theta, range): ");
+                String line = BUFFER.readLine();
+                System.out.format("Read: %s\n", line);
+                if (line == null || line.length() == 0) {
+                    return;
+                }
+                Scanner in = new Scanner(line);
+                double angle = in.nextDouble();
+                double range = in.nextDouble();
+                LOG.debug(String.format("Attempting %s %s\n", angle, range));
+                double theta = Math.toRadians(angle);
+                Location relativeLocation = Location.from(CoordUtils.fromAngle(theta, range));
+                robut.moveTo(relativeLocation);
             }
-            Scanner in = new Scanner(line);
-            double angle = in.nextDouble();
-            double range = in.nextDouble();
-            LOG.debug(String.format("Attempting %s %s\n", angle, range));
-            double theta = Math.toRadians(angle);
-            Location relativeLocation = Location.from(CoordUtils.fromAngle(theta, range));
-            robut.moveTo(relativeLocation);
         }
     }
 
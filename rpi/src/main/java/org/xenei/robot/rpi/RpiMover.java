@@ -3,10 +3,15 @@ package org.xenei.robot.rpi;
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.DefaultParser;
@@ -27,20 +32,41 @@ import org.xenei.robot.common.utils.CoordUtils;
 import org.xenei.robot.common.utils.DoubleUtils;
 import org.xenei.robot.common.utils.RobutContext;
 import org.xenei.robot.rpi.drivers.Motor;
-import org.xenei.robot.rpi.drivers.Motor.SteppingStatus;
+import org.xenei.robot.rpi.drivers.CoordinatedRun;
 import org.xenei.robot.rpi.drivers.ULN2003;
 import org.xenei.robot.rpi.drivers.ULN2003.Mode;
+import org.xenei.robot.rpi.utils.PidController;
 
 public class RpiMover implements Mover, AutoCloseable {
 
-    private static final int MAX_RPM = 150;
+    /** turns are driven in bursts that may stop at speed, so are held to the start rate */
+    private static final int MAX_TURN_RPM = Motor.DEFAULT_PULL_IN_RPM;
+    /** the time between progress reports for asynchronous moves */
+    private static final long PROGRESS_INTERVAL_MS = 50;
+    /** the period of the heading controller, matches the compass sample period */
+    static final long HEADING_PERIOD_MS = CompassImpl.DEFAULT_PERIOD_MILLIS;
+    /** the longest a turn may take before it is abandoned */
+    static final long MAX_TURN_MS = 10000;
+    /** the default heading controller gains, radians per second per radian of error */
+    public static final PidController.Gains DEFAULT_HEADING_GAINS = new PidController.Gains(2.0, 0.2, 0.05);
     private Motor[] motor = new Motor[2];
     private static final int LEFT = 0;
     private static final int RIGHT = 1;
     private Coordinate coordinates;
     private Compass compass;
     private final RobutContext ctxt;
+    /** steps both motors from one thread so they stay in phase */
     private final ExecutorService executor;
+    /** runs the asynchronous moves in the order they were requested */
+    private final ExecutorService controller;
+    /** runs the heading controller during turns */
+    private final ScheduledExecutorService headingScheduler;
+    private volatile PidController.Gains headingGains = DEFAULT_HEADING_GAINS;
+    /** the most recent run, the next run starts no sooner than the motors can follow */
+    private volatile CoordinatedRun lastRun;
+    /** notified each time the motors stop */
+    private volatile Runnable stopListener = () -> {
+    };
     /** Meters traveled in one rotation. */
     private final double rotationalDistance;
     private final int rpm;
@@ -85,10 +111,24 @@ public class RpiMover implements Mover, AutoCloseable {
         this.coordinates = coords;
         this.compass = compass;
         this.rotationalDistance = Math.PI * ctxt.chassisInfo.wheelDiameter / 100; // in meters
-        this.executor = Executors.newFixedThreadPool(3);
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "RpiMover-step");
+            t.setDaemon(true);
+            return t;
+        });
+        this.controller = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "RpiMover-control");
+            t.setDaemon(true);
+            return t;
+        });
+        this.headingScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "RpiMover-heading");
+            t.setDaemon(true);
+            return t;
+        });
         // this.r = width/2.0; // in cm
         // meterminute / meterrotation = meterrotation/meter/minute = r/m
-        this.rpm = limit((long) Math.ceil(ctxt.chassisInfo.maxSpeed / rotationalDistance), 1, MAX_RPM);
+        this.rpm = limit((long) Math.ceil(ctxt.chassisInfo.maxSpeed / rotationalDistance), 1, Motor.MAX_RPM);
         this.turningFactor = ctxt.chassisInfo.radius * AngleUtils.PI_x_2;
         LOG.debug("RpiMover: {}", position());
     }
@@ -159,6 +199,9 @@ public class RpiMover implements Mover, AutoCloseable {
 
     @Override
     public void close() {
+        controller.shutdownNow();
+        headingScheduler.shutdownNow();
+        executor.shutdownNow();
         try {
             motor[LEFT].close();
         } catch (Exception e) {
@@ -172,14 +215,49 @@ public class RpiMover implements Mover, AutoCloseable {
         LOG.debug("RpiMover shut down complete");
     }
 
+    /**
+     * Moves to the location. The move is run by the controller so that it is
+     * serialized with any asynchronous moves or turns.
+     */
     @Override
     public Position move(Location location) {
-        Position currentPosition = position();
-        Position nxt = currentPosition.nextPosition(location);
-        setHeading(currentPosition.headingTo(nxt));
-        int rangeSteps = steps(location.range());
-        takeSteps(rangeSteps, rangeSteps, rpm).waitForComplete();
-        return position();
+        return await(moveAsync(location, null));
+    }
+
+    @Override
+    public CompletableFuture<Position> moveAsync(Location location, ProgressListener listener) {
+        CompletableFuture<Position> result = new CompletableFuture<>();
+        controller.submit(() -> {
+            try {
+                Position currentPosition = position();
+                Position nxt = currentPosition.nextPosition(location);
+                turn(currentPosition.headingTo(nxt), result, null);
+                if (!result.isCancelled()) {
+                    int rangeSteps = steps(location.range());
+                    try (StepMonitor monitor = takeSteps(rangeSteps, rangeSteps, rpm, true)) {
+                        monitor.track(rangeSteps, result, listener);
+                    }
+                }
+                result.complete(position());
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<Position> setHeadingAsync(double heading, ProgressListener listener) {
+        CompletableFuture<Position> result = new CompletableFuture<>();
+        controller.submit(() -> {
+            try {
+                turn(heading, result, listener);
+                result.complete(position());
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
     }
 
     private int steps(double range) {
@@ -193,13 +271,17 @@ public class RpiMover implements Mover, AutoCloseable {
      * @param left the number of steps to take with the left motor.
      * @param right the number of steps to take with the right motor.
      * @param rpm
+     * @param rampDown true to slow to rest at the end of the run.
      * @return
      */
-    private StepMonitor takeSteps(int left, int right, int rpm) {
+    private StepMonitor takeSteps(int left, int right, int rpm, boolean rampDown) {
         LOG.debug(String.format("Taking steps %s %s @ %s rpm", left, right, rpm));
-        SteppingStatus ssLeft = motor[LEFT].prepareRun(left, rpm);
-        SteppingStatus ssRight = motor[RIGHT].prepareRun(right, rpm);
-        return new StepMonitor(ssLeft, ssRight);
+        int[] steps = new int[2];
+        steps[LEFT] = left;
+        steps[RIGHT] = right;
+        CoordinatedRun run = new CoordinatedRun(motor, steps, rpm, lastRun, rampDown);
+        lastRun = run;
+        return new StepMonitor(run);
     }
 
     @Override
@@ -211,103 +293,325 @@ public class RpiMover implements Mover, AutoCloseable {
         return compass.heading();
     }
 
+    /**
+     * Turns to the heading. The turn is run by the controller so that it is
+     * serialized with any asynchronous moves or turns.
+     */
     @Override
     public void setHeading(double heading) {
-        double headingDiff = compass.heading() - heading;
-
-        makeInternalHeading(heading);
-        double newHeadingDiff = compass.heading() - heading;
-        LOG.debug("old diff heading {} - new diff heading {} = {}", headingDiff, newHeadingDiff,
-                headingDiff - newHeadingDiff);
+        await(setHeadingAsync(heading, null));
+    }
 
-        int escape=5;
-        while (!DoubleUtils.inRange(Math.abs(newHeadingDiff), compass.accuracy())) {
-            if (escape-- == 0) { 
-                break;
+    /**
+     * Waits for an operation submitted to the controller. If the calling thread
+     * is interrupted the operation is cancelled.
+     * 
+     * @param future the future for the operation.
+     * @return the position when the operation completed.
+     */
+    private Position await(CompletableFuture<Position> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            return position();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
             }
-            LOG.debug("Heading difference: {} accuracy: {}", newHeadingDiff, compass.accuracy());
-            // heading / (heading - newheading) = 1 when we are
-           /* double ratio = newHeadingDiff / headingDiff;
-            LOG.debug("Changing heading factor from {} to {}", this.headingFactor, ratio);
-            this.headingFactor = DoubleUtils.round(ratio, compass.decimalPlaces());
-            */
-            makeInternalHeading(heading);
-            headingDiff = newHeadingDiff;
-            newHeadingDiff = compass.instantaneousHeading() - heading;
+            throw new IllegalStateException(e.getCause());
         }
+    }
+
+    /**
+     * Turns to the heading.
+     * 
+     * @param heading the absolute heading specified in radians.
+     * @param future the future for an asynchronous turn, may be null. The turn
+     * stops if the future is cancelled.
+     * @param listener the listener for progress updates, may be null.
+     */
+    private void turn(double heading, CompletableFuture<?> future, ProgressListener listener) {
+        makeInternalHeading(heading, future, listener);
         LOG.debug("Heading {} achieved. {}", heading, compass);
     }
 
-    private void makeInternalHeading(double heading) {
-        // theta r is the distance the wheel has to move to pass through the arc from
-        // to make the direction change.
-        double theta = AngleUtils.normalize(compass.instantaneousHeading()-heading)*-1;
-        double range = turningFactor * theta / AngleUtils.PI_x_2;
-        int thetaSteps = steps(range * this.headingFactor);
+    private static boolean isCancelled(CompletableFuture<?> future) {
+        return future != null && future.isCancelled();
+    }
+
+    /**
+     * Turns in place to the heading. A {@link HeadingTask} samples the compass at
+     * a fixed rate and issues short bursts of steps at a rate set by the heading
+     * controller, so the turn slows as the error shrinks and stops as soon as the
+     * compass is within its accuracy. The calling thread waits for the task to
+     * finish.
+     * 
+     * @param heading the absolute heading specified in radians.
+     * @param future the future for an asynchronous turn, may be null. The turn
+     * stops if the future is cancelled.
+     * @param listener the listener for progress updates, may be null.
+     */
+    private void makeInternalHeading(double heading, CompletableFuture<?> future, ProgressListener listener) {
+        HeadingTask task = new HeadingTask(heading, future, listener);
+        if (task.initialError == 0) {
+            return;
+        }
         if (LOG.isDebugEnabled()) {
             LOG.debug("Setting heading: {} {} degrees sweeping through {} degrees of arc", heading,
-                    Math.toDegrees(heading), Math.toDegrees(theta));
+                    Math.toDegrees(heading), Math.toDegrees(task.initialError));
         }
-        if (thetaSteps == 0) {
-            return;
+        synchronized (task) {
+            // the first tick waits until the schedule can be cancelled.
+            task.schedule = headingScheduler.scheduleAtFixedRate(task::tick, 0, HEADING_PERIOD_MS,
+                    TimeUnit.MILLISECONDS);
+        }
+        try {
+            task.done.get(MAX_TURN_MS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            LOG.warn("Turn to {} did not converge in {} ms", heading, MAX_TURN_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            LOG.error("Error while turning", e.getCause());
+        } finally {
+            task.finish();
+        }
+        LOG.debug("{}", compass);
+    }
+
+    /**
+     * Calculates the rpm that turns the chassis in place at the angular rate.
+     * 
+     * @param radiansPerSecond the angular rate.
+     * @return the rpm, at least 1 and at most {@code MAX_TURN_RPM}.
+     */
+    private int turnRpm(double radiansPerSecond) {
+        double wheelSpeed = Math.abs(radiansPerSecond) * ctxt.chassisInfo.radius; // m/s
+        return limit((long) Math.ceil(wheelSpeed * 60 * headingFactor / rotationalDistance), 1, MAX_TURN_RPM);
+    }
+
+    /**
+     * Sets the listener that is notified each time the motors stop, for example
+     * so that a sensor can discard the readings taken while moving.
+     * 
+     * @param stopListener the listener.
+     */
+    public void setStopListener(Runnable stopListener) {
+        this.stopListener = stopListener;
+    }
+
+    /**
+     * Sets the gains for the heading controller. Takes effect on the next turn.
+     * 
+     * @param gains the gains, the output is the turn rate in radians per second
+     * for an error in radians.
+     */
+    public void setHeadingGains(PidController.Gains gains) {
+        this.headingGains = gains;
+    }
+
+    /**
+     * Gets the gains for the heading controller.
+     * 
+     * @return the heading controller gains.
+     */
+    public PidController.Gains getHeadingGains() {
+        return headingGains;
+    }
+
+    /**
+     * The fixed rate task that drives a single turn. Each tick reads the compass,
+     * stops the turn if the heading is within the compass accuracy and otherwise
+     * issues a burst of about one period of steps at the rate the controller
+     * requests. A burst is not interrupted by the next tick unless the heading has
+     * been reached, and no new burst is issued until the compass has taken a sample
+     * since the last one.
+     */
+    private class HeadingTask {
+        private final double heading;
+        private final CompletableFuture<?> future;
+        private final ProgressListener listener;
+        private final PidController pid;
+        private final double initialError;
+        private final long start;
+        /** completed with the final error when the turn ends */
+        private final CompletableFuture<Double> done = new CompletableFuture<>();
+        private ScheduledFuture<?> schedule;
+        private StepMonitor monitor;
+        /** the time of the compass sample the controller last acted on */
+        private long lastSample;
+        private int ticks;
+        private double error;
+        private boolean finished;
+
+        HeadingTask(double heading, CompletableFuture<?> future, ProgressListener listener) {
+            this.heading = heading;
+            this.future = future;
+            this.listener = listener;
+            double maxRate = MAX_TURN_RPM * rotationalDistance / (60 * ctxt.chassisInfo.radius);
+            this.pid = new PidController(headingGains, maxRate);
+            this.error = AngleUtils.normalize(heading - compass.instantaneousHeading());
+            this.initialError = DoubleUtils.inRange(error, compass.accuracy()) ? 0 : error;
+            this.start = System.nanoTime();
+            this.lastSample = compass.sampleTime();
         }
-        try (StepMonitor monitor = takeSteps(thetaSteps, -thetaSteps, MAX_RPM)) {
-            while (!monitor.complete()) {
-                double d = compass.instantaneousHeading() - heading;
-                if (DoubleUtils.inRange(d, compass.accuracy())) {
-                    LOG.debug("In range so stopping: {} <= {}", d, compass.accuracy());
-                    monitor.stop();
+
+        synchronized void tick() {
+            if (finished) {
+                return;
+            }
+            try {
+                ticks++;
+                long sampled = compass.sampleTime();
+                error = AngleUtils.normalize(heading - compass.instantaneousHeading());
+                if (DoubleUtils.inRange(error, compass.accuracy())) {
+                    LOG.debug("In range so stopping: {} <= {}", error, compass.accuracy());
+                    finish();
+                    return;
+                }
+                if (isCancelled(future)) {
+                    LOG.debug("Turn cancelled");
+                    finish();
+                    return;
                 }
+                if (listener != null) {
+                    listener.progress(Math.max(0.0, 1.0 - Math.abs(error / initialError)), position());
+                }
+                if (monitor != null && (!monitor.complete() || sampled == lastSample)) {
+                    // acting on a heading measured before the last burst would
+                    // overshoot, so wait for the next sample.
+                    return;
+                }
+                // the derivative is taken over the time between the samples.
+                double rate = pid.update(error, (sampled - lastSample) / 1e9);
+                lastSample = sampled;
+                int rpm = turnRpm(rate);
+                double stepsPerSecond = rpm * motor[LEFT].stepsPerRotation() / 60;
+                int remaining = steps(ctxt.chassisInfo.radius * Math.abs(error) * headingFactor);
+                int perPeriod = (int) Math.ceil(stepsPerSecond * HEADING_PERIOD_MS / 1000);
+                int burst = Math.max(1, Math.min(remaining, perPeriod));
+                if (error < 0) {
+                    burst = -burst;
+                }
+                if (monitor != null) {
+                    monitor.close();
+                }
+                // the burst continues at the rate of the last one so the turn follows
+                // the controller rather than restarting the ramp on each burst.
+                monitor = takeSteps(burst, -burst, rpm, false);
+            } catch (RuntimeException e) {
+                // an exception would silently stop the scheduled task.
+                finish();
+                done.completeExceptionally(e);
             }
         }
-        LOG.debug("{}", compass);
+
+        /**
+         * Stops the task and the motors and logs the convergence. Safe to call more
+         * than once.
+         */
+        synchronized void finish() {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            if (schedule != null) {
+                schedule.cancel(false);
+            }
+            if (monitor != null) {
+                monitor.close();
+            }
+            long elapsed = System.nanoTime() - start;
+            ctxt.metrics.timer("mover.turn").record(elapsed);
+            LOG.info("Turn to {} converged in {} ms over {} ticks, error {} of {}", heading,
+                    TimeUnit.NANOSECONDS.toMillis(elapsed), ticks, error, initialError);
+            done.complete(error);
+        }
     }
 
     public class StepMonitor implements AutoCloseable {
 
-        SteppingStatus ssLeft;
-        SteppingStatus ssRight;
-
-        Future<SteppingStatus> leftFuture;
-        Future<SteppingStatus> rightFuture;
+        private final CoordinatedRun run;
+        private final Future<CoordinatedRun> future;
 
-        StepMonitor(SteppingStatus ssLeft, SteppingStatus ssRight) {
-            this.ssLeft = ssLeft;
-            this.ssRight = ssRight;
-            leftFuture = executor.submit(ssLeft);
-            rightFuture = executor.submit(ssRight);
+        StepMonitor(CoordinatedRun run) {
+            this.run = run;
+            future = executor.submit(run);
         }
 
         public boolean complete() {
-            return leftFuture.isDone() && rightFuture.isDone();
+            return future.isDone();
         }
 
+        /**
+         * Stops the motors. When this returns the step counts are final.
+         */
         public void stop() {
-            if (!leftFuture.isDone()) {
-                leftFuture.cancel(true);
-            }
-            if (!rightFuture.isDone()) {
-                rightFuture.cancel(true);
-            }
+            run.halt();
         }
 
-        public void waitForComplete() {
-            try {
-                leftFuture.get();
-                rightFuture.get();
-            } catch (InterruptedException | ExecutionException e) {
-                LOG.error("Error while whating for steps ");
-                stop();
+        /**
+         * Gets the fraction of the steps that have been taken.
+         * 
+         * @param total the total number of steps requested.
+         * @return the fraction of steps taken, 0.0 to 1.0.
+         */
+        public double fraction(int total) {
+            return total == 0 ? 1.0 : Math.min(1.0, Math.abs((double) run.fwdSteps(LEFT) / total));
+        }
+
+        /**
+         * Estimates the current position from the steps taken so far.
+         * 
+         * @return the estimated position.
+         */
+        public Position estimate() {
+            double range = rotationalDistance * (run.fwdRotation(LEFT) + run.fwdRotation(RIGHT));
+            double heading = compass.heading();
+            return Position.from(CoordUtils.add(coordinates, CoordUtils.fromAngle(heading, range)), heading);
+        }
+
+        /**
+         * Waits for the steps to complete while reporting progress. The motors are
+         * stopped if the future is cancelled or the thread is interrupted.
+         * 
+         * @param total the total number of steps requested.
+         * @param future the future for the move.
+         * @param listener the listener for progress updates, may be null.
+         */
+        void track(int total, CompletableFuture<?> future, ProgressListener listener) {
+            while (!complete()) {
+                if (future.isCancelled()) {
+                    LOG.debug("Move cancelled");
+                    stop();
+                    return;
+                }
+                if (listener != null) {
+                    listener.progress(fraction(total), estimate());
+                }
+                try {
+                    Thread.sleep(PROGRESS_INTERVAL_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    stop();
+                    return;
+                }
+            }
+            if (listener != null) {
+                listener.progress(1.0, estimate());
             }
         }
 
         @Override
         public void close() {
             stop();
-            double range = rotationalDistance * (ssLeft.fwdRotation() + ssRight.fwdRotation());
+            double range = rotationalDistance * (run.fwdRotation(LEFT) + run.fwdRotation(RIGHT));
             Coordinate shift = ctxt.scaleInfo.round(CoordUtils.fromAngle(compass.heading(), range));
             coordinates = CoordUtils.add(coordinates, shift);
             LOG.debug("steps result: range:{} shift:{} position:{}", range, shift, position());
+            stopListener.run();
         }
     }
 }
@@ -0,0 +1,253 @@
+package org.xenei.robot.rpi.drivers;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Drives several motors from one thread so that their steps stay in phase. The
+ * motor with the most steps is pulsed every period and the pulses of the others
+ * are spread across the run Bresenham style, so all of the motors start and
+ * finish together. The run starts at the lowest pull in rate of the motors and
+ * ramps up and down at the lowest maximum acceleration of the motors. The steps taken by each motor are counted as they are pulsed
+ * so an interrupted run reports exactly how far each motor moved. A run that does
+ * not ramp down leaves the motors turning, and the next run in the same
+ * direction continues from that rate rather than from rest.
+ */
+public class CoordinatedRun implements Callable<CoordinatedRun> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CoordinatedRun.class);
+
+    private final Motor[] motors;
+    private final int[] steps;
+    private final int major;
+    private final AtomicIntegerArray taken;
+    private final StepScheduler scheduler;
+    private final double acceleration;
+    private final double pullInRate;
+    private final boolean rampDown;
+    /** the run before this one on the same motors, cleared once used so runs do not chain */
+    private CoordinatedRun previous;
+    /** claimed by the first of the run or the halt so a halted run never starts */
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private volatile boolean halted;
+    private volatile StepScheduler.Jitter jitter;
+    /** the {@link System#nanoTime()} of the last pulse */
+    private volatile long lastPulse;
+    /** the rate of the motor with the most steps when the run ended */
+    private volatile double endRate;
+
+    /**
+     * Constructor.
+     *
+     * @param motors the motors to drive.
+     * @param steps the number of steps for each motor, negative for reverse.
+     * @param rpm the cruise speed of the motor with the most steps, the others
+     * run proportionally slower.
+     */
+    public CoordinatedRun(Motor[] motors, int[] steps, int rpm) {
+        this(motors, steps, rpm, null);
+    }
+
+    /**
+     * Constructor for a run that follows another on the same motors. The first
+     * pulse is held until the motors have had the start interval of this run to
+     * follow the last pulse of the previous one, so back to back runs never pulse
+     * faster than either run allows.
+     *
+     * @param motors the motors to drive.
+     * @param steps the number of steps for each motor, negative for reverse.
+     * @param rpm the cruise speed of the motor with the most steps, the others
+     * run proportionally slower.
+     * @param previous the run before this one, may be null.
+     */
+    public CoordinatedRun(Motor[] motors, int[] steps, int rpm, CoordinatedRun previous) {
+        this(motors, steps, rpm, previous, true);
+    }
+
+    /**
+     * Constructor for one of a sequence of runs. A run that does not ramp down
+     * ends at its rate, and if the previous run did the same in the same direction
+     * this run starts at the rate the previous one ended at. Only suitable where
+     * the motors can stop from the rate without losing steps.
+     *
+     * @param motors the motors to drive.
+     * @param steps the number of steps for each motor, negative for reverse.
+     * @param rpm the cruise speed of the motor with the most steps, the others
+     * run proportionally slower.
+     * @param previous the run before this one, may be null.
+     * @param rampDown true to slow to rest at the end of the run.
+     */
+    public CoordinatedRun(Motor[] motors, int[] steps, int rpm, CoordinatedRun previous, boolean rampDown) {
+        if (motors.length != steps.length) {
+            throw new IllegalArgumentException("Motors and steps must be the same length");
+        }
+        this.motors = motors.clone();
+        this.steps = steps.clone();
+        int majorIdx = 0;
+        for (int i = 1; i < steps.length; i++) {
+            if (Math.abs(steps[i]) > Math.abs(steps[majorIdx])) {
+                majorIdx = i;
+            }
+        }
+        this.major = steps.length == 0 ? 0 : Math.abs(steps[majorIdx]);
+        this.taken = new AtomicIntegerArray(steps.length);
+        double stepsPerMinute = (steps.length == 0 ? 1 : motors[majorIdx].stepsPerRotation())
+                * Math.max(1, Math.min(rpm, Motor.MAX_RPM));
+        this.scheduler = new StepScheduler(Math.round(TimeUnit.MINUTES.toNanos(1) / stepsPerMinute));
+        double acceleration = Double.POSITIVE_INFINITY;
+        double pullInRate = Double.POSITIVE_INFINITY;
+        for (Motor motor : motors) {
+            acceleration = Math.min(acceleration, motor.maxAcceleration());
+            pullInRate = Math.min(pullInRate, motor.pullInRate());
+        }
+        this.acceleration = acceleration;
+        this.pullInRate = motors.length == 0 ? 0 : pullInRate;
+        this.previous = previous;
+        this.rampDown = rampDown;
+    }
+
+    /**
+     * Returns true if each motor turns in the same direction in both runs.
+     */
+    private boolean sameDirection(CoordinatedRun other) {
+        if (other.steps.length != steps.length) {
+            return false;
+        }
+        for (int i = 0; i < steps.length; i++) {
+            if (Integer.signum(other.steps[i]) != Integer.signum(steps[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public CoordinatedRun call() throws InterruptedException {
+        if (!started.compareAndSet(false, true)) {
+            return this;
+        }
+        StepProfile profile = null;
+        int tick = 0;
+        try {
+            int[] error = new int[steps.length];
+            for (int i = 0; i < steps.length; i++) {
+                // start half way so the minor pulses are centered in their intervals.
+                error[i] = major / 2;
+            }
+            StepScheduler.Jitter before = previous == null ? null : previous.jitter();
+            boolean follows = before != null && before.pulses > 0;
+            double startRate = follows && sameDirection(previous) ? previous.endRate : 0;
+            profile = new StepProfile(major, scheduler.periodNanos(), acceleration, pullInRate, startRate,
+                    rampDown ? 0 : Double.POSITIVE_INFINITY);
+            if (follows) {
+                scheduler.start(previous.lastPulse + profile.startIntervalNanos());
+            } else {
+                scheduler.start();
+            }
+            previous = null;
+            for (; tick < major && !halted; tick++) {
+                scheduler.awaitNext(profile.intervalNanos(tick));
+                for (int i = 0; i < steps.length; i++) {
+                    error[i] += Math.abs(steps[i]);
+                    if (error[i] >= major) {
+                        error[i] -= major;
+                        motors[i].pulse(steps[i] > 0);
+                        taken.incrementAndGet(i);
+                    }
+                }
+            }
+        } finally {
+            // a halted run leaves the motors at rest.
+            endRate = profile != null && tick == major ? profile.endRate() : 0;
+            lastPulse = scheduler.lastPulseNanos();
+            jitter = scheduler.jitter();
+            finished.countDown();
+        }
+        LOG.debug("Coordinated run complete. {}", this);
+        return this;
+    }
+
+    /**
+     * Stops the run and waits for the pulse in progress to complete, so the step
+     * counts are final when this returns. A run that has not started will not
+     * start.
+     */
+    public void halt() {
+        halted = true;
+        if (started.compareAndSet(false, true)) {
+            previous = null;
+            finished.countDown();
+            return;
+        }
+        try {
+            finished.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns true if the run has started and not finished.
+     *
+     * @return true if the motors are being stepped.
+     */
+    public boolean isRunning() {
+        return started.get() && finished.getCount() > 0;
+    }
+
+    /**
+     * Gets the number of steps taken by a motor in a forward direction.
+     *
+     * @param motor the index of the motor.
+     * @return the number of steps taken, negative for reverse travel.
+     */
+    public int fwdSteps(int motor) {
+        return steps[motor] < 0 ? -taken.get(motor) : taken.get(motor);
+    }
+
+    /**
+     * Gets the number of rotations of a motor.
+     *
+     * @param motor the index of the motor.
+     * @return the number of rotations, negative for reverse travel.
+     */
+    public double fwdRotation(int motor) {
+        return fwdSteps(motor) / motors[motor].stepsPerRotation();
+    }
+
+    /**
+     * Gets the lateness of the steps against their schedule.
+     *
+     * @return the jitter of the run or null if the run has not finished.
+     */
+    public StepScheduler.Jitter jitter() {
+        return jitter;
+    }
+
+    /**
+     * Gets the rate the motor with the most steps was turning at when the run
+     * ended.
+     *
+     * @return the rate in steps per second, 0 if the run ended at rest or has not
+     * finished.
+     */
+    public double endRate() {
+        return endRate;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("CoordinatedRun[");
+        for (int i = 0; i < steps.length; i++) {
+            sb.append(String.format("%s/%s ", fwdSteps(i), steps[i]));
+        }
+        return sb.append(jitter).append("]").toString();
+    }
+}
@@ -3,9 +3,41 @@ package org.xenei.robot.rpi.drivers;
 import java.util.concurrent.Callable;
 
 public interface Motor extends AutoCloseable {
+    /** the fastest speed a motor is run at in revolutions per minute */
+    public static final int MAX_RPM = 300;
+    /** the default speed a motor can start at from rest in revolutions per minute */
+    public static final int DEFAULT_PULL_IN_RPM = 150;
+
     public boolean active();
     public SteppingStatus prepareRun(int steps, int rpm);
     public double stepsPerRotation();
+
+    /**
+     * Energizes the coils for the next step in the direction and returns without
+     * waiting. The caller is responsible for pacing the steps.
+     * @param fwd true to step forward.
+     */
+    public void pulse(boolean fwd);
+
+    /**
+     * The maximum acceleration the motor can follow without losing steps. Runs
+     * ramp up to and down from their rate at this acceleration.
+     * @return the acceleration in steps per second per second,
+     * {@link Double#POSITIVE_INFINITY} if the motor does not need to ramp.
+     */
+    public default double maxAcceleration() {
+        return Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * The rate the motor can start at from rest, and stop from, without losing
+     * steps. Runs start at and slow to this rate.
+     * @return the rate in steps per second, by default the rate at
+     * {@link #DEFAULT_PULL_IN_RPM}.
+     */
+    public default double pullInRate() {
+        return stepsPerRotation() * DEFAULT_PULL_IN_RPM / 60;
+    }
     
 
     /**
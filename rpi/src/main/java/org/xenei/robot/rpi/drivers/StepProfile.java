@@ -0,0 +1,138 @@
+package org.xenei.robot.rpi.drivers;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A trapezoidal speed profile for a run of steps. The motor starts from rest at
+ * its pull in rate, the fastest rate it can start at without losing steps. The
+ * step rate then ramps up at a constant acceleration, cruises, and ramps down
+ * at the same rate to the pull in rate, from which the motor can stop. Runs too
+ * short to reach the cruise rate follow a triangular profile, and a cruise rate
+ * below the pull in rate is run without a ramp. A run may instead start from,
+ * or end at, a faster rate so that a sequence of short runs continues at speed.
+ * The rotor can follow every step as long as the acceleration is within what
+ * the motor can deliver under load, so a move can cruise faster than the motor
+ * can start from a standing stop.
+ */
+public class StepProfile {
+
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final int steps;
+    private final double cruiseRate;
+    private final double twoA;
+    private final double pullInRate;
+    /** the rate the ramp up starts from, at least the pull in rate */
+    private final double startRate;
+    /** the rate to slow to, 0 to stop at the end of the run */
+    private final double endRate;
+
+    /**
+     * Constructor for a run that starts and ends at rest.
+     *
+     * @param steps the number of steps in the run.
+     * @param cruiseNanos the time between steps at the cruise rate.
+     * @param acceleration the maximum acceleration in steps per second per second,
+     * {@link Double#POSITIVE_INFINITY} for no ramp.
+     * @param pullInRate the rate the motor can start at from rest in steps per
+     * second.
+     */
+    public StepProfile(int steps, long cruiseNanos, double acceleration, double pullInRate) {
+        this(steps, cruiseNanos, acceleration, pullInRate, 0, 0);
+    }
+
+    /**
+     * Constructor for a run that may not start or end at rest.
+     *
+     * @param steps the number of steps in the run.
+     * @param cruiseNanos the time between steps at the cruise rate.
+     * @param acceleration the maximum acceleration in steps per second per second,
+     * {@link Double#POSITIVE_INFINITY} for no ramp.
+     * @param pullInRate the rate the motor can start at from rest in steps per
+     * second.
+     * @param startRate the rate the motor is turning at when the run starts in
+     * steps per second, 0 for rest.
+     * @param endRate the rate to slow to by the end of the run in steps per
+     * second, 0 for rest or {@link Double#POSITIVE_INFINITY} to not slow down.
+     */
+    public StepProfile(int steps, long cruiseNanos, double acceleration, double pullInRate, double startRate,
+            double endRate) {
+        this.steps = Math.abs(steps);
+        this.cruiseRate = NANOS_PER_SECOND / cruiseNanos;
+        this.twoA = 2 * acceleration;
+        this.pullInRate = pullInRate;
+        this.startRate = Math.max(pullInRate, startRate);
+        this.endRate = endRate;
+    }
+
+    /**
+     * Gets the step rate leading into a step. After n steps from rate v at
+     * acceleration a the rate is sqrt(v^2 + 2an), and the rate is limited in the
+     * same way by the steps that remain so the run can slow to the end rate, or
+     * to the pull in rate if the run ends at rest.
+     *
+     * @param step the step number, 1 for the second step of the run.
+     * @return the rate in steps per second.
+     */
+    public double rate(int step) {
+        double to = Math.max(pullInRate, endRate);
+        double up = Math.sqrt(startRate * startRate + twoA * step);
+        double down = Math.sqrt(to * to + twoA * (steps - step));
+        return Math.min(cruiseRate, Math.min(up, down));
+    }
+
+    /**
+     * Gets the rate the motor is turning at when the run completes.
+     *
+     * @return the rate in steps per second, 0 if the run ends at rest.
+     */
+    public double endRate() {
+        if (endRate == 0) {
+            return 0;
+        }
+        double up = steps == 0 ? startRate : Math.sqrt(startRate * startRate + twoA * steps);
+        return Math.min(cruiseRate, Math.min(up, endRate));
+    }
+
+    /**
+     * Gets the time between a step and the one before it. The first step is taken
+     * at once.
+     *
+     * @param step the step number, 0 for the first step of the run.
+     * @return the interval in nanoseconds.
+     */
+    public long intervalNanos(int step) {
+        return step <= 0 ? 0 : Math.round(NANOS_PER_SECOND / rate(step));
+    }
+
+    /**
+     * Gets the time the motor needs between the last step of a previous run and
+     * the first step of this one. This is the interval of the first step of the
+     * ramp from the start rate, or the cruise interval if that is longer.
+     *
+     * @return the interval in nanoseconds.
+     */
+    public long startIntervalNanos() {
+        return Math.round(NANOS_PER_SECOND / Math.min(cruiseRate, Math.sqrt(startRate * startRate + twoA)));
+    }
+
+    /**
+     * Gets the time from the first step to the last.
+     *
+     * @return the duration of the run in nanoseconds.
+     */
+    public long durationNanos() {
+        long result = 0;
+        for (int i = 1; i < steps; i++) {
+            result += intervalNanos(i);
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "StepProfile[steps:%s cruise:%.1f steps/s accel:%s steps/s^2 pull in:%.1f start:%.1f end:%.1f]", steps,
+                cruiseRate, twoA / 2, pullInRate, startRate, endRate);
+    }
+}
@@ -0,0 +1,171 @@
+package org.xenei.robot.rpi.drivers;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Paces the pulses of a stepper motor against absolute deadlines. The deadline
+ * for each pulse is the deadline of the previous pulse plus the interval, so the
+ * time spent driving the pins and any wake up latency does not accumulate from
+ * step to step. At a constant rate the deadline for pulse n is the start time
+ * plus n periods. The
+ * thread parks until shortly before the deadline and spins for the remainder.
+ * <p>
+ * The lateness of each pulse is recorded so the jitter of a run can be
+ * reported. Not thread safe, an instance is used by the thread driving the
+ * motor.
+ * </p>
+ */
+public class StepScheduler {
+
+    /** the time before a deadline that the thread stops parking and spins */
+    static final long SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final long periodNanos;
+    private long deadline;
+    /** the {@link System#nanoTime()} the last pulse was released */
+    private long lastPulse;
+    private long pulses;
+    private long totalLateness;
+    private long maxLateness;
+
+    /**
+     * The lateness of the pulses in a run.
+     */
+    public static class Jitter {
+        /** the number of pulses */
+        public final long pulses;
+        /** the mean time a pulse was late in nanoseconds */
+        public final double meanNanos;
+        /** the longest time a pulse was late in nanoseconds */
+        public final long maxNanos;
+
+        Jitter(long pulses, double meanNanos, long maxNanos) {
+            this.pulses = pulses;
+            this.meanNanos = meanNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Jitter[pulses:%s mean:%.1f us max:%.1f us]", pulses, meanNanos / 1000,
+                    maxNanos / 1000.0);
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param periodNanos the time between pulses in nanoseconds.
+     */
+    public StepScheduler(long periodNanos) {
+        this.periodNanos = periodNanos;
+        this.deadline = System.nanoTime();
+    }
+
+    /**
+     * Gets the time between pulses.
+     *
+     * @return the time between pulses in nanoseconds.
+     */
+    public long periodNanos() {
+        return periodNanos;
+    }
+
+    /**
+     * Restarts the schedule so that the next pulse is due now.
+     */
+    public void start() {
+        start(System.nanoTime());
+    }
+
+    /**
+     * Restarts the schedule so that the next pulse is due at the earliest time, or
+     * now if that has passed. Used to hold the first pulse of a run until the
+     * motor has had an interval to follow the last pulse of the run before.
+     *
+     * @param earliest the {@link System#nanoTime()} before which the next pulse
+     * is not due.
+     */
+    public void start(long earliest) {
+        long now = System.nanoTime();
+        deadline = earliest - now > 0 ? earliest : now;
+        pulses = 0;
+        totalLateness = 0;
+        maxLateness = 0;
+    }
+
+    /**
+     * Waits until the next pulse is due and records how late the wake up was.
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    public void awaitNext() throws InterruptedException {
+        awaitNext(periodNanos);
+    }
+
+    /**
+     * Waits until the interval after the previous pulse has passed and records
+     * how late the wake up was. The first pulse after {@link #start()} is due at
+     * the start time.
+     *
+     * @param intervalNanos the time between the previous pulse and the next.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    public void awaitNext(long intervalNanos) throws InterruptedException {
+        if (pulses > 0) {
+            deadline += intervalNanos;
+        }
+        long lateness = waitUntil(deadline);
+        lastPulse = deadline + lateness;
+        pulses++;
+        totalLateness += lateness;
+        maxLateness = Math.max(maxLateness, lateness);
+    }
+
+    /**
+     * Gets the time the last pulse was released.
+     *
+     * @return the {@link System#nanoTime()} of the last pulse, only valid once a
+     * pulse has been released.
+     */
+    public long lastPulseNanos() {
+        return lastPulse;
+    }
+
+    /**
+     * Gets the jitter of the pulses since the schedule started.
+     *
+     * @return the jitter.
+     */
+    public Jitter jitter() {
+        return new Jitter(pulses, pulses == 0 ? 0 : (double) totalLateness / pulses, maxLateness);
+    }
+
+    /**
+     * Waits until the deadline. Parks until {@link #SPIN_NANOS} before the
+     * deadline then spins.
+     *
+     * @param deadline the {@link System#nanoTime()} to wait for.
+     * @return the nanoseconds past the deadline when the wait ended.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    static long waitUntil(long deadline) throws InterruptedException {
+        long remaining = deadline - System.nanoTime();
+        while (remaining > SPIN_NANOS) {
+            LockSupport.parkNanos(remaining - SPIN_NANOS);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            remaining = deadline - System.nanoTime();
+        }
+        while (remaining > 0) {
+            Thread.onSpinWait();
+            remaining = deadline - System.nanoTime();
+        }
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        return -remaining;
+    }
+}
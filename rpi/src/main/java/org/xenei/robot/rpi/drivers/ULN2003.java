@@ -30,6 +30,7 @@ import org.xenei.robot.common.planning.Planner;
 import org.xenei.robot.rpi.RpiMover;
 import org.xenei.robot.rpi.drivers.ULN2003.Mode;
 import org.xenei.robot.rpi.utils.DigitalOutputDeviceFactory;
+import org.xenei.robot.rpi.utils.OutputPort;
 
 import com.diozero.api.DigitalOutputDevice;
 
@@ -47,11 +48,19 @@ public class ULN2003 implements Motor {
      * Stride angle for the 28BYJ48 stepper motor.
      */
     public static final double STEPPER_28BYJ48 = 5.625/64;
+
+    /**
+     * The default maximum acceleration in steps per second per second. At 4096
+     * steps per rotation the 28BYJ48 ramps from the pull in rate of 150 rpm to
+     * 300 rpm in about 3900 steps, under a quarter of a meter on an 8 cm wheel.
+     */
+    public static final double DEFAULT_MAX_ACCELERATION = 40000;
     
     private final MotorBlock block;
     private SteppingStatusImpl task;
-    private final double revMilliPerStepMin;
+    private final double revNanoPerStepMin;
     private final double stepsPerRotation;
+    private volatile double maxAcceleration = DEFAULT_MAX_ACCELERATION;
     
     private static Options getOptions() {
         
@@ -85,9 +94,12 @@ public class ULN2003 implements Motor {
             
             if (commandLine.hasOption("M")) {
                 MotorBlock block = new MotorBlock(mode, gpin.get(0), gpin.get(1), gpin.get(2), gpin.get(3));
+                StepScheduler scheduler = new StepScheduler(TimeUnit.MILLISECONDS.toNanos(150));
                 for (int i=0;i<steps;i++) {
-                    block.step(fwd,150);
+                    scheduler.awaitNext();
+                    block.step(fwd);
                 }
+                LOG.info("Finished {}", scheduler.jitter());
             } else {
                 int direction = fwd ? 1 : -1;
                 try(ULN2003 motor = new ULN2003(mode, ULN2003.STEPPER_28BYJ48, gpin.get(0), gpin.get(1), gpin.get(2), gpin.get(3))) {
@@ -120,10 +132,10 @@ public class ULN2003 implements Motor {
      */
     public ULN2003(Mode mode, double strideAngle, int gpio1, int gpio2, int gpio3, int gpio4) throws InterruptedException {
         block = new MotorBlock(mode, gpio1, gpio2, gpio3, gpio4);
-        // rev/steps * milli/min = revmilli/stepsmin
+        // rev/steps * nano/min = revnano/stepsmin
         double revolutionPerStep = strideAngle/360;
-        double milliPerMin = TimeUnit.MILLISECONDS.convert(1, TimeUnit.MINUTES);
-        revMilliPerStepMin = revolutionPerStep * milliPerMin;
+        double nanoPerMin = TimeUnit.MINUTES.toNanos(1);
+        revNanoPerStepMin = revolutionPerStep * nanoPerMin;
         stepsPerRotation = 360/strideAngle;
         LOG.debug("Created instance {}: {}", this.hashCode(), toString());
     }
@@ -164,14 +176,15 @@ public class ULN2003 implements Motor {
      * steps = 0, the stepper stops. When steps > 0, the stepper runs clockwise.
      * When steps < 0, the stepper runs anticlockwise.
      * @param rpm: Revolutions per minute, the speed of a stepper, range from 1 to
-     * 300. Note that high rpm will lead to step loss, so rpm should not be larger
-     * than 150.
+     * {@link Motor#MAX_RPM}. The run starts at the pull in rate and ramps up to
+     * and down from this rate at the maximum acceleration, without the ramp rpm
+     * larger than {@link Motor#DEFAULT_PULL_IN_RPM} will lead to step loss.
      */
     public SteppingStatusImpl prepareRun(int steps, int rpm) {
-        // revmilli/stepsmin * min/rev = milli/steps (min/rev = 1/rpm)
-        long msPerStep = (long) Math.ceil(revMilliPerStepMin / limit(rpm, 1, 300));
+        // revnano/stepsmin * min/rev = nano/steps (min/rev = 1/rpm)
+        long nanosPerStep = Math.round(revNanoPerStepMin / limit(rpm, 1, MAX_RPM));
         
-        SteppingStatusImpl result = new SteppingStatusImpl(steps, msPerStep);
+        SteppingStatusImpl result = new SteppingStatusImpl(steps, nanosPerStep);
         
         LOG.debug("Preparing task {} steps:{} rpm:{}", this, steps, rpm);
 
@@ -179,6 +192,25 @@ public class ULN2003 implements Motor {
     }
 
 
+    @Override
+    public double maxAcceleration() {
+        return maxAcceleration;
+    }
+
+    /**
+     * Sets the maximum acceleration. Applies to runs prepared after the call.
+     * @param maxAcceleration the acceleration in steps per second per second,
+     * {@link Double#POSITIVE_INFINITY} to run at a constant rate.
+     */
+    public void setMaxAcceleration(double maxAcceleration) {
+        this.maxAcceleration = maxAcceleration;
+    }
+
+    @Override
+    public void pulse(boolean fwd) {
+        block.step(fwd);
+    }
+
     /**
      * Stop a stepper motor.
      */
@@ -190,24 +222,50 @@ public class ULN2003 implements Motor {
         private volatile int  count;
         private final int initialCounter;
         private final boolean fwd;
-        private final long msPerStep;
+        private final StepScheduler scheduler;
+        private final StepProfile profile;
+        private volatile StepScheduler.Jitter jitter;
         
-        SteppingStatusImpl(int steps, long msPerStep) {
+        SteppingStatusImpl(int steps, long nanosPerStep) {
             initialCounter = Math.abs(limit(steps, -32768, 32767));
             count = initialCounter;
             fwd = steps >= 0;
-            this.msPerStep = msPerStep;
-            LOG.debug("SteppingStatus created for %s steps", count);
+            this.scheduler = new StepScheduler(nanosPerStep);
+            this.profile = new StepProfile(initialCounter, nanosPerStep, maxAcceleration, pullInRate());
+            LOG.debug("SteppingStatus created for {} steps", count);
         }
 
         @Override
         public SteppingStatusImpl call() throws InterruptedException {
-            while (count-- > 0) {
-                block.step(fwd, msPerStep);
+            scheduler.start();
+            try {
+                while (count > 0) {
+                    scheduler.awaitNext(profile.intervalNanos(initialCounter - count));
+                    block.step(fwd);
+                    count--;
+                }
+            } finally {
+                jitter = scheduler.jitter();
             }
-            LOG.info("SteppingStatus complete.  count:{} initial counter:{}", count, initialCounter);
+            LOG.info("SteppingStatus complete.  count:{} initial counter:{} {}", count, initialCounter, jitter);
             return this;
         }
+
+        /**
+         * Gets the time between steps.
+         * @return the time between steps in nanoseconds.
+         */
+        public long nanosPerStep() {
+            return scheduler.periodNanos();
+        }
+
+        /**
+         * Gets the lateness of the steps against their schedule.
+         * @return the jitter of the run or null if the run has not finished.
+         */
+        public StepScheduler.Jitter jitter() {
+            return jitter;
+        }
         
         public boolean isRunning() {
             return count > 0;
@@ -284,7 +342,8 @@ public class ULN2003 implements Motor {
     };
 
     static class MotorBlock {
-        private DigitalOutputDevice[] gpio;
+        private static final int ALL = 0xF;
+        private OutputPort port;
         private int currentPulse;
         private Mode mode;
         
@@ -293,37 +352,39 @@ public class ULN2003 implements Motor {
         public MotorBlock(Mode mode, int gpio1, int gpio2, int gpio3, int gpio4) throws InterruptedException {
             this.mode = mode;
             this.currentPulse = -1;
-            this.gpio = new DigitalOutputDevice[4];
-            this.gpio[0] = dodF.build(gpio1);
-            this.gpio[1] = dodF.build(gpio2);
-            this.gpio[2] = dodF.build(gpio3);
-            this.gpio[3] = dodF.build(gpio4);
+            this.port = dodF.buildPort(gpio1, gpio2, gpio3, gpio4);
             // got to known state.
-            step(true, 0);
+            step(true);
         }
         
         @Override
         public String toString() {
-            return String.format( "Motor Block: %s on pins %s %s %s %s", mode, gpio[0].getGpio(),
-                    gpio[1].getGpio(), gpio[2].getGpio(), gpio[3].getGpio());
+            return String.format( "Motor Block: %s on pins %s %s %s %s", mode, port.gpio(0),
+                    port.gpio(1), port.gpio(2), port.gpio(3));
         }
 
-        public void step(boolean fwd, long delay) throws InterruptedException {
+        /**
+         * Sets the pins for the next pulse. Does not wait, the caller paces the
+         * steps.
+         * @param fwd true to step forward.
+         */
+        public void step(boolean fwd) {
             currentPulse = mode.adjustPulse(currentPulse, fwd);
             int pattern = mode.pattern(currentPulse);
             if (LOG.isDebugEnabled()) {
                 LOG.debug("MotorBlock - Stepping {}.  Pattern: {} Pulse: {}", (fwd?"forward":"backward"), pattern, currentPulse);
             }   
+            int bits = 0;
             for (int i = 0; i < 4; i++) {
-                gpio[i].setOn((map[i] & pattern) == 0);
+                if ((map[i] & pattern) == 0) {
+                    bits |= 1 << i;
+                }
             }
-            TimeUnit.MILLISECONDS.sleep(delay);
+            port.write(bits);
         }
 
         private void setAll(boolean state) {
-            for (int i = 0; i < 4; i++) {
-                gpio[i].setOn(state);
-            }
+            port.write(state ? ALL : 0);
         }
         public void off() {
             setAll(false);
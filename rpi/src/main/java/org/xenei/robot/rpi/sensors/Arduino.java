@@ -1,9 +1,14 @@
 package org.xenei.robot.rpi.sensors;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.ShortBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -14,22 +19,158 @@ import org.xenei.robot.common.utils.TimingUtils;
 
 import com.diozero.api.I2CDevice;
 
-public class Arduino implements DistanceSensor {
+/**
+ * The sonar sensor on the Arduino. The I2C device is polled on a dedicated
+ * thread at the rate the firmware refreshes its median and the last readings
+ * are kept in a ring buffer, so {@link #sense()} never waits on the bus.
+ * <p>
+ * In sweep mode the firmware moves the sonar across the front of the robot on
+ * a servo and each poll reads the latest sample from every step of the sweep in
+ * one block, so a single sense returns the obstacles across the whole sweep
+ * without turning the robot.
+ * </p>
+ * <p>
+ * Readings taken while the robot is moving do not describe where it stopped.
+ * When told that motion has stopped, {@link #sense()} waits for the first poll
+ * that completes after the stop and drops any sweep samples from that poll that
+ * were taken before the stop.
+ * </p>
+ */
+public class Arduino implements DistanceSensor, AutoCloseable {
 
     private static final int CONTROLLER = 1;
     private static final int ADDRESS = 0x8;
     // 343 m/s convert to 2 * m/um (2 x for time out and back)
     private static final double TIME_TO_M = 5830.9;
+    /** the firmware computes a new median every 5 pings at 50 ms intervals */
+    static final long REFRESH_MILLIS = 250;
+    /** the number of readings kept */
+    static final int HISTORY = 8;
+    /** the number of times a read is retried after a parity error */
+    static final int RETRIES = 3;
+    /** readings older than this number of refresh periods are not used */
+    private static final int STALE_PERIODS = 4;
+    /** the number of refresh periods to wait for a reading after motion stops */
+    private static final int SETTLE_PERIODS = 2;
+
+    /** command to read the median of the forward ping */
+    static final byte CMD_SINGLE = 0x00;
+    /** command to read the sweep block */
+    static final byte CMD_SWEEP = 0x01;
+    /** the number of steps in the firmware sweep */
+    static final int SWEEP_STEPS = 7;
+    /** the milliseconds the firmware spends on each step of the sweep */
+    static final long SWEEP_STEP_MILLIS = 75;
+    /** the bytes in a sweep sample: angle, 2 bytes of timing with parity, age */
+    static final int SAMPLE_SIZE = 4;
+    /** the size of the sweep block: count, checksum and the samples */
+    static final int SWEEP_BLOCK_SIZE = 2 + SWEEP_STEPS * SAMPLE_SIZE;
+    /** the milliseconds per unit of sample age */
+    static final long AGE_UNIT_MILLIS = 10;
+    /** the age of a sample that has not been taken or is too old to report */
+    static final int AGE_UNKNOWN = 0xFF;
+
     private final I2CDevice device;
+    private final byte command;
     private final byte[] buffer;
-    private final ShortBuffer sb;
+    private final long staleNanos;
+    private final long refreshNanos;
+    /** the {@link System#nanoTime()} the robot last stopped moving */
+    private volatile long stoppedNanos;
+    /** true once the robot has stopped moving at least once */
+    private volatile boolean stopped;
+    private final AtomicReferenceArray<Reading> readings;
+    /** the number of readings written, the next reading goes in slot count % HISTORY */
+    private final AtomicLong count;
+    private final ScheduledExecutorService poller;
 
     private static final Logger LOG = LoggerFactory.getLogger(Arduino.class);
 
+    /**
+     * A single timestamped sonar sample.
+     */
+    public static class Sample {
+        /** the angle of the sonar in radians counter clockwise from straight ahead */
+        public final double angle;
+        /** the {@link System#nanoTime()} the sample was taken */
+        public final long timestamp;
+        /** the location of the obstacle or {@link Location#INFINITE} */
+        public final Location location;
+
+        Sample(double angle, long timestamp, Location location) {
+            this.angle = angle;
+            this.timestamp = timestamp;
+            this.location = location;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Sample[%s %s @ %s]", angle, location, timestamp);
+        }
+    }
+
+    /**
+     * The samples read from the device in one poll.
+     */
+    public static class Reading {
+        private final long sequence;
+        /** the {@link System#nanoTime()} the device was read */
+        public final long timestamp;
+        /** the valid samples in the read */
+        public final List<Sample> samples;
+
+        Reading(long sequence, long timestamp, List<Sample> samples) {
+            this.sequence = sequence;
+            this.timestamp = timestamp;
+            this.samples = Collections.unmodifiableList(samples);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Reading[%s @ %s]", samples, timestamp);
+        }
+    }
+
+    /**
+     * Constructor. Reads the forward facing median.
+     */
     public Arduino() {
-        device = new I2CDevice(CONTROLLER, ADDRESS);
-        buffer = new byte[2];
-        sb = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+        this(false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param sweep true to read the servo sweep, false to read the forward facing
+     * median.
+     */
+    public Arduino(boolean sweep) {
+        this(new I2CDevice(CONTROLLER, ADDRESS), sweep, REFRESH_MILLIS);
+    }
+
+    /**
+     * Constructor. The first poll is made one refresh period after construction.
+     *
+     * @param device the I2C device to read.
+     * @param sweep true to read the servo sweep.
+     * @param refreshMillis the number of milliseconds between polls.
+     */
+    Arduino(I2CDevice device, boolean sweep, long refreshMillis) {
+        this.device = device;
+        this.command = sweep ? CMD_SWEEP : CMD_SINGLE;
+        this.buffer = new byte[sweep ? SWEEP_BLOCK_SIZE : 2];
+        // a sweep sample is refreshed once for each pass back and forth.
+        long staleMillis = refreshMillis * STALE_PERIODS + (sweep ? 2 * SWEEP_STEPS * SWEEP_STEP_MILLIS : 0);
+        this.staleNanos = TimeUnit.MILLISECONDS.toNanos(staleMillis);
+        this.refreshNanos = TimeUnit.MILLISECONDS.toNanos(refreshMillis);
+        this.readings = new AtomicReferenceArray<>(HISTORY);
+        this.count = new AtomicLong();
+        this.poller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "Arduino-poll");
+            t.setDaemon(true);
+            return t;
+        });
+        poller.scheduleAtFixedRate(this::poll, refreshMillis, refreshMillis, TimeUnit.MILLISECONDS);
     }
 
     @Override
@@ -37,37 +178,231 @@ public class Arduino implements DistanceSensor {
         return 2.0;
     }
 
-    @Override
-    public Location[] sense() {
-        device.readBytes(buffer);
-        // capture parity flag
-        boolean parityFlg = (buffer[1] & 0x80) != 0;
-        buffer[1] &= ~0x80;
-
-        int timing = sb.get(0);
-        // check parity flag
+    /**
+     * Decodes a timing from 2 bytes. The high bit of the second byte is the
+     * parity of the timing.
+     *
+     * @param low the low byte.
+     * @param high the high byte and parity flag.
+     * @return the timing or -1 on a parity error.
+     */
+    private static int timing(byte low, byte high) {
+        boolean parityFlg = (high & 0x80) != 0;
+        int timing = (low & 0xFF) | ((high & 0x7F) << 8);
         boolean parity = Integer.bitCount(timing) % 2 != 0;
-        if (parity == parityFlg) {
-            LOG.debug(String.format("DataRead: 0:%x 1:%x %d %s", buffer[0], buffer[1], timing, timing / TIME_TO_M));
-            if (timing > 0) {
-                Location c = Location.from(CoordUtils.fromAngle(0, timing / TIME_TO_M));
-                if (c.range() < 1.0) {
-                    return new Location[] { c };
+        return parity == parityFlg ? timing : -1;
+    }
+
+    /**
+     * Converts a timing at an angle to a location.
+     *
+     * @param angle the angle in radians.
+     * @param timing the echo time, 0 for no echo.
+     * @return the location of the obstacle or {@link Location#INFINITE} if there
+     * is none in range.
+     */
+    private static Location toLocation(double angle, int timing) {
+        if (timing > 0) {
+            Location c = Location.from(CoordUtils.fromAngle(angle, timing / TIME_TO_M));
+            if (c.range() < 1.0) {
+                return c;
+            }
+        }
+        return Location.INFINITE;
+    }
+
+    /**
+     * Decodes the 2 bytes sent by the firmware for the forward facing median.
+     *
+     * @param data the bytes read from the device.
+     * @return the location of the obstacle, {@link Location#INFINITE} if there is
+     * none in range, or null on a parity error.
+     */
+    static Location decode(byte[] data) {
+        int timing = timing(data[0], data[1]);
+        if (timing < 0) {
+            return null;
+        }
+        LOG.debug(String.format("DataRead: 0:%x 1:%x %d %s", data[0], data[1], timing, timing / TIME_TO_M));
+        return toLocation(0, timing);
+    }
+
+    /**
+     * Decodes the sweep block sent by the firmware. The block is the number of
+     * samples, the xor of the sample bytes and the samples. Each sample is the
+     * angle in signed degrees, the timing with parity and the age in units of
+     * {@link #AGE_UNIT_MILLIS}. Samples that fail the parity check or have an
+     * unknown age are dropped.
+     *
+     * @param block the bytes read from the device.
+     * @param readNanos the {@link System#nanoTime()} the block was read.
+     * @return the samples or null if the block is corrupt.
+     */
+    static List<Sample> decodeSweep(byte[] block, long readNanos) {
+        int samples = block[0] & 0xFF;
+        if (samples > (block.length - 2) / SAMPLE_SIZE) {
+            return null;
+        }
+        byte checksum = 0;
+        for (int i = 2; i < 2 + samples * SAMPLE_SIZE; i++) {
+            checksum ^= block[i];
+        }
+        if (checksum != block[1]) {
+            return null;
+        }
+        List<Sample> result = new ArrayList<>(samples);
+        for (int i = 0; i < samples; i++) {
+            int offset = 2 + i * SAMPLE_SIZE;
+            int timing = timing(block[offset + 1], block[offset + 2]);
+            int age = block[offset + 3] & 0xFF;
+            if (timing < 0) {
+                LOG.warn("Parity error in sweep sample {}", i);
+            } else if (age != AGE_UNKNOWN) {
+                double angle = Math.toRadians(block[offset]);
+                long timestamp = readNanos - TimeUnit.MILLISECONDS.toNanos(age * AGE_UNIT_MILLIS);
+                result.add(new Sample(angle, timestamp, toLocation(angle, timing)));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads the device and records the reading. Reads that fail the parity or
+     * checksum check are retried. Only called from the poll thread, or from
+     * tests.
+     */
+    void poll() {
+        try {
+            for (int attempt = 0; attempt <= RETRIES; attempt++) {
+                device.writeByte(command);
+                device.readBytes(buffer);
+                long now = System.nanoTime();
+                List<Sample> samples;
+                if (command == CMD_SWEEP) {
+                    samples = decodeSweep(buffer, now);
+                } else {
+                    Location location = decode(buffer);
+                    samples = location == null ? null : List.of(new Sample(0, now, location));
+                }
+                if (samples != null) {
+                    long n = count.get();
+                    readings.set((int) (n % HISTORY), new Reading(n, now, samples));
+                    count.set(n + 1);
+                    synchronized (this) {
+                        notifyAll();
+                    }
+                    return;
+                }
+                LOG.warn("Parity or checksum error on read {}", attempt + 1);
+            }
+            LOG.error("PARITY ERROR after {} retries", RETRIES);
+        } catch (RuntimeException e) {
+            // an exception would stop the scheduled polling.
+            LOG.error("Unable to read sensor", e);
+        }
+    }
+
+    /**
+     * Gets the most recent reading.
+     *
+     * @return the most recent reading or null if there are none.
+     */
+    public Reading latest() {
+        long n = count.get();
+        return n == 0 ? null : readings.get((int) ((n - 1) % HISTORY));
+    }
+
+    /**
+     * Gets the recorded readings.
+     *
+     * @return the readings, most recent first.
+     */
+    public List<Reading> history() {
+        long n = count.get();
+        List<Reading> result = new ArrayList<>(HISTORY);
+        for (long i = n - 1; i >= Math.max(0, n - HISTORY); i--) {
+            Reading r = readings.get((int) (i % HISTORY));
+            // skip slots overwritten since the count was read.
+            if (r.sequence == i) {
+                result.add(r);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Records that the robot has stopped moving. Later calls to {@link #sense()}
+     * only use readings taken after this call.
+     */
+    public void motionStopped() {
+        stoppedNanos = System.nanoTime();
+        stopped = true;
+    }
+
+    /**
+     * Waits for a reading that was taken after the robot last stopped moving. The
+     * wait is limited to a few refresh periods after the stop.
+     *
+     * @return the reading or null if there is none.
+     */
+    private Reading settledReading() {
+        Reading reading = latest();
+        if (!stopped) {
+            return reading;
+        }
+        long since = stoppedNanos;
+        long deadline = since + SETTLE_PERIODS * refreshNanos;
+        synchronized (this) {
+            while (reading == null || reading.timestamp - since < 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    LOG.debug("No reading since motion stopped");
+                    return null;
                 }
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+                reading = latest();
+            }
+        }
+        return reading;
+    }
+
+    @Override
+    public Location[] sense() {
+        Reading reading = settledReading();
+        if (reading != null) {
+            long oldest = System.nanoTime() - staleNanos;
+            // sweep samples taken before the robot stopped are in the wrong place.
+            long since = stoppedNanos;
+            if (stopped && since - oldest > 0) {
+                oldest = since;
+            }
+            Location[] result = reading.samples.stream().filter(s -> s.timestamp - oldest >= 0)
+                    .map(s -> s.location).toArray(Location[]::new);
+            if (result.length > 0) {
+                return result;
             }
-        } else {
-            LOG.error("PARITY ERROR");
         }
-        LOG.debug("Returning INFINITE location: "+Location.INFINITE);
-        return new Location[] {Location.INFINITE};
+        LOG.debug("No current reading, returning INFINITE location: " + Location.INFINITE);
+        return new Location[] { Location.INFINITE };
+    }
+
+    @Override
+    public void close() {
+        poller.shutdownNow();
     }
 
     public static void main(String[] args) {
-        Arduino sensor = new Arduino();
-        while (true) {
-            System.out.println("Senseing");
-            Arrays.stream(sensor.sense()).forEach(System.out::println);
-            TimingUtils.delay(500);
+        try (Arduino sensor = new Arduino(args.length > 0 && args[0].equals("sweep"))) {
+            while (true) {
+                System.out.println("Senseing");
+                Arrays.stream(sensor.sense()).forEach(System.out::println);
+                TimingUtils.delay(500);
+            }
         }
     }
 }
@@ -0,0 +1,76 @@
+package org.xenei.robot.rpi.utils;
+
+import com.diozero.api.DigitalOutputDevice;
+
+/**
+ * An output port that writes every pin in one operation through a
+ * {@link GpioBank}, so the coils of a stepper switch at the same instant. The
+ * devices configure the pins as outputs and are closed with the port but are
+ * not used to write.
+ */
+public class BankOutputPort implements OutputPort {
+
+    private final GpioBank bank;
+    private final DigitalOutputDevice[] pins;
+    private final int[] masks;
+
+    /**
+     * Constructor.
+     *
+     * @param bank the backend to write the pins.
+     * @param pins the devices for the pins, the first is bit 0. The GPIO numbers
+     * must be less than 32.
+     */
+    public BankOutputPort(GpioBank bank, DigitalOutputDevice... pins) {
+        this.bank = bank;
+        this.pins = pins.clone();
+        this.masks = new int[pins.length];
+        for (int i = 0; i < pins.length; i++) {
+            int gpio = pins[i].getGpio();
+            if (gpio < 0 || gpio >= Integer.SIZE) {
+                throw new IllegalArgumentException("GPIO not in bank: " + gpio);
+            }
+            masks[i] = 1 << gpio;
+        }
+    }
+
+    @Override
+    public int width() {
+        return pins.length;
+    }
+
+    @Override
+    public int gpio(int pin) {
+        return pins[pin].getGpio();
+    }
+
+    @Override
+    public void write(int bits) {
+        int set = 0;
+        int clear = 0;
+        for (int i = 0; i < masks.length; i++) {
+            if ((bits & (1 << i)) != 0) {
+                set |= masks[i];
+            } else {
+                clear |= masks[i];
+            }
+        }
+        bank.write(set, clear);
+    }
+
+    @Override
+    public void close() {
+        for (DigitalOutputDevice pin : pins) {
+            pin.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("BankOutputPort[");
+        for (DigitalOutputDevice pin : pins) {
+            sb.append(' ').append(pin.getGpio());
+        }
+        return sb.append(" ]").toString();
+    }
+}
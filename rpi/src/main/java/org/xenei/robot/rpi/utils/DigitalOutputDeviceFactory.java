@@ -1,8 +1,47 @@
 package org.xenei.robot.rpi.utils;
 
+import java.util.Arrays;
+
 import com.diozero.api.DigitalOutputDevice;
 
 @FunctionalInterface
 public interface DigitalOutputDeviceFactory {
     DigitalOutputDevice build(int gpio);
-}
\ No newline at end of file
+
+    /**
+     * Builds a port that writes the pins as one pattern. By default each pin is
+     * written with its own device.
+     *
+     * @param gpios the GPIO numbers of the pins, the first is bit 0.
+     * @return the output port.
+     */
+    default OutputPort buildPort(int... gpios) {
+        return new PinOutputPort(Arrays.stream(gpios).mapToObj(this::build).toArray(DigitalOutputDevice[]::new));
+    }
+
+    /**
+     * Creates a factory that builds ports written in one operation through the
+     * bank. Ports with a GPIO outside the bank fall back to per pin writes.
+     *
+     * @param factory the factory for the pin devices.
+     * @param bank the backend that writes the GPIOs.
+     * @return the factory.
+     */
+    static DigitalOutputDeviceFactory withBank(DigitalOutputDeviceFactory factory, GpioBank bank) {
+        return new DigitalOutputDeviceFactory() {
+            @Override
+            public DigitalOutputDevice build(int gpio) {
+                return factory.build(gpio);
+            }
+
+            @Override
+            public OutputPort buildPort(int... gpios) {
+                if (Arrays.stream(gpios).allMatch(g -> g >= 0 && g < Integer.SIZE)) {
+                    return new BankOutputPort(bank,
+                            Arrays.stream(gpios).mapToObj(this::build).toArray(DigitalOutputDevice[]::new));
+                }
+                return factory.buildPort(gpios);
+            }
+        };
+    }
+}
@@ -0,0 +1,16 @@
+package org.xenei.robot.rpi.utils;
+
+/**
+ * A backend that sets and clears GPIOs 0 to 31 in one operation, as the
+ * Broadcom set and clear registers do.
+ */
+@FunctionalInterface
+public interface GpioBank {
+    /**
+     * Sets and clears GPIOs. A GPIO in neither mask is unchanged.
+     *
+     * @param setMask bit n set to turn GPIO n on.
+     * @param clearMask bit n set to turn GPIO n off.
+     */
+    void write(int setMask, int clearMask);
+}
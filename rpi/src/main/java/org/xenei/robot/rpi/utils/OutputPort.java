@@ -0,0 +1,34 @@
+package org.xenei.robot.rpi.utils;
+
+/**
+ * A group of GPIO output pins written as a single pattern. Bit n of the
+ * pattern sets pin n of the port. Depending on the backend the pins change
+ * together in one operation or one after the other.
+ */
+public interface OutputPort extends AutoCloseable {
+
+    /**
+     * Gets the number of pins in the port.
+     *
+     * @return the number of pins.
+     */
+    int width();
+
+    /**
+     * Gets the GPIO number of a pin.
+     *
+     * @param pin the pin in the port, 0 for the first.
+     * @return the GPIO number.
+     */
+    int gpio(int pin);
+
+    /**
+     * Sets the pins of the port.
+     *
+     * @param bits the pattern, bit n is on for pin n to be on.
+     */
+    void write(int bits);
+
+    @Override
+    void close();
+}
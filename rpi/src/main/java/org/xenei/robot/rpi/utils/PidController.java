@@ -0,0 +1,89 @@
+package org.xenei.robot.rpi.utils;
+
+/**
+ * A proportional, integral, derivative controller. The derivative is taken on
+ * the error and the integral is clamped so that it can not wind up beyond the
+ * output limit. Not thread safe, each controlled process should use its own
+ * instance.
+ */
+public class PidController {
+
+    /**
+     * The gains for the controller.
+     */
+    public static class Gains {
+        /** the proportional gain */
+        public final double kp;
+        /** the integral gain */
+        public final double ki;
+        /** the derivative gain */
+        public final double kd;
+
+        /**
+         * Constructor.
+         *
+         * @param kp the proportional gain.
+         * @param ki the integral gain.
+         * @param kd the derivative gain.
+         */
+        public Gains(double kp, double ki, double kd) {
+            this.kp = kp;
+            this.ki = ki;
+            this.kd = kd;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Gains[kp:%s ki:%s kd:%s]", kp, ki, kd);
+        }
+    }
+
+    private final Gains gains;
+    private final double limit;
+    private double integral;
+    private double lastError;
+    private boolean first;
+
+    /**
+     * Constructor.
+     *
+     * @param gains the gains.
+     * @param limit the maximum absolute value of the output.
+     */
+    public PidController(Gains gains, double limit) {
+        this.gains = gains;
+        this.limit = Math.abs(limit);
+        reset();
+    }
+
+    /**
+     * Resets the integral and derivative history.
+     */
+    public void reset() {
+        integral = 0;
+        lastError = 0;
+        first = true;
+    }
+
+    /**
+     * Calculates the output for the error.
+     *
+     * @param error the difference between the set point and the measurement.
+     * @param dt the time since the last update in seconds.
+     * @return the output clamped to +/- the limit.
+     */
+    public double update(double error, double dt) {
+        double derivative = first || dt <= 0 ? 0 : (error - lastError) / dt;
+        first = false;
+        lastError = error;
+        if (dt > 0 && gains.ki != 0) {
+            double maxIntegral = limit / Math.abs(gains.ki);
+            integral = clamp(integral + error * dt, maxIntegral);
+        }
+        return clamp(gains.kp * error + gains.ki * integral + gains.kd * derivative, limit);
+    }
+
+    private static double clamp(double value, double max) {
+        return Math.max(-max, Math.min(max, value));
+    }
+}
@@ -0,0 +1,64 @@
+package org.xenei.robot.rpi.utils;
+
+import com.diozero.api.DigitalOutputDevice;
+
+/**
+ * An output port that writes each pin with its own device. Only the pins that
+ * differ from the last pattern are written, so a stepper pattern that changes
+ * one or two coils costs one or two GPIO calls rather than one per pin.
+ */
+public class PinOutputPort implements OutputPort {
+
+    private final DigitalOutputDevice[] pins;
+    /** the last pattern written, -1 until the first write so every pin is set */
+    private int current = -1;
+
+    /**
+     * Constructor.
+     *
+     * @param pins the devices for the pins, the first is bit 0.
+     */
+    public PinOutputPort(DigitalOutputDevice... pins) {
+        if (pins.length > Integer.SIZE - 1) {
+            throw new IllegalArgumentException("Too many pins for a port: " + pins.length);
+        }
+        this.pins = pins.clone();
+    }
+
+    @Override
+    public int width() {
+        return pins.length;
+    }
+
+    @Override
+    public int gpio(int pin) {
+        return pins[pin].getGpio();
+    }
+
+    @Override
+    public synchronized void write(int bits) {
+        int changed = current < 0 ? -1 : current ^ bits;
+        for (int i = 0; i < pins.length; i++) {
+            if ((changed & (1 << i)) != 0) {
+                pins[i].setOn((bits & (1 << i)) != 0);
+            }
+        }
+        current = bits & ((1 << pins.length) - 1);
+    }
+
+    @Override
+    public void close() {
+        for (DigitalOutputDevice pin : pins) {
+            pin.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("PinOutputPort[");
+        for (DigitalOutputDevice pin : pins) {
+            sb.append(' ').append(pin.getGpio());
+        }
+        return sb.append(" ]").toString();
+    }
+}
@@ -1,19 +1,26 @@
 package org.xenei.robot.rpi;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Stream;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
+import org.mockito.Mockito;
 import org.xenei.robot.common.Location;
 import org.xenei.robot.common.ScaleInfo;
 import org.xenei.robot.common.utils.AngleUtils;
+import org.xenei.robot.rpi.sensors.MMC3416xPJ;
+import org.xenei.robot.rpi.sensors.MMC3416xPJ.Axis;
 
 public class CompassImplTest {
 
@@ -44,4 +51,53 @@ public class CompassImplTest {
         System.out.println( info.decimalPlaces() );
         System.out.println( info.round(0.123456789));
     }
+
+    private static MMC3416xPJ.Values values(float x, float y) {
+        MMC3416xPJ.Values values = Mockito.mock(MMC3416xPJ.Values.class);
+        when(values.getAxisValue(Axis.X)).thenReturn(x);
+        when(values.getAxisValue(Axis.Y)).thenReturn(y);
+        return values;
+    }
+
+    @Test
+    public void snapshotTest() throws InterruptedException {
+        AtomicReference<MMC3416xPJ.Values> reading = new AtomicReference<>(values(-1, 0));
+        // sample manually, the scheduled sample does not run during the test.
+        try (CompassImpl underTest = new CompassImpl(reading::get, TimeUnit.HOURS.toMillis(1))) {
+            assertEquals(CompassImpl.heading(-1, 0), underTest.heading(), 0.01);
+            assertEquals(underTest.heading(), underTest.instantaneousHeading());
+            assertEquals(0, underTest.sd());
+
+            reading.set(values(0, -1));
+            underTest.sample();
+            assertEquals(CompassImpl.heading(0, -1), underTest.instantaneousHeading(), 0.01);
+            // the average of the two samples.
+            assertEquals(CompassImpl.heading(-1, -1), underTest.heading(), 0.01);
+            assertTrue(underTest.sd() > 0);
+
+            // the oldest samples drop out of the average.
+            for (int i = 0; i < 10; i++) {
+                underTest.sample();
+            }
+            assertEquals(CompassImpl.heading(0, -1), underTest.heading(), 0.01);
+            assertEquals(0, underTest.sd());
+
+            Thread.sleep(20);
+            assertTrue(underTest.sampleAge(TimeUnit.MILLISECONDS) >= 20);
+            underTest.sample();
+            assertTrue(underTest.sampleAge(TimeUnit.MILLISECONDS) < 20);
+        }
+    }
+
+    @Test
+    public void samplerErrorTest() {
+        AtomicReference<MMC3416xPJ.Values> reading = new AtomicReference<>(values(-1, 0));
+        try (CompassImpl underTest = new CompassImpl(reading::get, TimeUnit.HOURS.toMillis(1))) {
+            double heading = underTest.heading();
+            reading.set(null);
+            // the null reading throws in the sampler which must keep the last snapshot.
+            underTest.sample();
+            assertEquals(heading, underTest.heading());
+        }
+    }
 }
@@ -1,12 +1,18 @@
 package org.xenei.robot.rpi;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 import static org.mockito.Mockito.mock;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
 
 import org.apache.commons.lang3.NotImplementedException;
@@ -18,6 +24,8 @@ import org.locationtech.jts.geom.Coordinate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xenei.robot.common.Compass;
+import org.xenei.robot.common.Location;
+import org.xenei.robot.common.Position;
 import org.xenei.robot.common.ScaleInfo;
 import org.xenei.robot.rpi.testUtils.CoordinateUtils;
 import org.xenei.robot.rpi.testUtils.TestChassisInfo;
@@ -50,8 +58,9 @@ public class RpiMoverTest {
         underTest.setHeading(angle);
         assertTrue(DoubleUtils.eq( angle, underTest.position().getHeading(), 0.01));
         CoordinateUtils.assertEquivalent(coords, underTest.position().getCoordinate(), 0.01);
-        assertEquals(2, left.runCount);
-        assertEquals(2, right.runCount);
+        // the heading controller issues a burst of steps on each tick until the heading is reached.
+        assertTrue(left.pulseCount > 0);
+        assertEquals(left.pulseCount, right.pulseCount);
         if (radiusFactor < 1.0)
         {
             assertTrue(underTest.getHeadingFactor() > TestChassisInfo.DEFAULT.radius);
@@ -85,11 +94,165 @@ public class RpiMoverTest {
         assertEquals( 0, underTest.position().getHeading());
         assertTrue(DoubleUtils.eq( 0, underTest.position().getHeading(), 0.01));
         assertEquals(coords, underTest.position().getCoordinate());
-        assertEquals(0, left.runCount);
-        assertEquals(0, right.runCount);
+        assertEquals(0, left.pulseCount);
+        assertEquals(0, right.pulseCount);
         assertEquals(TestChassisInfo.DEFAULT.radius, underTest.getHeadingFactor());
     }
     
+    @Test
+    public void setHeadingAsyncTest_Zero() throws Exception {
+        TestingCompass compass = new TestingCompass(0);
+
+        RobutContext ctxt = new RobutContext(ScaleInfo.DEFAULT, TestChassisInfo.DEFAULT);
+        TestingMotor left = new TestingMotor(1, TestChassisInfo.DEFAULT.radius, compass);
+        TestingMotor right = new TestingMotor(-1, TestChassisInfo.DEFAULT.radius, compass);
+        Coordinate coords = new Coordinate(0, 0);
+        underTest = new RpiMover(ctxt, compass, coords, left, right);
+
+        Position result = underTest.setHeadingAsync(0, null).get(5, TimeUnit.SECONDS);
+        assertEquals(0, result.getHeading());
+        assertEquals(coords, result.getCoordinate());
+        assertEquals(0, left.pulseCount);
+        assertEquals(0, right.pulseCount);
+    }
+
+    @Test
+    public void moveAsyncTest() throws Exception {
+        TestingCompass compass = new TestingCompass(0);
+
+        RobutContext ctxt = new RobutContext(ScaleInfo.DEFAULT, TestChassisInfo.DEFAULT);
+        TestingMotor left = new TestingMotor(1, TestChassisInfo.DEFAULT.radius, compass);
+        TestingMotor right = new TestingMotor(-1, TestChassisInfo.DEFAULT.radius, compass);
+        Coordinate coords = new Coordinate(0, 0);
+        underTest = new RpiMover(ctxt, compass, coords, left, right);
+
+        List<Double> fractions = new CopyOnWriteArrayList<>();
+        Position result = underTest.moveAsync(Location.from(0.5, 0), (fraction, position) -> fractions.add(fraction))
+                .get(10, TimeUnit.SECONDS);
+        CoordinateUtils.assertEquivalent(new Coordinate(0.5, 0), result.getCoordinate(), 0.01);
+        assertEquals(left.pulseCount, right.pulseCount);
+        // progress is reported while the motors run and once when they stop.
+        assertTrue(fractions.size() > 2);
+        for (int i = 1; i < fractions.size(); i++) {
+            assertTrue(fractions.get(i) >= fractions.get(i - 1));
+        }
+        assertEquals(1.0, fractions.get(fractions.size() - 1));
+    }
+
+    @Test
+    public void moveAsyncCancelTest() throws Exception {
+        TestingCompass compass = new TestingCompass(0);
+
+        RobutContext ctxt = new RobutContext(ScaleInfo.DEFAULT, TestChassisInfo.DEFAULT);
+        TestingMotor left = new TestingMotor(1, TestChassisInfo.DEFAULT.radius, compass);
+        TestingMotor right = new TestingMotor(-1, TestChassisInfo.DEFAULT.radius, compass);
+        Coordinate coords = new Coordinate(0, 0);
+        underTest = new RpiMover(ctxt, compass, coords, left, right);
+
+        CountDownLatch moving = new CountDownLatch(1);
+        CompletableFuture<Position> result = underTest.moveAsync(Location.from(2, 0), (fraction, position) -> {
+            if (fraction > 0) {
+                moving.countDown();
+            }
+        });
+        assertTrue(moving.await(10, TimeUnit.SECONDS));
+        assertTrue(result.cancel(true));
+        assertThrows(CancellationException.class, () -> result.get(10, TimeUnit.SECONDS));
+
+        // the controller runs operations in order so this waits for the cancelled move to stop.
+        Position stopped = underTest.setHeadingAsync(0, null).get(10, TimeUnit.SECONDS);
+        int pulses = left.pulseCount;
+        assertTrue(stopped.getX() > 0);
+        assertTrue(stopped.getX() < 1.9, () -> "Move did not stop: " + stopped);
+        assertEquals(pulses, right.pulseCount);
+        Thread.sleep(100);
+        assertEquals(pulses, left.pulseCount, "Motors still running after cancel");
+    }
+
+    @Test
+    public void syncAfterAsyncTest() throws Exception {
+        TestingCompass compass = new TestingCompass(0);
+
+        RobutContext ctxt = new RobutContext(ScaleInfo.DEFAULT, TestChassisInfo.DEFAULT);
+        TestingMotor left = new TestingMotor(1, TestChassisInfo.DEFAULT.radius, compass);
+        TestingMotor right = new TestingMotor(-1, TestChassisInfo.DEFAULT.radius, compass);
+        Coordinate coords = new Coordinate(0, 0);
+        underTest = new RpiMover(ctxt, compass, coords, left, right);
+
+        // the synchronous move is queued behind the asynchronous one rather than
+        // driving the motors at the same time.
+        CompletableFuture<Position> first = underTest.moveAsync(Location.from(0.5, 0), null);
+        Position second = underTest.move(Location.from(0.5, 0));
+        assertTrue(first.isDone());
+        CoordinateUtils.assertEquivalent(new Coordinate(0.5, 0), first.get().getCoordinate(), 0.01);
+        CoordinateUtils.assertEquivalent(new Coordinate(1.0, 0), second.getCoordinate(), 0.01);
+    }
+
+    @Test
+    public void setHeadingLaggingCompassTest() throws InterruptedException {
+        LaggingCompass compass = new LaggingCompass(0);
+
+        RobutContext ctxt = new RobutContext(ScaleInfo.DEFAULT, TestChassisInfo.DEFAULT);
+        TestingMotor left = new TestingMotor(1, TestChassisInfo.DEFAULT.radius, compass);
+        TestingMotor right = new TestingMotor(-1, TestChassisInfo.DEFAULT.radius, compass);
+        Coordinate coords = new Coordinate(0, 0);
+        underTest = new RpiMover(ctxt, compass, coords, left, right);
+
+        underTest.setHeading(AngleUtils.RADIANS_45);
+        assertTrue(DoubleUtils.eq(AngleUtils.RADIANS_45, compass.heading, 0.01),
+                () -> "Turn did not stop at the heading: " + compass.heading);
+        assertEquals(0, compass.reversals, "Turn oscillated");
+    }
+
+    /**
+     * A compass that only reports a new heading once per sample period, like the
+     * background sampling compass, and counts the changes of turn direction.
+     */
+    class LaggingCompass extends TestingCompass {
+        private final long periodNanos = TimeUnit.MILLISECONDS.toNanos(CompassImpl.DEFAULT_PERIOD_MILLIS);
+        private double sampled;
+        private long sampleTime;
+        private double lastIncrement;
+        int reversals;
+
+        LaggingCompass(double heading) {
+            super(heading);
+            sampled = heading;
+            sampleTime = System.nanoTime();
+        }
+
+        private synchronized void sample() {
+            long now = System.nanoTime();
+            if (now - sampleTime >= periodNanos) {
+                sampled = heading;
+                sampleTime = now;
+            }
+        }
+
+        @Override
+        public synchronized double heading() {
+            sample();
+            return sampled;
+        }
+
+        @Override
+        public synchronized long sampleTime() {
+            sample();
+            return sampleTime;
+        }
+
+        @Override
+        public synchronized void increment(double value) {
+            if (value * lastIncrement < 0) {
+                reversals++;
+            }
+            if (value != 0) {
+                lastIncrement = value;
+            }
+            super.increment(value);
+        }
+    }
+
     class TestingCompass implements Compass {
         double heading;
         
@@ -122,6 +285,7 @@ public class RpiMoverTest {
         TestingCompass compass;
         int positiveAngleFactor;
         int runCount = 0;
+        volatile int pulseCount = 0;
         
         public TestingMotor(int positiveAngleFactor, double angleFactor, TestingCompass compass) {
             this.angleFactor = angleFactor;
@@ -158,6 +322,13 @@ public class RpiMoverTest {
             return 360;
         }
 
+        @Override
+        public void pulse(boolean fwd) {
+            ++pulseCount;
+            double scale = angleFactor / TestChassisInfo.DEFAULT.radius;
+            compass.increment(positiveAngleFactor * Math.toRadians(0.5) * scale * (fwd ? 1 : -1));
+        }
+
         @Override
         public void stop() {
             // TODO Auto-generated method stub
@@ -0,0 +1,278 @@
+package org.xenei.robot.rpi.drivers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public class CoordinatedRunTest {
+
+    /** a pulse on a motor at a tick */
+    private static class Pulse {
+        final int motor;
+        final boolean fwd;
+        final long timestamp;
+
+        Pulse(int motor, boolean fwd) {
+            this.motor = motor;
+            this.fwd = fwd;
+            this.timestamp = System.nanoTime();
+        }
+    }
+
+    private static class RecordingMotor implements Motor {
+        private final int id;
+        private final List<Pulse> pulses;
+        private final double maxAcceleration;
+        private final double pullInRate;
+
+        RecordingMotor(int id, List<Pulse> pulses) {
+            this(id, pulses, Double.POSITIVE_INFINITY);
+        }
+
+        /** a motor that ramps from rest so the ramp is easy to time */
+        RecordingMotor(int id, List<Pulse> pulses, double maxAcceleration) {
+            this(id, pulses, maxAcceleration, 0);
+        }
+
+        RecordingMotor(int id, List<Pulse> pulses, double maxAcceleration, double pullInRate) {
+            this.id = id;
+            this.pulses = pulses;
+            this.maxAcceleration = maxAcceleration;
+            this.pullInRate = pullInRate;
+        }
+
+        @Override
+        public double maxAcceleration() {
+            return maxAcceleration;
+        }
+
+        @Override
+        public double pullInRate() {
+            return pullInRate;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public boolean active() {
+            return false;
+        }
+
+        @Override
+        public SteppingStatus prepareRun(int steps, int rpm) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public double stepsPerRotation() {
+            return 60;
+        }
+
+        @Override
+        public void pulse(boolean fwd) {
+            pulses.add(new Pulse(id, fwd));
+        }
+
+        @Override
+        public void stop() {
+        }
+    }
+
+    private final List<Pulse> pulses = new CopyOnWriteArrayList<>();
+    private final Motor[] motors = { new RecordingMotor(0, pulses), new RecordingMotor(1, pulses) };
+
+    private long count(int motor) {
+        return pulses.stream().filter(p -> p.motor == motor).count();
+    }
+
+    @Test
+    public void equalStepsTest() throws Exception {
+        // 60 steps per rotation at 600 rpm is 600 steps a second.
+        CoordinatedRun underTest = new CoordinatedRun(motors, new int[] { 20, -20 }, 600);
+        underTest.call();
+        assertEquals(40, pulses.size());
+        // the motors are pulsed together on each tick.
+        for (int i = 0; i < pulses.size(); i += 2) {
+            assertEquals(0, pulses.get(i).motor);
+            assertTrue(pulses.get(i).fwd);
+            assertEquals(1, pulses.get(i + 1).motor);
+            assertFalse(pulses.get(i + 1).fwd);
+        }
+        assertEquals(20, underTest.fwdSteps(0));
+        assertEquals(-20, underTest.fwdSteps(1));
+        assertEquals(-20 / 60.0, underTest.fwdRotation(1), 0.000001);
+        assertNotNull(underTest.jitter());
+        assertEquals(20, underTest.jitter().pulses);
+    }
+
+    @Test
+    public void unequalStepsTest() throws Exception {
+        CoordinatedRun underTest = new CoordinatedRun(motors, new int[] { 7, 30 }, 600);
+        underTest.call();
+        assertEquals(7, count(0));
+        assertEquals(30, count(1));
+        assertEquals(7, underTest.fwdSteps(0));
+        assertEquals(30, underTest.fwdSteps(1));
+        // the minor motor pulses are spread evenly across the major motor pulses.
+        int major = 0;
+        int last = -1;
+        for (Pulse p : pulses) {
+            if (p.motor == 1) {
+                major++;
+            } else {
+                if (last >= 0) {
+                    int gap = major - last;
+                    assertTrue(gap == 4 || gap == 5, () -> "uneven gap " + gap);
+                }
+                last = major;
+            }
+        }
+    }
+
+    @Test
+    public void timingTest() throws Exception {
+        // 60 steps per rotation at 100 rpm is a step every 10 ms.
+        CoordinatedRun underTest = new CoordinatedRun(motors, new int[] { 11, 11 }, 100);
+        underTest.call();
+        long elapsed = pulses.get(pulses.size() - 1).timestamp - pulses.get(0).timestamp;
+        long expected = TimeUnit.MILLISECONDS.toNanos(100);
+        assertTrue(Math.abs(elapsed - expected) < TimeUnit.MILLISECONDS.toNanos(10),
+                () -> String.format("expected %s was %s", expected, elapsed));
+    }
+
+    @Test
+    public void rampTest() throws Exception {
+        // 60 steps per rotation at 600 rpm is 600 steps a second, reached after 90 steps at 2000 steps/s^2.
+        Motor[] ramped = { new RecordingMotor(0, pulses, 2000), new RecordingMotor(1, pulses, 4000) };
+        int steps = 200;
+        CoordinatedRun underTest = new CoordinatedRun(ramped, new int[] { steps, steps / 2 }, 600);
+        underTest.call();
+        assertEquals(steps, count(0));
+        assertEquals(steps / 2, count(1));
+        List<Long> times = pulses.stream().filter(p -> p.motor == 0).map(p -> p.timestamp).toList();
+        long first = times.get(1) - times.get(0);
+        long middle = times.get(steps / 2) - times.get(steps / 2 - 1);
+        long last = times.get(steps - 1) - times.get(steps - 2);
+        // the ramp uses the lower acceleration, the first interval is 1/sqrt(4000) s.
+        assertTrue(first > TimeUnit.MILLISECONDS.toNanos(12), () -> "first " + first);
+        assertTrue(last > TimeUnit.MILLISECONDS.toNanos(12), () -> "last " + last);
+        assertTrue(middle < TimeUnit.MILLISECONDS.toNanos(4), () -> "middle " + middle);
+    }
+
+    @Test
+    public void followTest() throws Exception {
+        // 60 steps per rotation at 100 rpm is a step every 10 ms.
+        CoordinatedRun first = new CoordinatedRun(motors, new int[] { 3, 3 }, 100);
+        first.call();
+        CoordinatedRun second = new CoordinatedRun(motors, new int[] { 3, 3 }, 100, first);
+        second.call();
+        assertEquals(12, pulses.size());
+        // the first pulse of the second run waits a full interval after the last of the first.
+        long gap = pulses.get(6).timestamp - pulses.get(5).timestamp;
+        assertTrue(gap >= TimeUnit.MILLISECONDS.toNanos(9), () -> "gap " + gap);
+    }
+
+    @Test
+    public void pullInTest() throws Exception {
+        // the lowest pull in rate is 300 steps/s so the first interval is 1/sqrt(300^2 + 4000) s, about 3.3 ms.
+        Motor[] ramped = { new RecordingMotor(0, pulses, 2000, 300), new RecordingMotor(1, pulses, 2000, 400) };
+        int steps = 20;
+        CoordinatedRun underTest = new CoordinatedRun(ramped, new int[] { steps, steps }, 600);
+        underTest.call();
+        List<Long> times = pulses.stream().filter(p -> p.motor == 0).map(p -> p.timestamp).toList();
+        long first = times.get(1) - times.get(0);
+        long last = times.get(steps - 1) - times.get(steps - 2);
+        assertTrue(first > TimeUnit.MILLISECONDS.toNanos(2), () -> "first " + first);
+        assertTrue(first < TimeUnit.MILLISECONDS.toNanos(5), () -> "first " + first);
+        // the run slows to the pull in rate rather than to rest.
+        assertTrue(last < TimeUnit.MILLISECONDS.toNanos(5), () -> "last " + last);
+    }
+
+    @Test
+    public void burstTest() throws Exception {
+        // starting from rest at 2000 steps/s^2 the first interval is 1/sqrt(4000) s, about 16 ms.
+        Motor[] ramped = { new RecordingMotor(0, pulses, 2000), new RecordingMotor(1, pulses, 2000) };
+        CoordinatedRun run = null;
+        for (int i = 0; i < 3; i++) {
+            run = new CoordinatedRun(ramped, new int[] { 20, -20 }, 600, run, false);
+            run.call();
+        }
+        // the controller asks for a lower rate, 60 steps per rotation at 100 rpm is a step every 10 ms.
+        run = new CoordinatedRun(ramped, new int[] { 5, -5 }, 100, run, false);
+        run.call();
+        List<Long> times = pulses.stream().filter(p -> p.motor == 0).map(p -> p.timestamp).toList();
+        assertEquals(65, times.size());
+        // each burst continues at the rate the last one ended at rather than restarting the ramp.
+        for (int i = 20; i < 60; i++) {
+            long interval = times.get(i) - times.get(i - 1);
+            assertTrue(interval < TimeUnit.MILLISECONDS.toNanos(8), () -> "restarted " + interval);
+        }
+        for (int i = 60; i < 65; i++) {
+            long interval = times.get(i) - times.get(i - 1);
+            assertTrue(interval > TimeUnit.MILLISECONDS.toNanos(9), () -> "too fast " + interval);
+            assertTrue(interval < TimeUnit.MILLISECONDS.toNanos(12), () -> "restarted " + interval);
+        }
+        assertEquals(100, run.endRate(), 0.000001);
+    }
+
+    @Test
+    public void burstReverseTest() throws Exception {
+        Motor[] ramped = { new RecordingMotor(0, pulses, 2000), new RecordingMotor(1, pulses, 2000) };
+        CoordinatedRun first = new CoordinatedRun(ramped, new int[] { 20, -20 }, 600, null, false);
+        first.call();
+        assertTrue(first.endRate() > 0);
+        // a burst in the other direction starts from rest.
+        CoordinatedRun second = new CoordinatedRun(ramped, new int[] { -20, 20 }, 600, first, false);
+        second.call();
+        List<Long> times = pulses.stream().filter(p -> p.motor == 0).map(p -> p.timestamp).toList();
+        long interval = times.get(21) - times.get(20);
+        assertTrue(interval > TimeUnit.MILLISECONDS.toNanos(12), () -> "interval " + interval);
+    }
+
+    @Test
+    public void haltTest() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // a step every 10 ms.
+            CoordinatedRun underTest = new CoordinatedRun(motors, new int[] { 1000, -500 }, 100);
+            Future<CoordinatedRun> future = executor.submit(underTest);
+            TimeUnit.MILLISECONDS.sleep(100);
+            underTest.halt();
+            assertFalse(underTest.isRunning());
+            future.get(1, TimeUnit.SECONDS);
+            // the counts are final when halt returns.
+            assertEquals(count(0), underTest.fwdSteps(0));
+            assertEquals(-count(1), underTest.fwdSteps(1));
+            assertTrue(underTest.fwdSteps(0) > 0 && underTest.fwdSteps(0) < 1000);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void haltBeforeStartTest() throws Exception {
+        CoordinatedRun underTest = new CoordinatedRun(motors, new int[] { 10, 10 }, 600);
+        underTest.halt();
+        underTest.call();
+        assertTrue(pulses.isEmpty());
+        assertEquals(0, underTest.fwdSteps(0));
+    }
+
+    @Test
+    public void mismatchTest() {
+        assertThrows(IllegalArgumentException.class, () -> new CoordinatedRun(motors, new int[] { 10 }, 600));
+    }
+}
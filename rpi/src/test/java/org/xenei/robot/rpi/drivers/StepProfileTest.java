@@ -0,0 +1,137 @@
+package org.xenei.robot.rpi.drivers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+public class StepProfileTest {
+
+    /** the steps per rotation of the 28BYJ48 */
+    private static final double STEPS_PER_ROTATION = 360 / ULN2003.STEPPER_28BYJ48;
+    /** the rate the simulated motor can start at from rest, steps/s */
+    private static final double PULL_IN = STEPS_PER_ROTATION * Motor.DEFAULT_PULL_IN_RPM / 60;
+    /** the acceleration the simulated motor can follow, steps/s^2 */
+    private static final double MOTOR_ACCELERATION = 50000;
+    /** the profile acceleration, leaves a margin below the motor */
+    private static final double ACCELERATION = ULN2003.DEFAULT_MAX_ACCELERATION;
+    /** the cruise rate, twice the pull in rate */
+    private static final long CRUISE_NANOS = Math.round(TimeUnit.MINUTES.toNanos(1)
+            / (STEPS_PER_ROTATION * Motor.MAX_RPM));
+    /** the steps in a 1 meter move on an 8 cm wheel, 4096 / (0.08 * pi) */
+    private static final int MOVE_STEPS = 16297;
+
+    /**
+     * Simulates the rotor of a stepper following a run. The rotor follows a step
+     * if the step rate is below the pull in rate or within the change in speed
+     * the rotor can make in the step interval. From rest the rotor can start at
+     * the pull in rate. Otherwise the rotor slips, the step is lost and the rotor
+     * stalls.
+     *
+     * @param profile the profile to run.
+     * @param steps the number of steps commanded.
+     * @return the number of steps the rotor followed.
+     */
+    private static int simulate(StepProfile profile, int steps) {
+        double speed = 0;
+        int followed = 0;
+        for (int i = 0; i < steps; i++) {
+            // the first step is commanded from rest at the rate of the second.
+            long interval = profile.intervalNanos(Math.max(1, i));
+            double rate = TimeUnit.SECONDS.toNanos(1) / (double) interval;
+            double dt = interval / (double) TimeUnit.SECONDS.toNanos(1);
+            if (rate <= PULL_IN || Math.abs(rate - Math.max(speed, PULL_IN)) <= MOTOR_ACCELERATION * dt) {
+                speed = rate;
+                followed++;
+            } else {
+                speed = 0;
+            }
+        }
+        return followed;
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { 2, 5, 50, 500, 5000, MOVE_STEPS })
+    public void rampPreservesStepsTest(int steps) {
+        StepProfile profile = new StepProfile(steps, CRUISE_NANOS, ACCELERATION, PULL_IN);
+        assertEquals(steps, simulate(profile, steps));
+    }
+
+    @Test
+    public void constantRateLosesStepsTest() {
+        int steps = 500;
+        StepProfile profile = new StepProfile(steps, CRUISE_NANOS, Double.POSITIVE_INFINITY, PULL_IN);
+        assertTrue(simulate(profile, steps) < steps);
+    }
+
+    @Test
+    public void profileShapeTest() {
+        int steps = MOVE_STEPS;
+        StepProfile profile = new StepProfile(steps, CRUISE_NANOS, ACCELERATION, PULL_IN);
+        assertEquals(0, profile.intervalNanos(0));
+        // the ramp is symmetric and starts at the pull in rate.
+        assertEquals(profile.rate(1), profile.rate(steps - 1), 0.000001);
+        assertEquals(Math.sqrt(PULL_IN * PULL_IN + 2 * ACCELERATION), profile.rate(1), 0.000001);
+        // the middle of a typical move is at the cruise rate.
+        assertEquals(CRUISE_NANOS, profile.intervalNanos(steps / 2));
+        for (int i = 2; i < steps / 2; i++) {
+            assertTrue(profile.rate(i) >= profile.rate(i - 1));
+        }
+        // cruising above the pull in rate beats running the whole move at the pull in rate.
+        long pullInNanos = Math.round(steps / PULL_IN * TimeUnit.SECONDS.toNanos(1));
+        assertTrue(profile.durationNanos() < pullInNanos * 0.7,
+                () -> String.format("%s not faster than %s", profile.durationNanos(), pullInNanos));
+    }
+
+    @Test
+    public void shortRunTest() {
+        // too short to reach the cruise rate.
+        StepProfile profile = new StepProfile(50, CRUISE_NANOS, ACCELERATION, PULL_IN);
+        for (int i = 1; i < 50; i++) {
+            assertTrue(profile.intervalNanos(i) > CRUISE_NANOS);
+        }
+        assertTrue(profile.rate(25) > profile.rate(1));
+    }
+
+    @Test
+    public void pullInCruiseTest() {
+        // a cruise rate below the pull in rate is run without a ramp.
+        long cruiseNanos = Math.round(TimeUnit.SECONDS.toNanos(1) / (PULL_IN / 2));
+        StepProfile profile = new StepProfile(20, cruiseNanos, ACCELERATION, PULL_IN);
+        for (int i = 1; i < 20; i++) {
+            assertEquals(cruiseNanos, profile.intervalNanos(i));
+        }
+    }
+
+    @Test
+    public void noRampTest() {
+        StepProfile profile = new StepProfile(-20, CRUISE_NANOS, Double.POSITIVE_INFINITY, PULL_IN);
+        for (int i = 1; i < 20; i++) {
+            assertEquals(CRUISE_NANOS, profile.intervalNanos(i));
+        }
+    }
+
+    @Test
+    public void carriedRateTest() {
+        int steps = 20;
+        double carried = PULL_IN * 1.5;
+        StepProfile profile = new StepProfile(steps, CRUISE_NANOS, ACCELERATION, PULL_IN, carried,
+                Double.POSITIVE_INFINITY);
+        // the run continues from the start rate and does not slow down at the end.
+        assertEquals(Math.sqrt(carried * carried + 2 * ACCELERATION), profile.rate(1), 0.000001);
+        for (int i = 2; i < steps; i++) {
+            assertTrue(profile.rate(i) > profile.rate(i - 1));
+        }
+        assertEquals(Math.sqrt(carried * carried + 2 * ACCELERATION * steps), profile.endRate(), 0.000001);
+        assertEquals(Math.round(TimeUnit.SECONDS.toNanos(1) / profile.rate(1)), profile.startIntervalNanos());
+        // a carried rate below the pull in rate starts at the pull in rate.
+        profile = new StepProfile(steps, CRUISE_NANOS, ACCELERATION, PULL_IN, PULL_IN / 2, Double.POSITIVE_INFINITY);
+        assertEquals(Math.sqrt(PULL_IN * PULL_IN + 2 * ACCELERATION), profile.rate(1), 0.000001);
+        // a run that ends at rest.
+        assertEquals(0, new StepProfile(steps, CRUISE_NANOS, ACCELERATION, PULL_IN).endRate());
+    }
+}
@@ -0,0 +1,82 @@
+package org.xenei.robot.rpi.drivers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public class StepSchedulerTest {
+
+    private static final long PERIOD = TimeUnit.MILLISECONDS.toNanos(5);
+
+    @Test
+    public void deadlineTest() throws InterruptedException {
+        StepScheduler underTest = new StepScheduler(PERIOD);
+        int pulses = 40;
+        underTest.start();
+        long start = System.nanoTime();
+        for (int i = 0; i < pulses; i++) {
+            underTest.awaitNext();
+            // time spent driving the pins does not push out later deadlines.
+            TimeUnit.MILLISECONDS.sleep(1);
+        }
+        long elapsed = System.nanoTime() - start;
+        long expected = (pulses - 1) * PERIOD + TimeUnit.MILLISECONDS.toNanos(1);
+        assertTrue(elapsed >= expected - PERIOD, () -> "too fast " + elapsed);
+        assertTrue(elapsed < expected + 4 * PERIOD, () -> "drifted " + elapsed);
+    }
+
+    @Test
+    public void jitterTest() throws InterruptedException {
+        StepScheduler underTest = new StepScheduler(PERIOD);
+        assertEquals(0, underTest.jitter().pulses);
+        underTest.start();
+        for (int i = 0; i < 10; i++) {
+            underTest.awaitNext();
+        }
+        StepScheduler.Jitter jitter = underTest.jitter();
+        assertEquals(10, jitter.pulses);
+        assertTrue(jitter.maxNanos >= jitter.meanNanos);
+        assertTrue(jitter.meanNanos >= 0);
+
+        underTest.start();
+        assertEquals(0, underTest.jitter().pulses);
+    }
+
+    @Test
+    public void lateTest() throws InterruptedException {
+        StepScheduler underTest = new StepScheduler(PERIOD);
+        underTest.start();
+        TimeUnit.MILLISECONDS.sleep(3);
+        // the first pulse was due at the start.
+        underTest.awaitNext();
+        assertTrue(underTest.jitter().maxNanos >= TimeUnit.MILLISECONDS.toNanos(3));
+    }
+
+    @Test
+    public void startAfterTest() throws InterruptedException {
+        StepScheduler underTest = new StepScheduler(PERIOD);
+        long earliest = System.nanoTime() + PERIOD;
+        underTest.start(earliest);
+        underTest.awaitNext();
+        assertTrue(System.nanoTime() - earliest >= 0);
+        assertTrue(underTest.lastPulseNanos() - earliest >= 0);
+        // a time that has passed is due at once.
+        underTest.start(earliest);
+        long start = System.nanoTime();
+        underTest.awaitNext();
+        assertTrue(System.nanoTime() - start < PERIOD);
+    }
+
+    @Test
+    public void interruptTest() {
+        Thread.currentThread().interrupt();
+        assertThrows(InterruptedException.class,
+                () -> StepScheduler.waitUntil(System.nanoTime() + TimeUnit.SECONDS.toNanos(1)));
+        assertFalse(Thread.currentThread().isInterrupted());
+    }
+}
@@ -1,7 +1,11 @@
 package org.xenei.robot.rpi.drivers;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.FutureTask;
 
@@ -16,24 +20,74 @@ import org.xenei.robot.rpi.utils.TestingDigitalOutputDeviceFactory.DeviceListene
 
 public class ULN2003Tests {
 
-//    static DigitalOutputDeviceFactory orig;
-//
-//    static TestingDigitalOutputDeviceFactory factory = new TestingDigitalOutputDeviceFactory();
-//
-//    @BeforeAll
-//    public static void setup() {
-//        orig = ULN2003.setDigitalOutputDeviceFactory(factory);
-//    }
-//
-//    @AfterAll
-//    public static void teardown() {
-//        ULN2003.setDigitalOutputDeviceFactory(orig);
-//    }
-//
-//    @BeforeEach
-//    public void setupRun() {
-//        factory.reset();
-//    }
+    static DigitalOutputDeviceFactory orig;
+
+    static TestingDigitalOutputDeviceFactory factory = new TestingDigitalOutputDeviceFactory();
+
+    @BeforeAll
+    public static void setup() {
+        orig = ULN2003.setDigitalOutputDeviceFactory(factory);
+    }
+
+    @AfterAll
+    public static void teardown() {
+        ULN2003.setDigitalOutputDeviceFactory(orig);
+    }
+
+    @BeforeEach
+    public void setupRun() {
+        factory.reset();
+    }
+
+    @Test
+    public void pulseTimingTest() throws Exception {
+        // half step changes a pin on every step.
+        ULN2003 motor = new ULN2003(Mode.HALF_STEP, ULN2003.STEPPER_28BYJ48, 17, 27, 22, 23);
+        // constant rate so the pulses are evenly spaced.
+        motor.setMaxAcceleration(Double.POSITIVE_INFINITY);
+        List<Long> timestamps = new CopyOnWriteArrayList<>();
+        DeviceListener listener = (gpio, state) -> timestamps.add(System.nanoTime());
+        factory.getDevices().forEach(d -> d.register(listener));
+
+        int steps = 20;
+        ULN2003.SteppingStatusImpl status = motor.prepareRun(steps, 2);
+        long period = status.nanosPerStep();
+        status.call();
+        assertEquals(steps, status.fwdSteps());
+        assertEquals(steps, status.jitter().pulses);
+
+        // each step changes several pins within microseconds, keep the first change of each step.
+        List<Long> pulses = new ArrayList<>();
+        for (long t : timestamps) {
+            if (pulses.isEmpty() || t - pulses.get(pulses.size() - 1) > period / 2) {
+                pulses.add(t);
+            }
+        }
+        assertEquals(steps, pulses.size());
+        long elapsed = pulses.get(steps - 1) - pulses.get(0);
+        long expected = (steps - 1) * period;
+        assertTrue(Math.abs(elapsed - expected) < period, () -> String.format("expected %s was %s", expected, elapsed));
+    }
+
+    @Test
+    public void bankWriteTest() throws Exception {
+        List<Integer> sets = new CopyOnWriteArrayList<>();
+        ULN2003.setDigitalOutputDeviceFactory(DigitalOutputDeviceFactory.withBank(factory, (set, clear) -> {
+            // every coil is either set or cleared in each write.
+            assertEquals((1 << 17) | (1 << 27) | (1 << 22) | (1 << 23), set | clear);
+            sets.add(set);
+        }));
+        try {
+            ULN2003 motor = new ULN2003(Mode.FULL_STEP, ULN2003.STEPPER_28BYJ48, 17, 27, 22, 23);
+            motor.setMaxAcceleration(Double.POSITIVE_INFINITY);
+            sets.clear();
+            motor.prepareRun(8, 60).call();
+            // one write for each step.
+            assertEquals(8, sets.size());
+        } finally {
+            ULN2003.setDigitalOutputDeviceFactory(factory);
+        }
+    }
 
 //    @Test
 //    public void constructorTest() throws InterruptedException {
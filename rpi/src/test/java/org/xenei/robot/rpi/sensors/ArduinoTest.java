@@ -0,0 +1,231 @@
+package org.xenei.robot.rpi.sensors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.xenei.robot.rpi.utils.TestingI2CDevice.sweep;
+import static org.xenei.robot.rpi.utils.TestingI2CDevice.timing;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xenei.robot.common.Location;
+import org.xenei.robot.common.utils.AngleUtils;
+import org.xenei.robot.rpi.utils.TestingI2CDevice;
+
+public class ArduinoTest {
+
+    private static final double TIME_TO_M = 5830.9;
+    // poll manually, the scheduled poll does not run during the test.
+    private static final long REFRESH = TimeUnit.HOURS.toMillis(1);
+
+    private TestingI2CDevice device;
+    private Arduino underTest;
+
+    @BeforeEach
+    public void setup() {
+        device = new TestingI2CDevice();
+        underTest = new Arduino(device.getDevice(), false, REFRESH);
+    }
+
+    @AfterEach
+    public void teardown() {
+        underTest.close();
+    }
+
+    private Arduino sweeping() {
+        underTest.close();
+        underTest = new Arduino(device.getDevice(), true, REFRESH);
+        return underTest;
+    }
+
+    @Test
+    public void decodeTest() {
+        Location l = Arduino.decode(timing(1000, true));
+        assertEquals(1000 / TIME_TO_M, l.range(), 0.0001);
+        assertSame(Location.INFINITE, Arduino.decode(timing(0, true)));
+        // beyond 1 meter
+        assertSame(Location.INFINITE, Arduino.decode(timing(6000, true)));
+        assertNull(Arduino.decode(timing(1000, false)));
+        assertNull(Arduino.decode(timing(0, false)));
+    }
+
+    @Test
+    public void senseBeforePollTest() {
+        assertNull(underTest.latest());
+        Location[] result = underTest.sense();
+        assertEquals(1, result.length);
+        assertSame(Location.INFINITE, result[0]);
+    }
+
+    @Test
+    public void senseTest() {
+        device.respond(timing(1000, true));
+        underTest.poll();
+        assertEquals(List.of(Arduino.CMD_SINGLE), device.getWritten());
+        Location[] result = underTest.sense();
+        assertEquals(1, result.length);
+        assertEquals(1000 / TIME_TO_M, result[0].range(), 0.0001);
+    }
+
+    @Test
+    public void parityRetryTest() {
+        device.respond(timing(1000, false)).respond(timing(2000, false)).respond(timing(3000, true));
+        underTest.poll();
+        assertEquals(3, device.getWritten().size());
+        assertEquals(3000 / TIME_TO_M, underTest.sense()[0].range(), 0.0001);
+    }
+
+    @Test
+    public void parityFailureKeepsLastReadingTest() {
+        device.respond(timing(1000, true));
+        underTest.poll();
+        for (int i = 0; i <= Arduino.RETRIES; i++) {
+            device.respond(timing(2000, false));
+        }
+        underTest.poll();
+        assertEquals(Arduino.RETRIES + 2, device.getWritten().size());
+        assertEquals(1, underTest.history().size());
+        assertEquals(1000 / TIME_TO_M, underTest.sense()[0].range(), 0.0001);
+    }
+
+    @Test
+    public void historyTest() {
+        int polls = Arduino.HISTORY + 3;
+        for (int i = 1; i <= polls; i++) {
+            device.respond(timing(i * 100, true));
+            underTest.poll();
+        }
+        List<Arduino.Reading> history = underTest.history();
+        assertEquals(Arduino.HISTORY, history.size());
+        for (int i = 0; i < history.size(); i++) {
+            assertEquals((polls - i) * 100 / TIME_TO_M, history.get(i).samples.get(0).location.range(), 0.0001);
+        }
+        assertSame(history.get(0), underTest.latest());
+    }
+
+    @Test
+    public void deviceErrorTest() {
+        // nothing queued so the device throws, the poll must survive it.
+        underTest.poll();
+        assertNull(underTest.latest());
+        device.respond(timing(1000, true));
+        underTest.poll();
+        assertEquals(1000 / TIME_TO_M, underTest.sense()[0].range(), 0.0001);
+    }
+
+    @Test
+    public void decodeSweepTest() {
+        long now = System.nanoTime();
+        byte[] block = sweep(new int[] { -45, 1000, 0 }, new int[] { 0, 0, 3 }, new int[] { 45, 2000, 20 });
+        List<Arduino.Sample> samples = Arduino.decodeSweep(block, now);
+        assertEquals(3, samples.size());
+
+        Arduino.Sample s = samples.get(0);
+        assertEquals(Math.toRadians(-45), s.angle, AngleUtils.TOLERANCE);
+        assertEquals(now, s.timestamp);
+        assertEquals(1000 / TIME_TO_M, s.location.range(), 0.0001);
+        assertEquals(s.angle, s.location.theta(), 0.0001);
+
+        s = samples.get(1);
+        assertSame(Location.INFINITE, s.location);
+        assertEquals(now - TimeUnit.MILLISECONDS.toNanos(3 * Arduino.AGE_UNIT_MILLIS), s.timestamp);
+
+        s = samples.get(2);
+        assertEquals(Math.toRadians(45), s.angle, AngleUtils.TOLERANCE);
+        assertEquals(2000 / TIME_TO_M, s.location.range(), 0.0001);
+        assertEquals(now - TimeUnit.MILLISECONDS.toNanos(20 * Arduino.AGE_UNIT_MILLIS), s.timestamp);
+    }
+
+    @Test
+    public void decodeSweepDropsInvalidSamplesTest() {
+        byte[] block = sweep(new int[] { -15, 1000, 0 }, new int[] { 0, 1000, Arduino.AGE_UNKNOWN },
+                new int[] { 15, 1000, 0 });
+        // corrupt the parity of the last sample and fix the checksum.
+        block[2 + 2 * Arduino.SAMPLE_SIZE + 2] ^= (byte) 0x80;
+        block[1] ^= (byte) 0x80;
+        List<Arduino.Sample> samples = Arduino.decodeSweep(block, System.nanoTime());
+        assertEquals(1, samples.size());
+        assertEquals(Math.toRadians(-15), samples.get(0).angle, AngleUtils.TOLERANCE);
+    }
+
+    @Test
+    public void decodeSweepChecksumTest() {
+        byte[] block = sweep(new int[] { -15, 1000, 0 }, new int[] { 15, 1000, 0 });
+        block[2] ^= 0x01;
+        assertNull(Arduino.decodeSweep(block, System.nanoTime()));
+        // more samples than the block holds.
+        block = sweep(new int[] { -15, 1000, 0 });
+        block[0] = 2;
+        assertNull(Arduino.decodeSweep(block, System.nanoTime()));
+    }
+
+    @Test
+    public void senseSweepTest() {
+        sweeping();
+        byte[] corrupt = sweep(new int[] { 0, 1000, 0 });
+        corrupt[1] ^= 0x01;
+        device.respond(corrupt);
+        device.respond(sweep(new int[] { -45, 1000, 0 }, new int[] { 0, 0, 0 }, new int[] { 45, 2000, 0 },
+                new int[] { 30, 1000, Arduino.AGE_UNKNOWN }));
+        underTest.poll();
+        assertEquals(List.of(Arduino.CMD_SWEEP, Arduino.CMD_SWEEP), device.getWritten());
+
+        Location[] result = underTest.sense();
+        assertEquals(3, result.length);
+        assertEquals(Math.toRadians(-45), result[0].theta(), 0.0001);
+        assertSame(Location.INFINITE, result[1]);
+        assertEquals(Math.toRadians(45), result[2].theta(), 0.0001);
+        assertTrue(result[2].range() > result[0].range());
+    }
+
+    @Test
+    public void senseAfterMotionTest() throws InterruptedException {
+        device.respond(timing(1000, true));
+        underTest.poll();
+        underTest.motionStopped();
+        // the reading was taken while moving so sense waits for the next poll.
+        device.respond(timing(2000, true));
+        Thread poller = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            underTest.poll();
+        });
+        poller.start();
+        Location[] result = underTest.sense();
+        poller.join();
+        assertEquals(1, result.length);
+        assertEquals(2000 / TIME_TO_M, result[0].range(), 0.0001);
+    }
+
+    @Test
+    public void pollAfterMotionTest() {
+        device.respond(timing(1000, true));
+        underTest.poll();
+        underTest.motionStopped();
+        device.respond(timing(2000, true));
+        underTest.poll();
+        Location[] result = underTest.sense();
+        assertEquals(1, result.length);
+        assertEquals(2000 / TIME_TO_M, result[0].range(), 0.0001);
+    }
+
+    @Test
+    public void senseSweepAfterMotionTest() {
+        sweeping();
+        underTest.motionStopped();
+        // only the first sample was taken after the stop.
+        device.respond(sweep(new int[] { -45, 1000, 0 }, new int[] { 0, 1000, 5 }, new int[] { 45, 2000, 100 }));
+        underTest.poll();
+        Location[] result = underTest.sense();
+        assertEquals(1, result.length);
+        assertEquals(Math.toRadians(-45), result[0].theta(), 0.0001);
+    }
+}
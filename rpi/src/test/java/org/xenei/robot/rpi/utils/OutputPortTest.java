@@ -0,0 +1,93 @@
+package org.xenei.robot.rpi.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.diozero.api.DigitalOutputDevice;
+
+public class OutputPortTest {
+
+    private final TestingDigitalOutputDeviceFactory factory = new TestingDigitalOutputDeviceFactory();
+    private final List<String> changes = new ArrayList<>();
+
+    private void listen() {
+        factory.getDevices().forEach(d -> d.register((gpio, state) -> changes.add(gpio + ":" + state)));
+    }
+
+    @Test
+    public void pinPortTest() {
+        OutputPort port = factory.buildPort(5, 6, 7, 8);
+        assertInstanceOf(PinOutputPort.class, port);
+        assertEquals(4, port.width());
+        assertEquals(7, port.gpio(2));
+        listen();
+        port.write(0x3);
+        assertEquals(List.of("5:true", "6:true"), changes);
+        changes.clear();
+        port.write(0x6);
+        assertEquals(List.of("5:false", "7:true"), changes);
+    }
+
+    @Test
+    public void pinPortWritesOnlyChangedPinsTest() {
+        DigitalOutputDevice[] pins = new DigitalOutputDevice[4];
+        int[] calls = new int[1];
+        for (int i = 0; i < pins.length; i++) {
+            pins[i] = mock(DigitalOutputDevice.class);
+            doAnswer(inv -> {
+                calls[0]++;
+                return null;
+            }).when(pins[i]).setOn(anyBoolean());
+        }
+        PinOutputPort port = new PinOutputPort(pins);
+        // the first write sets every pin.
+        port.write(0x9);
+        assertEquals(4, calls[0]);
+        port.write(0xC);
+        assertEquals(6, calls[0]);
+        port.write(0xC);
+        assertEquals(6, calls[0]);
+    }
+
+    @Test
+    public void bankPortTest() {
+        List<int[]> writes = new ArrayList<>();
+        DigitalOutputDeviceFactory underTest = DigitalOutputDeviceFactory.withBank(factory,
+                (set, clear) -> writes.add(new int[] { set, clear }));
+        OutputPort port = underTest.buildPort(17, 27, 22, 23);
+        assertInstanceOf(BankOutputPort.class, port);
+        assertEquals(22, port.gpio(2));
+        listen();
+        port.write(0x5);
+        assertEquals(1, writes.size());
+        assertEquals((1 << 17) | (1 << 22), writes.get(0)[0]);
+        assertEquals((1 << 27) | (1 << 23), writes.get(0)[1]);
+        // the pin devices are not written.
+        assertEquals(List.of(), changes);
+    }
+
+    @Test
+    public void bankFallbackTest() {
+        DigitalOutputDeviceFactory underTest = DigitalOutputDeviceFactory.withBank(factory, (set, clear) -> {
+        });
+        assertInstanceOf(PinOutputPort.class, underTest.buildPort(17, 40));
+    }
+
+    @Test
+    public void bankRangeTest() {
+        DigitalOutputDevice pin = mock(DigitalOutputDevice.class);
+        when(pin.getGpio()).thenReturn(32);
+        assertThrows(IllegalArgumentException.class, () -> new BankOutputPort((set, clear) -> {
+        }, pin));
+    }
+}
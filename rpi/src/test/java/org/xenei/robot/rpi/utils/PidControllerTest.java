@@ -0,0 +1,63 @@
+package org.xenei.robot.rpi.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+public class PidControllerTest {
+
+    private static final double DELTA = 0.000001;
+
+    @Test
+    public void proportionalTest() {
+        PidController underTest = new PidController(new PidController.Gains(2.0, 0, 0), 10);
+        assertEquals(1.0, underTest.update(0.5, 0.02), DELTA);
+        assertEquals(-1.0, underTest.update(-0.5, 0.02), DELTA);
+    }
+
+    @Test
+    public void limitTest() {
+        PidController underTest = new PidController(new PidController.Gains(2.0, 0, 0), 3);
+        assertEquals(3.0, underTest.update(5, 0.02), DELTA);
+        assertEquals(-3.0, underTest.update(-5, 0.02), DELTA);
+    }
+
+    @Test
+    public void integralTest() {
+        PidController underTest = new PidController(new PidController.Gains(0, 1.0, 0), 10);
+        assertEquals(0.1, underTest.update(1.0, 0.1), DELTA);
+        assertEquals(0.2, underTest.update(1.0, 0.1), DELTA);
+        underTest.reset();
+        assertEquals(0.1, underTest.update(1.0, 0.1), DELTA);
+    }
+
+    @Test
+    public void antiWindupTest() {
+        PidController underTest = new PidController(new PidController.Gains(0, 1.0, 0), 1);
+        for (int i = 0; i < 100; i++) {
+            underTest.update(1.0, 0.1);
+        }
+        // the integral is held at the limit so a reversed error acts at once.
+        assertEquals(0.9, underTest.update(-1.0, 0.1), DELTA);
+    }
+
+    @Test
+    public void derivativeTest() {
+        PidController underTest = new PidController(new PidController.Gains(0, 0, 1.0), 10);
+        // no derivative on the first update.
+        assertEquals(0, underTest.update(1.0, 0.1), DELTA);
+        assertEquals(-5.0, underTest.update(0.5, 0.1), DELTA);
+    }
+
+    @Test
+    public void convergenceTest() {
+        PidController underTest = new PidController(new PidController.Gains(2.0, 0.2, 0.05), 5);
+        double position = 0;
+        double target = 1.0;
+        double dt = 0.02;
+        for (int i = 0; i < 500; i++) {
+            position += underTest.update(target - position, dt) * dt;
+        }
+        assertEquals(target, position, 0.01);
+    }
+}
@@ -0,0 +1,116 @@
+package org.xenei.robot.rpi.utils;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyByte;
+import static org.mockito.Mockito.doAnswer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.mockito.Mockito;
+
+import com.diozero.api.I2CDevice;
+import com.diozero.api.RuntimeIOException;
+
+/**
+ * A mock I2C device that records the bytes written to it and answers reads from
+ * a queue of responses. A read with no queued response throws a
+ * {@link RuntimeIOException} as a bus error would.
+ */
+public class TestingI2CDevice {
+
+    private final I2CDevice device;
+    private final Deque<byte[]> responses = new ConcurrentLinkedDeque<>();
+    private final List<Byte> written = new CopyOnWriteArrayList<>();
+
+    public TestingI2CDevice() {
+        device = Mockito.mock(I2CDevice.class);
+        doAnswer(invocation -> {
+            written.add(invocation.getArgument(0));
+            return null;
+        }).when(device).writeByte(anyByte());
+        doAnswer(invocation -> {
+            byte[] buffer = invocation.getArgument(0);
+            byte[] response = responses.poll();
+            if (response == null) {
+                throw new RuntimeIOException("No response queued");
+            }
+            System.arraycopy(response, 0, buffer, 0, Math.min(buffer.length, response.length));
+            return Integer.valueOf(buffer.length);
+        }).when(device).readBytes(any(byte[].class));
+    }
+
+    /**
+     * Gets the mocked device.
+     *
+     * @return the mocked device.
+     */
+    public I2CDevice getDevice() {
+        return device;
+    }
+
+    /**
+     * Queues a response to a read.
+     *
+     * @param response the bytes returned by the read.
+     * @return this device for chaining.
+     */
+    public TestingI2CDevice respond(byte[] response) {
+        responses.add(response);
+        return this;
+    }
+
+    /**
+     * Gets the bytes written to the device.
+     *
+     * @return the bytes written in order.
+     */
+    public List<Byte> getWritten() {
+        return Collections.unmodifiableList(new ArrayList<>(written));
+    }
+
+    /**
+     * Encodes a timing as the sensor firmware does, with the parity in the high
+     * bit of the second byte.
+     *
+     * @param timing the echo time.
+     * @param goodParity false to corrupt the parity flag.
+     * @return the 2 encoded bytes.
+     */
+    public static byte[] timing(int timing, boolean goodParity) {
+        boolean odd = Integer.bitCount(timing) % 2 != 0;
+        byte[] result = { (byte) (timing & 0xFF), (byte) ((timing >> 8) & 0x7F) };
+        if (odd == goodParity) {
+            result[1] |= (byte) 0x80;
+        }
+        return result;
+    }
+
+    /**
+     * Encodes a sweep block as the sensor firmware does. Each sample is the angle
+     * in degrees, the timing and the age.
+     *
+     * @param samples the samples as {angle, timing, age}.
+     * @return the sweep block.
+     */
+    public static byte[] sweep(int[]... samples) {
+        byte[] result = new byte[2 + samples.length * 4];
+        result[0] = (byte) samples.length;
+        for (int i = 0; i < samples.length; i++) {
+            int offset = 2 + i * 4;
+            byte[] t = timing(samples[i][1], true);
+            result[offset] = (byte) samples[i][0];
+            result[offset + 1] = t[0];
+            result[offset + 2] = t[1];
+            result[offset + 3] = (byte) samples[i][2];
+            for (int j = 0; j < 4; j++) {
+                result[1] ^= result[offset + j];
+            }
+        }
+        return result;
+    }
+}